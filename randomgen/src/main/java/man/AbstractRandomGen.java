@@ -0,0 +1,506 @@
+package man;
+
+import static man.RandomGen.ACCEPTABLE_ERROR;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Index-sampling core shared by the random generators. When called multiple times over a long
+ * period, it chooses the index of each value roughly with the initialised probabilities, and
+ * records how many times each index has been chosen.
+ *
+ * <p>
+ * Subclasses hold the values themselves, as a primitive array where possible, and map each chosen
+ * index to its value, so drawing a value never boxes it.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public abstract class AbstractRandomGen {
+  // Number of draws from the whole table a masked draw tries before searching for an index that
+  // is not excluded
+  public static final int MASKED_REJECTION_TRIES = 8;
+
+  // Optimistic copies a snapshot tries before asking the drawing thread to pause between draws
+  public static final int SNAPSHOT_TRIES = 4;
+
+  // Ordered (lazy) writes of the count, which cost no more than a plain write
+  private static final AtomicIntegerFieldUpdater<AbstractRandomGen> COUNT =
+      AtomicIntegerFieldUpdater.newUpdater(AbstractRandomGen.class, "count");
+
+  // Sequence of the seqlock guarding the occurrences and count
+  private static final AtomicIntegerFieldUpdater<AbstractRandomGen> SEQUENCE =
+      AtomicIntegerFieldUpdater.newUpdater(AbstractRandomGen.class, "sequence");
+
+  // Number of snapshots waiting for the drawing thread to pause
+  private static final AtomicIntegerFieldUpdater<AbstractRandomGen> PAUSES =
+      AtomicIntegerFieldUpdater.newUpdater(AbstractRandomGen.class, "pauses");
+
+  // Validated probabilities and cumulative probabilities
+  private final DistributionTable table;
+
+  // Record of how many times each index has been chosen
+  private final int[] occurrences;
+
+  // Instance of uniform random generator
+  private final Random random;
+
+  // Fenwick tree of the probabilities with the excluded ones removed, built by the first masked
+  // draw that searches it, and the excluded set removed from it
+  private double[] maskedTree;
+  private BitSet maskedExcluded;
+
+  // Number of times a value has been chosen, written after the occurrences of each choice so that
+  // a thread reading it also sees at least those occurrences
+  private volatile int count = 0;
+
+  // Odd while the occurrences and count are being updated, and advanced by each update, so that a
+  // snapshot can check that nothing changed while it copied them
+  private volatile int sequence = 0;
+
+  // Positive while a snapshot has asked the drawing thread to wait before its next update
+  private volatile int pauses = 0;
+
+  /**
+   * Constructor for the core of a generator choosing indices according to given distribution.
+   *
+   * @param table
+   *          Table of validated probabilities
+   */
+  protected AbstractRandomGen(final DistributionTable table) {
+    this(table, new Random());
+  }
+
+  /**
+   * Constructor for the core of a generator choosing indices according to given distribution, with
+   * a given source of uniformly distributed random floats.
+   *
+   * @param table
+   *          Table of validated probabilities
+   * @param random
+   *          Source of random floats used as keys to search the table
+   */
+  protected AbstractRandomGen(final DistributionTable table, final Random random) {
+    if (random == null) {
+      throw new IllegalArgumentException("Expecting a non-null source of randomness");
+    }
+    this.table = table;
+    this.random = random;
+    this.occurrences = new int[table.size()];
+  }
+
+  /**
+   * Check the size of the array of values against the probabilities and build the table of
+   * cumulative probabilities.
+   *
+   * @param numValues
+   *          Number of values, or -1 if the array of values is null
+   * @param probabilities
+   *          Array of float values which are the corresponding probability values between 0 and 1
+   *          of the values that maybe generated
+   * @return table of cumulative probabilities
+   */
+  protected static DistributionTable buildTable(final int numValues, final float[] probabilities) {
+    if (numValues < 1 || probabilities == null || numValues != probabilities.length) {
+      throw new IllegalArgumentException(
+          "Expecting arrays to be non-null and of the same non-zero length");
+    }
+    return DistributionTable.of(probabilities);
+  }
+
+  /**
+   * Create a random number generator using a single long seed (for repeatable testing).
+   *
+   * @param seed
+   *          long value
+   */
+  protected final void setSeed(final long seed) {
+    this.random.setSeed(seed);
+  }
+
+  /**
+   * Returns the index of one of the values. When this method is called multiple times over a long
+   * period, it should return the indices roughly with the initialised probabilities.
+   *
+   * @return index of the chosen value
+   */
+  public int nextIndex() {
+    final int index = table.sampleIndex(random);
+    recordOccurrence(index);
+    return index;
+  }
+
+  /**
+   * Returns the index of one of the values other than the excluded ones, as if the probabilities
+   * of the excluded values were zero and the others renormalised, without rebuilding the table.
+   *
+   * <p>
+   * Up to {@link #MASKED_REJECTION_TRIES} indices are drawn from the whole table until one is not
+   * excluded, which neither allocates nor reads more of the excluded set than the indices drawn.
+   * When the excluded values have at most half of the probability, only one draw in 2^8 gets past
+   * these tries. Otherwise the draw searches a Fenwick tree of the probabilities with the excluded
+   * ones removed, kept by the generator between draws, in O(log k). Only the changes since the
+   * last excluded set searched this way are applied to the tree, so repeated draws with the same
+   * excluded set cost O(k/64) to compare the sets, and a set that grows by one value an extra
+   * O(x + log k) for x excluded values.
+   *
+   * @param excluded
+   *          Indices of the values not to choose
+   * @return index of the chosen value
+   */
+  public int nextIndex(final BitSet excluded) {
+    if (excluded.isEmpty()) {
+      return nextIndex();
+    }
+    for (int t = 0; t < MASKED_REJECTION_TRIES; t++) {
+      final int index;
+      final double key;
+      if (table.isTrivial()) {
+        index = table.getTrivialIndex();
+        key = Double.NaN;
+      } else {
+        final float floatKey = random.nextFloat();
+        index = table.binarySearch(floatKey);
+        key = floatKey;
+      }
+      if (!excluded.get(index)) {
+        recordKey(index, key);
+        recordOccurrence(index);
+        return index;
+      }
+    }
+    return nextIndexFromTree(excluded);
+  }
+
+  /**
+   * Search the Fenwick tree of the probabilities, with the excluded ones removed, for an index.
+   */
+  private int nextIndexFromTree(final BitSet excluded) {
+    final int numValues = table.size();
+    applyExcluded(excluded);
+    double remaining = 0.0;
+    for (int i = numValues; i > 0; i -= i & -i) {
+      remaining += maskedTree[i];
+    }
+    if (!(remaining > ACCEPTABLE_ERROR * numValues)) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting some probability not to be excluded, however %d values with total "
+              + "probability %9.8f are excluded",
+          excluded.get(0, numValues).cardinality(),
+          table.getCumulativeProbability(numValues - 1) - remaining));
+    }
+
+    // Largest prefix of the leaves whose probability is at most the key, skipping zero leaves
+    double key = random.nextDouble() * remaining;
+    int pos = 0;
+    for (int step = Integer.highestOneBit(numValues); step > 0; step >>= 1) {
+      final int next = pos + step;
+      if (next <= numValues && maskedTree[next] <= key) {
+        key -= maskedTree[next];
+        pos = next;
+      }
+    }
+    int index = pos;
+    if (index < numValues && !excluded.get(index)) {
+      // The key left is its offset in the segment of the index
+      recordKey(index,
+          (index == 0 ? 0.0 : table.getCumulativeProbability(index - 1)) + key);
+    } else {
+      // Rounding of the sums in the tree can leave a sliver past the end or for an excluded index
+      index = Math.min(index, numValues - 1);
+      final int next = excluded.nextClearBit(index);
+      index = next < numValues ? next : excluded.previousClearBit(index);
+      recordKey(index, Double.NaN);
+    }
+    recordOccurrence(index);
+    return index;
+  }
+
+  /**
+   * Update the Fenwick tree of the probabilities to remove the excluded ones, building it on first
+   * use, and restoring the values excluded last time but not this time.
+   */
+  private void applyExcluded(final BitSet excluded) {
+    final int numValues = table.size();
+    if (maskedTree == null) {
+      maskedTree = new double[numValues + 1];
+      for (int i = 1; i <= numValues; i++) {
+        maskedTree[i] += table.getProbability(i - 1);
+        final int parent = i + (i & -i);
+        if (parent <= numValues) {
+          maskedTree[parent] += maskedTree[i];
+        }
+      }
+      maskedExcluded = new BitSet(numValues);
+    } else if (maskedExcluded.equals(excluded)) {
+      return;
+    }
+    for (int i = maskedExcluded.nextSetBit(0); i >= 0 && i < numValues;
+        i = maskedExcluded.nextSetBit(i + 1)) {
+      if (!excluded.get(i)) {
+        addToTree(i, table.getProbability(i));
+      }
+    }
+    for (int i = excluded.nextSetBit(0); i >= 0 && i < numValues;
+        i = excluded.nextSetBit(i + 1)) {
+      if (!maskedExcluded.get(i)) {
+        addToTree(i, -table.getProbability(i));
+      }
+    }
+    maskedExcluded.clear();
+    maskedExcluded.or(excluded);
+  }
+
+  private void addToTree(final int index, final double delta) {
+    for (int i = index + 1; i < maskedTree.length; i += i & -i) {
+      maskedTree[i] += delta;
+    }
+  }
+
+  /**
+   * Gets the next uniformly distributed random float between 0 and 1, for subclasses that search
+   * the table themselves.
+   *
+   * @return random float key
+   */
+  protected final float nextKey() {
+    return random.nextFloat();
+  }
+
+  /**
+   * Gets the next uniformly distributed random double between 0 and 1, for subclasses that need
+   * more than the 24 random bits of a float key.
+   *
+   * @return random double key
+   */
+  protected final double nextDoubleKey() {
+    return random.nextDouble();
+  }
+
+  /**
+   * Increment occurrence of the chosen index and the count.
+   *
+   * @param index
+   *          index of the chosen value
+   */
+  protected final void recordOccurrence(final int index) {
+    beginUpdate();
+    occurrences[index]++;
+    COUNT.lazySet(this, count + 1);
+    endUpdate();
+  }
+
+  /**
+   * Hook for subclasses, called for each index chosen by a draw other than {@link #nextIndex()},
+   * e.g. a batch of systematic draws, with the key that chose it, so that a subclass can record
+   * where in the segment of the index the key lies. The key is NaN when the choice was trivial and
+   * no key was used. A subclass that overrides {@link #nextIndex()} to choose indices another way
+   * should override the other draws too, or reject them.
+   *
+   * @param index
+   *          index of the chosen value
+   * @param key
+   *          key in the cumulative probabilities that chose the index, or NaN
+   */
+  protected void recordKey(final int index, final double key) {
+  }
+
+  /**
+   * Add a number of occurrences of the chosen index to the occurrences and the count, for batches
+   * that choose the same index many times.
+   *
+   * @param index
+   *          index of the chosen value
+   * @param times
+   *          number of times the value was chosen
+   */
+  protected final void recordOccurrences(final int index, final int times) {
+    beginUpdate();
+    occurrences[index] += times;
+    COUNT.lazySet(this, count + times);
+    endUpdate();
+  }
+
+  /**
+   * Make the sequence odd before an update. The atomic increment keeps the writes of the update
+   * after it, which an ordered write would not.
+   */
+  private void beginUpdate() {
+    while (pauses > 0) {
+      Thread.yield();
+    }
+    SEQUENCE.getAndIncrement(this);
+  }
+
+  /**
+   * Make the sequence even again, after the writes of the update.
+   */
+  private void endUpdate() {
+    SEQUENCE.lazySet(this, sequence + 1);
+  }
+
+  /**
+   * Fills part of an array with n indices in ascending order, using one sweep over the cumulative
+   * probabilities with the n keys (j + u)/n for j = 0..n-1. Systematic resampling uses the same
+   * random u in [0, 1) for every key and stratified resampling a new u for each key. Each index i
+   * occurs within one of n*pi times with systematic resampling, so the variance is far lower than
+   * independent draws, in O(n + k) rather than O(n log k).
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number of elements to fill
+   * @param stratified
+   *          <tt>true</tt> for a new random u for each key, otherwise one u for all
+   */
+  protected final void resampleIndices(final int[] dest, final int offset, final int length,
+      final boolean stratified) {
+    checkRange(dest.length, offset, length);
+    if (length == 0) {
+      return;
+    }
+    if (table.isTrivial()) {
+      Arrays.fill(dest, offset, offset + length, table.getTrivialIndex());
+      for (int j = 0; j < length; j++) {
+        recordKey(table.getTrivialIndex(), Double.NaN);
+      }
+      recordOccurrences(table.getTrivialIndex(), length);
+      return;
+    }
+    final int last = table.size() - 1;
+    double u = random.nextDouble();
+    int index = 0;
+    int run = 0;
+    for (int j = 0; j < length; j++) {
+      if (stratified && j > 0) {
+        u = random.nextDouble();
+      }
+      final double key = (j + u) / length;
+      // Same segments as the binary search: the first index where key <= cumProb[index]
+      while (index < last && table.getCumulativeProbability(index) < key) {
+        if (run > 0) {
+          recordOccurrences(index, run);
+          run = 0;
+        }
+        index++;
+      }
+      dest[offset + j] = index;
+      recordKey(index, key);
+      run++;
+    }
+    recordOccurrences(index, run);
+  }
+
+  /**
+   * Gets array of the number occurrences each value as been selected.
+   *
+   * @return an integer array recording number of occurrences of each choice.
+   */
+  public int[] getOccurrences() {
+    return occurrences;
+  }
+
+  /**
+   * Copy the occurrences of each value while the generator may still be choosing values in another
+   * thread, as they were at one instant between two choices, so their total is the number of values
+   * chosen at that instant.
+   *
+   * <p>
+   * The occurrences are guarded by a seqlock: the drawing thread makes a sequence odd before each
+   * update and even after it. The copy is taken while the sequence is even, and kept if a
+   * compare-and-set finds the sequence unchanged afterwards, which also orders the reads of the
+   * copy before that check. After {@link #SNAPSHOT_TRIES} copies spoiled by updates, the drawing
+   * thread is asked to wait between choices until the copy is taken, so a snapshot of many values
+   * is not starved by a fast drawing thread.
+   *
+   * @return 64-bit copy of the occurrences
+   */
+  public final long[] copyOccurrences() {
+    final long[] copy = new long[occurrences.length];
+    boolean paused = false;
+    try {
+      for (int tries = 1;; tries++) {
+        final int before = sequence;
+        if ((before & 1) == 0) {
+          for (int i = 0; i < copy.length; i++) {
+            copy[i] = occurrences[i];
+          }
+          if (SEQUENCE.compareAndSet(this, before, before)) {
+            return copy;
+          }
+        }
+        if (tries >= SNAPSHOT_TRIES && !paused) {
+          PAUSES.incrementAndGet(this);
+          paused = true;
+        }
+        Thread.yield();
+      }
+    } finally {
+      if (paused) {
+        PAUSES.decrementAndGet(this);
+      }
+    }
+  }
+
+  /**
+   * Gets number of values chosen so far.
+   *
+   * @return number of times a value has been chosen
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Gets an array of float values corresponding to probability values of each value.
+   *
+   * @return copy of the array of probabilities
+   */
+  public float[] getProbabilities() {
+    return table.getProbabilities();
+  }
+
+  /**
+   * Gets the immutable table of cumulative probabilities, which can be shared with other
+   * generators.
+   *
+   * @return table of the distribution
+   */
+  public DistributionTable getTable() {
+    return table;
+  }
+
+  /**
+   * Gets the number of degrees of freedom, i.e. one less than the number of random numbers to be
+   * chosen Since all the probabilities need to add to 1.0, for a choice of k number there are only
+   * k-1 degrees of freedom.
+   *
+   * @return integer number of degrees of freedom.
+   */
+  public int getDegreesFreedom() {
+    return table.size() - 1;
+  }
+
+  /**
+   * Check that a range of a destination array is valid for a batch of draws.
+   *
+   * @param destLength
+   *          length of the destination array
+   * @param offset
+   *          first index to fill
+   * @param length
+   *          number of values to fill
+   */
+  protected static void checkRange(final int destLength, final int offset, final int length) {
+    if (offset < 0 || length < 0 || offset > destLength - length) {
+      throw new IndexOutOfBoundsException(String.format(
+          "Range [%d, %d) is outside array of length %d", offset, offset + length, destLength));
+    }
+  }
+
+}
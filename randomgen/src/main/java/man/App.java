@@ -1,7 +1,9 @@
 package man;
 
 /**
- * Example Application to run Random Generator
+ * Example Application to run Random Generator, or with the arguments
+ * <tt>validate [seeds] [draws]</tt> to run the {@link GeneratorValidator} battery on the example
+ * data, or <tt>load [options]</tt> to run the {@link LoadGenerator}.
  *
  */
 public class App 
@@ -10,6 +12,22 @@ public class App
     {
  	final int[] exampleNums= { -1, 0, 1, 2, 3 };
   	final float[] exampleProb = { 0.01f, 0.3f, 0.58f, 0.1f, 0.01f };
+	if (args.length > 0 && "validate".equals(args[0])) {
+	    // validate [seeds] [draws]: run the statistical battery on the example data
+	    final int seeds = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+	    final int draws = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+	    System.out.println(GeneratorValidator
+	        .forDistribution(exampleNums, exampleProb, seeds, draws, 0.01).validate());
+	    return;
+	}
+	if (args.length > 0 && "load".equals(args[0])) {
+	    // load [options]: measure throughput and latency of a distribution
+	    final int status = LoadGenerator.execute(java.util.Arrays.copyOfRange(args, 1, args.length));
+	    if (status != 0) {
+	        System.exit(status);
+	    }
+	    return;
+	}
 	final int iterations = 100;
  	RandomGen gen = new RandomGen(exampleNums, exampleProb);
 
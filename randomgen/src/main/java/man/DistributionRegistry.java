@@ -0,0 +1,377 @@
+package man;
+
+import static man.RandomGen.ACCEPTABLE_ERROR;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable registry of many small distributions, one per tenant, sampled by tenant ID.
+ *
+ * <p>
+ * A {@link RandomGen} per tenant costs several objects and arrays of its own, which outweighs a
+ * table of a few values. Instead, the random numbers and cumulative probabilities of every tenant
+ * are packed end to end into two shared arenas, and a tenant is just a range of the arenas. Tenant
+ * IDs are mapped to their range by an open-addressing hash table of primitive longs, so a tenant
+ * costs little more than its raw table: 8 bytes per value and around 32 bytes of index.
+ *
+ * <p>
+ * Sampling uses the same float key and binary search as {@link DistributionTable}, so a tenant
+ * draws exactly as a {@link RandomGen} with the same random source would, including the trivial
+ * case that does not consume a random value. The registry holds no mutable state and can be
+ * sampled by any number of threads. Occurrences are not recorded.
+ *
+ * <p>
+ * Build a registry with a {@link Builder}.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public final class DistributionRegistry {
+
+  // Random numbers of all tenants, end to end
+  private final int[] values;
+
+  // Cumulative probabilities of all tenants, each tenant's range ending at 1.0
+  private final float[] cumProb;
+
+  // Start of each tenant's range in the arenas, with the end of the last range appended
+  private final int[] start;
+
+  // Index within its range of the only value with probability 1.0 of each tenant, otherwise -1
+  private final int[] trivialIdx;
+
+  // Map from tenant ID to its position in the arrays above
+  private final TenantIndex index;
+
+  private DistributionRegistry(final Builder builder) {
+    final int tenants = builder.tenants;
+    final int size = builder.start[tenants];
+    this.values = Arrays.copyOf(builder.values, size);
+    this.cumProb = Arrays.copyOf(builder.cumProb, size);
+    this.start = Arrays.copyOf(builder.start, tenants + 1);
+    this.trivialIdx = Arrays.copyOf(builder.trivialIdx, tenants);
+    this.index = builder.index.copy();
+  }
+
+  /**
+   * Returns one of the random numbers of a tenant, using a thread-local source of randomness.
+   *
+   * @param tenantId
+   *          ID of a registered tenant
+   * @return int randomNum
+   */
+  public int nextNum(final long tenantId) {
+    return nextNum(tenantId, ThreadLocalRandom.current());
+  }
+
+  /**
+   * Returns one of the random numbers of a tenant, using the given source of randomness.
+   *
+   * @param tenantId
+   *          ID of a registered tenant
+   * @param random
+   *          Source of uniformly distributed random floats
+   * @return int randomNum
+   */
+  public int nextNum(final long tenantId, final Random random) {
+    final int t = slot(tenantId);
+    return values[start[t] + sampleIndex(t, random)];
+  }
+
+  /**
+   * Fills part of an array with random numbers of a tenant, as if by calling nextNum() once for
+   * each element, looking up the tenant only once.
+   *
+   * @param tenantId
+   *          ID of a registered tenant
+   * @param random
+   *          Source of uniformly distributed random floats
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number of elements to fill
+   */
+  public void nextNums(final long tenantId, final Random random, final int[] dest,
+      final int offset, final int length) {
+    AbstractRandomGen.checkRange(dest.length, offset, length);
+    final int t = slot(tenantId);
+    final int from = start[t];
+    for (int i = offset; i < offset + length; i++) {
+      dest[i] = values[from + sampleIndex(t, random)];
+    }
+  }
+
+  /**
+   * Choose the index within the range of a tenant, as {@link DistributionTable#sampleIndex}.
+   */
+  private int sampleIndex(final int t, final Random random) {
+    if (trivialIdx[t] >= 0) {
+      return trivialIdx[t];
+    }
+    final float key = random.nextFloat();
+    final int from = start[t];
+    int left = from;
+    int right = start[t + 1] - 1;
+    while (left < right) {
+      int mid = left + (right - left) / 2;
+      if (cumProb[mid] < key) {
+        left = mid + 1;
+      } else {
+        right = mid;
+      }
+    }
+    return left - from;
+  }
+
+  private int slot(final long tenantId) {
+    final int t = index.get(tenantId);
+    if (t < 0) {
+      throw new IllegalArgumentException(
+          String.format("Expecting a registered tenant, however tenant %d is unknown", tenantId));
+    }
+    return t;
+  }
+
+  /**
+   * Whether a tenant is registered.
+   *
+   * @param tenantId
+   *          ID of a tenant
+   * @return <tt>true</tt> if the tenant has a distribution
+   */
+  public boolean contains(final long tenantId) {
+    return index.get(tenantId) >= 0;
+  }
+
+  /**
+   * Gets the number of random numbers of a tenant.
+   *
+   * @param tenantId
+   *          ID of a registered tenant
+   * @return size of the tenant's distribution
+   */
+  public int size(final long tenantId) {
+    final int t = slot(tenantId);
+    return start[t + 1] - start[t];
+  }
+
+  /**
+   * Gets a copy of the random numbers of a tenant.
+   *
+   * @param tenantId
+   *          ID of a registered tenant
+   * @return array of the tenant's random numbers
+   */
+  public int[] getRandomNums(final long tenantId) {
+    final int t = slot(tenantId);
+    return Arrays.copyOfRange(values, start[t], start[t + 1]);
+  }
+
+  /**
+   * Gets the number of registered tenants.
+   *
+   * @return number of tenants
+   */
+  public int getNumTenants() {
+    return trivialIdx.length;
+  }
+
+  /**
+   * Gets the total number of random numbers of all tenants, i.e. the length of the arenas.
+   *
+   * @return size of the arenas
+   */
+  public int getArenaSize() {
+    return values.length;
+  }
+
+  /**
+   * Builder of a {@link DistributionRegistry}, adding the distribution of one tenant at a time.
+   */
+  public static final class Builder {
+    private int[] values;
+    private float[] cumProb;
+    private int[] start;
+    private int[] trivialIdx;
+    private int tenants;
+    private final TenantIndex index;
+
+    /**
+     * Constructor of a builder for a registry.
+     *
+     * @param expectedTenants
+     *          Number of tenants expected, used to size the arenas
+     * @param expectedValuesPerTenant
+     *          Average number of random numbers per tenant expected, used to size the arenas
+     */
+    public Builder(final int expectedTenants, final int expectedValuesPerTenant) {
+      if (expectedTenants < 0 || expectedValuesPerTenant < 0) {
+        throw new IllegalArgumentException(
+            "Expecting non-negative numbers of tenants and values per tenant");
+      }
+      final int tenantCapacity = Math.max(expectedTenants, 16);
+      final int arenaCapacity = (int) Math
+          .min((long) tenantCapacity * Math.max(expectedValuesPerTenant, 1), Integer.MAX_VALUE - 8);
+      this.values = new int[arenaCapacity];
+      this.cumProb = new float[arenaCapacity];
+      this.start = new int[tenantCapacity + 1];
+      this.trivialIdx = new int[tenantCapacity];
+      this.index = new TenantIndex(tenantCapacity);
+    }
+
+    /**
+     * Add the distribution of a tenant.
+     *
+     * @param tenantId
+     *          ID of a tenant that has not already been added
+     * @param randomNums
+     *          Array of integers that maybe generated for the tenant
+     * @param probabilities
+     *          Same size array of float values which are the probability values between 0 and 1
+     *          that each random number is generated
+     * @return this builder
+     */
+    public Builder add(final long tenantId, final int[] randomNums, final float[] probabilities) {
+      if (randomNums == null || probabilities == null || randomNums.length != probabilities.length
+          || randomNums.length == 0) {
+        throw new IllegalArgumentException(
+            "Expecting arrays to be non-null and of the same non-zero length");
+      }
+      if (index.get(tenantId) >= 0) {
+        throw new IllegalArgumentException(
+            String.format("Expecting a new tenant, however tenant %d is already added", tenantId));
+      }
+      final int k = randomNums.length;
+      final int from = start[tenants];
+      if ((long) from + k > Integer.MAX_VALUE - 8) {
+        throw new IllegalArgumentException("Expecting fewer random numbers in the registry");
+      }
+      ensureCapacity(from + k);
+
+      // Same validation and float accumulation as DistributionTable.of
+      int trivial = -1;
+      float sum = 0.0f;
+      for (int i = 0; i < k; i++) {
+        if (DistributionTable.checkProbability(i, probabilities[i])) {
+          trivial = i;
+        }
+        sum += probabilities[i];
+        cumProb[from + i] = sum;
+      }
+      if (Math.abs(sum - 1.0f) > ACCEPTABLE_ERROR * k) {
+        throw new IllegalArgumentException(String.format(
+            "Expecting probabilities to total to 1.0, however total is %9.8f", sum - 1.0f));
+      }
+      System.arraycopy(randomNums, 0, values, from, k);
+      trivialIdx[tenants] = trivial;
+      start[tenants + 1] = from + k;
+      index.put(tenantId, tenants);
+      tenants++;
+      return this;
+    }
+
+    /**
+     * Build the registry, trimming the arenas to the tenants added.
+     *
+     * @return immutable registry
+     */
+    public DistributionRegistry build() {
+      return new DistributionRegistry(this);
+    }
+
+    private void ensureCapacity(final int arenaSize) {
+      if (arenaSize > values.length) {
+        final int capacity = (int) Math.min(Math.max((long) values.length * 2, arenaSize),
+            Integer.MAX_VALUE - 8);
+        values = Arrays.copyOf(values, capacity);
+        cumProb = Arrays.copyOf(cumProb, capacity);
+      }
+      if (tenants == trivialIdx.length) {
+        trivialIdx = Arrays.copyOf(trivialIdx, tenants * 2);
+        start = Arrays.copyOf(start, tenants * 2 + 1);
+      }
+    }
+  }
+
+  /**
+   * Open-addressing hash map from tenant ID to position, with linear probing. Positions are stored
+   * plus one so that zero marks an empty bucket.
+   */
+  private static final class TenantIndex {
+    private long[] keys;
+    private int[] slots;
+    private int size;
+
+    private TenantIndex(final int expected) {
+      int capacity = 16;
+      while (capacity < expected * 2L && capacity < (1 << 30)) {
+        capacity <<= 1;
+      }
+      this.keys = new long[capacity];
+      this.slots = new int[capacity];
+    }
+
+    private TenantIndex(final long[] keys, final int[] slots, final int size) {
+      this.keys = keys;
+      this.slots = slots;
+      this.size = size;
+    }
+
+    private static int hash(final long key, final int mask) {
+      final long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int get(final long key) {
+      final int mask = keys.length - 1;
+      for (int b = hash(key, mask);; b = (b + 1) & mask) {
+        if (slots[b] == 0) {
+          return -1;
+        }
+        if (keys[b] == key) {
+          return slots[b] - 1;
+        }
+      }
+    }
+
+    private void put(final long key, final int slot) {
+      if ((size + 1) * 2L > keys.length) {
+        resize(keys.length * 2);
+      }
+      insert(keys, slots, key, slot + 1);
+      size++;
+    }
+
+    private static void insert(final long[] keys, final int[] slots, final long key,
+        final int value) {
+      final int mask = keys.length - 1;
+      int b = hash(key, mask);
+      while (slots[b] != 0) {
+        b = (b + 1) & mask;
+      }
+      keys[b] = key;
+      slots[b] = value;
+    }
+
+    private void resize(final int capacity) {
+      final long[] newKeys = new long[capacity];
+      final int[] newSlots = new int[capacity];
+      for (int b = 0; b < keys.length; b++) {
+        if (slots[b] != 0) {
+          insert(newKeys, newSlots, keys[b], slots[b]);
+        }
+      }
+      keys = newKeys;
+      slots = newSlots;
+    }
+
+    private TenantIndex copy() {
+      return new TenantIndex(keys.clone(), slots.clone(), size);
+    }
+  }
+
+}
@@ -0,0 +1,365 @@
+package man;
+
+import static man.RandomGen.ACCEPTABLE_ERROR;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Immutable table of validated probabilities and their cumulative probabilities, used to choose the
+ * index of a random value.
+ *
+ * <p>
+ * To choose from the k values, divide the [0, 1] range into k segments, where the length of each
+ * segment is proportional to its corresponding probability. The boundaries of each segment are
+ * stored in cumulative probability array, and so already sorted in ascending order. Use binary
+ * search to find which segment a random float value falls, (where this is chosen using
+ * random.nextFloat(), a uniformly distributed random float between 0 and 1).
+ *
+ * <p>
+ * The table holds no mutable state, and copies the probabilities it is built from, so one table can
+ * be shared by any number of generators and threads, each with their own source of randomness.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public final class DistributionTable {
+  // Smallest number of probabilities for which a table is built in parallel
+  public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  // Smallest number of probabilities in each block of a parallel build
+  private static final int MIN_BLOCK = 1 << 14;
+
+  // Probability of the occurrence of each value
+  private final float[] probabilities;
+
+  // Cumulative probabilities
+  private final float[] cumProb;
+
+  // if all probabilities are zero except one with probability 1.0,
+  // then the choice is trivial and this is its index, otherwise -1
+  private final int trivialCaseIdx;
+
+  private DistributionTable(final float[] probabilities, final float[] cumProb,
+      final int trivialCaseIdx) {
+    this.probabilities = probabilities;
+    this.cumProb = cumProb;
+    this.trivialCaseIdx = trivialCaseIdx;
+  }
+
+  /**
+   * Build a table from an array of probabilities, checking that they lie between 0.0 and 1.0 and
+   * sum to 1.0.
+   *
+   * @param probabilities
+   *          Non-empty array of float values which are the probabilities between 0 and 1 of each
+   *          value that maybe chosen
+   * @return table of cumulative probabilities
+   */
+  public static DistributionTable of(final float[] probabilities) {
+    if (probabilities == null || probabilities.length == 0) {
+      throw new IllegalArgumentException(
+          "Expecting probabilities array to be non-null and of non-zero length");
+    }
+    return build(probabilities.clone());
+  }
+
+  private static DistributionTable build(final float[] probabilities) {
+    final int numChoices = probabilities.length;
+    final float[] cumProb = new float[numChoices];
+    int idxPotentialTrivialCase = -1;
+    float sum = 0.0f;
+
+    // Check if probabilities are all valid and sum to 1.0
+    for (int i = 0; i < numChoices; i++) {
+      float prob = probabilities[i];
+      if (checkProbability(i, prob)) {
+        idxPotentialTrivialCase = i;
+      }
+      sum += prob;
+      cumProb[i] = sum;
+    }
+
+    if (Math.abs(sum - 1.0f) > ACCEPTABLE_ERROR * numChoices) {
+      throw new IllegalArgumentException(String
+          .format("Expecting probabilities to total to 1.0, however total is %9.8f", sum - 1.0f));
+    }
+
+    return new DistributionTable(probabilities, cumProb, idxPotentialTrivialCase);
+  }
+
+  /**
+   * Build a table from a large array of probabilities in parallel, as {@link #of(float[])}.
+   *
+   * <p>
+   * The array is split into blocks, one task for each. The first pass validates each block and
+   * sums it with compensated (Kahan) summation in double precision. The offset of each block is
+   * then the compensated sum of the blocks before it, and the second pass fills in the cumulative
+   * probabilities of each block from its offset. So the cumulative probabilities are more accurate
+   * than the sequential float sum of {@link #of(float[])}, and may differ from it in the last bits.
+   * Arrays smaller than {@link #PARALLEL_THRESHOLD} are built sequentially.
+   *
+   * @param probabilities
+   *          Non-empty array of float values which are the probabilities between 0 and 1 of each
+   *          value that maybe chosen
+   * @param pool
+   *          Fork-join pool to run the blocks
+   * @return table of cumulative probabilities
+   */
+  public static DistributionTable of(final float[] probabilities, final ForkJoinPool pool) {
+    if (probabilities == null || probabilities.length < PARALLEL_THRESHOLD) {
+      return of(probabilities);
+    }
+    if (pool == null) {
+      throw new IllegalArgumentException("Expecting a non-null pool");
+    }
+    return build(probabilities.clone(), pool);
+  }
+
+  private static DistributionTable build(final float[] probabilities, final ForkJoinPool pool) {
+    final int numChoices = probabilities.length;
+    final int blockSize = Math.max(MIN_BLOCK,
+        (int) ((numChoices + 4L * pool.getParallelism() - 1) / (4L * pool.getParallelism())));
+    final int numBlocks = (numChoices + blockSize - 1) / blockSize;
+    final double[] blockSums = new double[numBlocks];
+    final int[] blockTrivial = new int[numBlocks];
+
+    // First pass: validate and sum each block
+    final List<Callable<Void>> sums = new ArrayList<>(numBlocks);
+    for (int b = 0; b < numBlocks; b++) {
+      final int block = b;
+      sums.add(() -> {
+        final int from = block * blockSize;
+        final int to = Math.min(from + blockSize, numChoices);
+        int trivial = -1;
+        double sum = 0.0;
+        double comp = 0.0;
+        for (int i = from; i < to; i++) {
+          if (checkProbability(i, probabilities[i])) {
+            trivial = i;
+          }
+          final double y = probabilities[i] - comp;
+          final double t = sum + y;
+          comp = (t - sum) - y;
+          sum = t;
+        }
+        blockSums[block] = sum;
+        blockTrivial[block] = trivial;
+        return null;
+      });
+    }
+    invokeAll(pool, sums);
+
+    final double[] offsets = new double[numBlocks];
+    final double total = Probabilities.prefixSums(blockSums, offsets);
+    if (Math.abs(total - 1.0) > ACCEPTABLE_ERROR * numChoices) {
+      throw new IllegalArgumentException(String
+          .format("Expecting probabilities to total to 1.0, however total is %9.8f", total - 1.0));
+    }
+    int idxPotentialTrivialCase = -1;
+    for (final int trivial : blockTrivial) {
+      idxPotentialTrivialCase = Math.max(idxPotentialTrivialCase, trivial);
+    }
+
+    // Second pass: cumulative probabilities of each block from its offset
+    final float[] cumProb = new float[numChoices];
+    final List<Callable<Void>> prefixes = new ArrayList<>(numBlocks);
+    for (int b = 0; b < numBlocks; b++) {
+      final int block = b;
+      prefixes.add(() -> {
+        final int from = block * blockSize;
+        final int to = Math.min(from + blockSize, numChoices);
+        double sum = offsets[block];
+        double comp = 0.0;
+        for (int i = from; i < to; i++) {
+          final double y = probabilities[i] - comp;
+          final double t = sum + y;
+          comp = (t - sum) - y;
+          sum = t;
+          cumProb[i] = (float) sum;
+        }
+        return null;
+      });
+    }
+    invokeAll(pool, prefixes);
+
+    return new DistributionTable(probabilities, cumProb, idxPotentialTrivialCase);
+  }
+
+  private static void invokeAll(final ForkJoinPool pool, final List<Callable<Void>> tasks) {
+    for (final Future<Void> future : pool.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while building table", e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
+  }
+
+  /**
+   * Checks whether a probability value is valid, i.e. lies between or equal to 0.0 and 1.0 Returns
+   * boolean flag when the probability is 1.0, no checks if probability is 0.0
+   *
+   * @param index
+   *          integer index of random number in the given array
+   * @param prob
+   *          probability of random number
+   * @return <tt>true</tt> if probability of 1.0, otherwise returns <tt>false</tt>
+   */
+  static boolean checkProbability(final int idx, final float prob) {
+    if (prob < 0.0f || prob > 1.0f || Float.isNaN(prob) || Float.isInfinite(prob)) {
+      throw new IllegalArgumentException(
+          String.format("Expecting probabilities array to have values between 0 and 1,"
+              + "probability at index %d has illegal value: %4.3f", idx, prob));
+    }
+
+    // if probability is zero, then we could exclude corresponding number from the array
+    // but this seems unnecessary and means resizing both randomNums and probabilities array
+
+    // if probability is 1.0, there should only be one choice,
+    // either one choice or all the probabilities are zero apart from one
+    // i.e. the generator is trivial - flag this potential case
+    if (Math.abs(prob - 1.0f) < ACCEPTABLE_ERROR) {
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Choose the index of a value, using the random source only when the choice is not trivial.
+   *
+   * @param random
+   *          Source of uniformly distributed random floats
+   * @return index of the chosen value
+   */
+  public int sampleIndex(final Random random) {
+    if (trivialCaseIdx >= 0) {
+      // Trivial case when only one choice of number
+      return trivialCaseIdx;
+    }
+    return binarySearch(random.nextFloat());
+  }
+
+  /**
+   * For a given key (which is random float value selected from uniform distribution), search the
+   * array of cumulative probabilities to find the largest index, <tt>i </tt>, where
+   * <tt>key &lt;= cumProb[i]</tt>. If i=0 then<tt> 0 &lt; key &lt;= cumProb[0] </tt>, otherwise
+   * <tt>cumProb[i-1] &lt; key &lt;= cumProb[i]</tt>
+   *
+   * @param key
+   *          the search key as a float
+   * @return index for the segment of the distribution where key lies. Note: that index guaranteed
+   *         to be 0 or greater and less than length of the array
+   */
+  public int binarySearch(final float key) {
+    int left = 0;
+    int right = cumProb.length - 1;
+
+    while (left < right) {
+      int mid = left + (right - left) / 2;
+      if (cumProb[mid] < key) {
+        left = mid + 1;
+      } else {
+        right = mid;
+      }
+    }
+    return left;
+  }
+
+  /**
+   * Search the array of cumulative probabilities for the segment where a random double key lies,
+   * as {@link #binarySearch(float)}.
+   *
+   * @param key
+   *          the search key as a double
+   * @return index for the segment of the distribution where key lies
+   */
+  public int binarySearch(final double key) {
+    int left = 0;
+    int right = cumProb.length - 1;
+
+    while (left < right) {
+      int mid = left + (right - left) / 2;
+      if (cumProb[mid] < key) {
+        left = mid + 1;
+      } else {
+        right = mid;
+      }
+    }
+    return left;
+  }
+
+  /**
+   * Gets the cumulative probability of the values up to and including the given index, i.e. the
+   * upper boundary of its segment of the [0, 1] range.
+   *
+   * @param index
+   *          index of a value
+   * @return cumulative probability
+   */
+  public float getCumulativeProbability(final int index) {
+    return cumProb[index];
+  }
+
+  /**
+   * Gets the number k of values that can be chosen.
+   *
+   * @return size of the table
+   */
+  public int size() {
+    return probabilities.length;
+  }
+
+  /**
+   * Gets the probability of the value at the given index.
+   *
+   * @param index
+   *          index of a value
+   * @return probability
+   */
+  public float getProbability(final int index) {
+    return probabilities[index];
+  }
+
+  /**
+   * Gets a copy of the probabilities the table was built from.
+   *
+   * @return copy of the array of probabilities
+   */
+  public float[] getProbabilities() {
+    return probabilities.clone();
+  }
+
+  /**
+   * Check whether trivial case when there is only a single choice for random number
+   *
+   * @return <tt>true </tt> if only one random number choice with probability 1.0, otherwise
+   *         <tt>false</tt>
+   */
+  public boolean isTrivial() {
+    return trivialCaseIdx >= 0;
+  }
+
+  /**
+   * Gets the index of the only value with probability 1.0.
+   *
+   * @return index of the value that is always chosen, or -1 if not a trivial case
+   */
+  public int getTrivialIndex() {
+    return trivialCaseIdx;
+  }
+
+}
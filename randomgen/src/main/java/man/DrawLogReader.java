@@ -0,0 +1,313 @@
+package man;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays a log of draws written by {@link DrawLogWriter}, as the indices or the values of the
+ * random numbers in the order they were drawn, or as the occurrences of each random number.
+ *
+ * <p>
+ * A whole block is read into a direct buffer at a time, and the packed indices are unpacked from
+ * its longs with shifts and masks, so replay is limited by the speed of reading the channel.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class DrawLogReader implements Closeable {
+  // Largest number of random numbers read from the header of a log
+  public static final int MAX_VALUES = 1 << 26;
+
+  // Number of indices unpacked at a time when counting occurrences
+  private static final int BATCH = 4096;
+
+  // Bytes of the distribution read at a time, so a header cannot make the reader allocate a buffer
+  // for data that is not there
+  private static final int CHUNK_BYTES = 1 << 16;
+
+  private final ReadableByteChannel channel;
+  private final int[] randomNums;
+  private final float[] probabilities;
+  private final int bits;
+  private final long mask;
+
+  // Current block, the draws of it not yet unpacked, and the packed bits not yet unpacked
+  private final ByteBuffer block;
+  private final LongBuffer longs;
+  private int remaining;
+  private long current;
+  private int available;
+
+  private boolean ended;
+
+  /**
+   * Constructor of a reader of a log file.
+   *
+   * @param file
+   *          Path of the log
+   * @throws IOException
+   *           if the file cannot be opened or does not start with a valid header
+   */
+  public DrawLogReader(final Path file) throws IOException {
+    this(FileChannel.open(file, StandardOpenOption.READ));
+  }
+
+  /**
+   * Constructor of a reader of a channel, which is closed when the reader is closed.
+   *
+   * @param channel
+   *          Channel the log is read from
+   * @throws IOException
+   *           if the header cannot be read or is not valid
+   */
+  public DrawLogReader(final ReadableByteChannel channel) throws IOException {
+    this.channel = channel;
+    final ByteBuffer header = ByteBuffer.allocate(14);
+    if (!readFully(header)) {
+      throw new EOFException("Expecting a draw log, however it is empty");
+    }
+    if (header.getInt() != DrawLogWriter.MAGIC) {
+      throw new IOException("Expecting a draw log, however header does not match");
+    }
+    final int version = header.get();
+    if (version != DrawLogWriter.VERSION) {
+      throw new IOException(String.format("Expecting draw log version %d, however it is %d",
+          DrawLogWriter.VERSION, version));
+    }
+    final int k = header.getInt();
+    final int bitsPerDraw = header.get();
+    final int blockLongs = header.getInt();
+    if (k < 1 || k > MAX_VALUES || bitsPerDraw != DrawLogWriter.bitsPerDraw(k) || blockLongs < 1
+        || blockLongs > (1 << 24)) {
+      throw new IOException(String.format(
+          "Expecting a valid draw log header, however k=%d, bits=%d, block longs=%d", k,
+          bitsPerDraw, blockLongs));
+    }
+    this.bits = bitsPerDraw;
+    this.mask = (1L << bits) - 1;
+
+    // A random number and a probability of 4 bytes each for every value
+    if (channel instanceof SeekableByteChannel) {
+      final SeekableByteChannel seekable = (SeekableByteChannel) channel;
+      if (seekable.size() - seekable.position() < 8L * k) {
+        throw new EOFException(String.format(
+            "Expecting the distribution of %d random numbers, however the draw log is truncated",
+            k));
+      }
+    }
+    this.randomNums = new int[k];
+    this.probabilities = new float[k];
+    final ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(CHUNK_BYTES, 4L * k));
+    for (int i = 0; i < k;) {
+      readChunk(chunk, k - i);
+      while (chunk.hasRemaining()) {
+        randomNums[i++] = chunk.getInt();
+      }
+    }
+    for (int i = 0; i < k;) {
+      readChunk(chunk, k - i);
+      while (chunk.hasRemaining()) {
+        probabilities[i++] = chunk.getFloat();
+      }
+    }
+    this.block = ByteBuffer.allocateDirect((blockLongs + 1) * 8);
+    this.longs = block.asLongBuffer();
+  }
+
+  /**
+   * Read the indices of the next draws.
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Maximum number of elements to fill
+   * @return number of indices read, or -1 at the end of the log
+   * @throws IOException
+   *           if the log cannot be read or is truncated
+   */
+  public int readIndices(final int[] dest, final int offset, final int length)
+      throws IOException {
+    AbstractRandomGen.checkRange(dest.length, offset, length);
+    int n = 0;
+    while (n < length) {
+      if (remaining == 0 && !nextBlock()) {
+        break;
+      }
+      final int end = offset + n + Math.min(remaining, length - n);
+      for (int i = offset + n; i < end; i++) {
+        final int index;
+        if (available >= bits) {
+          index = (int) (current & mask);
+          current >>>= bits;
+          available -= bits;
+        } else {
+          // Index straddles two longs
+          final long next = longs.get();
+          index = (int) ((current | (next << available)) & mask);
+          current = next >>> (bits - available);
+          available += 64 - bits;
+        }
+        if (index >= randomNums.length) {
+          throw new IOException(String.format(
+              "Expecting indices less than %d, however log has index %d", randomNums.length,
+              index));
+        }
+        dest[i] = index;
+      }
+      remaining -= end - offset - n;
+      n = end - offset;
+    }
+    return n == 0 && length > 0 ? -1 : n;
+  }
+
+  /**
+   * Read the random numbers of the next draws.
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Maximum number of elements to fill
+   * @return number of random numbers read, or -1 at the end of the log
+   * @throws IOException
+   *           if the log cannot be read or is truncated
+   */
+  public int readNums(final int[] dest, final int offset, final int length) throws IOException {
+    final int n = readIndices(dest, offset, length);
+    for (int i = offset; i < offset + n; i++) {
+      dest[i] = randomNums[dest[i]];
+    }
+    return n;
+  }
+
+  /**
+   * Read all the remaining draws, counting the occurrences of each random number.
+   *
+   * @return snapshot of the occurrences of the remaining draws
+   * @throws IOException
+   *           if the log cannot be read or is truncated
+   */
+  public OccurrenceSnapshot replayOccurrences() throws IOException {
+    final long[] counts = new long[randomNums.length];
+    final int[] batch = new int[BATCH];
+    int n;
+    while ((n = readIndices(batch, 0, BATCH)) > 0) {
+      for (int i = 0; i < n; i++) {
+        counts[batch[i]]++;
+      }
+    }
+    return OccurrenceSnapshot.of(randomNums, probabilities, counts);
+  }
+
+  /**
+   * Gets the random numbers of the recorded distribution.
+   *
+   * @return array of random numbers
+   */
+  public int[] getRandomNums() {
+    return randomNums;
+  }
+
+  /**
+   * Gets the probabilities of the recorded distribution.
+   *
+   * @return array of probabilities
+   */
+  public float[] getProbabilities() {
+    return probabilities;
+  }
+
+  /**
+   * Gets the number of bits used for each draw.
+   *
+   * @return bits per draw
+   */
+  public int getBitsPerDraw() {
+    return bits;
+  }
+
+  /**
+   * Close the channel.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Read the next block of packed indices.
+   *
+   * @return <tt>false</tt> at the end of the log
+   */
+  private boolean nextBlock() throws IOException {
+    if (ended) {
+      return false;
+    }
+    final ByteBuffer count = ByteBuffer.allocate(4);
+    if (!readFully(count)) {
+      ended = true;
+      return false;
+    }
+    final int draws = count.getInt();
+    final long numLongs = ((long) draws * bits + 63) / 64;
+    if (draws < 1 || numLongs * 8 > block.capacity()) {
+      throw new IOException(
+          String.format("Expecting a valid block of draws, however it has %d draws", draws));
+    }
+    block.clear();
+    block.limit((int) numLongs * 8);
+    if (!readFully(block)) {
+      throw new EOFException("Expecting a block of draws, however the log is truncated");
+    }
+    longs.clear();
+    longs.limit((int) numLongs);
+    remaining = draws;
+    current = 0L;
+    available = 0;
+    return true;
+  }
+
+  /**
+   * Fill the buffer from the channel and flip it.
+   *
+   * @return <tt>false</tt> if the channel ended before any bytes were read
+   * @throws EOFException
+   *           if the channel ended part way through the buffer
+   */
+  /**
+   * Read up to a chunk of the given number of 4-byte values of the distribution.
+   */
+  private void readChunk(final ByteBuffer chunk, final int values) throws IOException {
+    chunk.clear();
+    chunk.limit((int) Math.min(chunk.capacity(), 4L * values));
+    if (!readFully(chunk)) {
+      throw new EOFException("Expecting the distribution of the draw log");
+    }
+  }
+
+  private boolean readFully(final ByteBuffer buffer) throws IOException {
+    final int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        if (buffer.position() == start) {
+          return false;
+        }
+        throw new EOFException("Expecting more bytes, however the draw log is truncated");
+      }
+    }
+    buffer.flip();
+    return true;
+  }
+
+}
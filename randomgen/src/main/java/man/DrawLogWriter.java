@@ -0,0 +1,252 @@
+package man;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every draw of a {@link RandomGen} to a compact binary log, which can be replayed by
+ * {@link DrawLogReader}.
+ *
+ * <p>
+ * Each draw is stored as the index of the chosen random number, bit-packed at ceil(log2 k) bits
+ * for a distribution of k random numbers, e.g. 3 bits for 5 random numbers rather than 32 for an
+ * int. Indices are packed into longs, least significant bits first, and may straddle two longs.
+ * The longs are collected in a direct buffer and written to the channel in blocks.
+ *
+ * <p>
+ * Log format, big-endian:
+ * <li>Header: <tt>int magic, byte version, int k, byte bitsPerDraw, int blockLongs</tt>,
+ * followed by the k random numbers as ints and the k probabilities as floats
+ * <li>Blocks, until the end of the channel: <tt>int draws</tt> followed by
+ * <tt>ceil(draws * bitsPerDraw / 64)</tt> longs of packed indices, at most blockLongs + 1
+ *
+ * <p>
+ * The writer is not thread-safe, just as the generator it records.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class DrawLogWriter implements Closeable {
+  // First int of the log, followed by the format version
+  static final int MAGIC = 0x52474C47;
+  static final int VERSION = 1;
+
+  // Default number of longs of packed indices in each block
+  public static final int DEFAULT_BLOCK_LONGS = 8192;
+
+  private final RandomGen generator;
+  // Random numbers of the generator, fetched once rather than for each draw
+  private final int[] randomNums;
+  private final WritableByteChannel channel;
+  private final int size;
+  private final int bits;
+
+  // Block being filled: the draws count is written into its first 4 bytes when flushed, and
+  // there is room for one long more than a full block for the partly filled long
+  private final ByteBuffer block;
+  private final int fullPosition;
+
+  // Packed bits not yet put in the block, and how many of them are used
+  private long pending;
+  private int filled;
+
+  // Draws in the current block, and in total
+  private int blockDraws;
+  private long draws;
+
+  /**
+   * Constructor of a writer creating (or truncating) a log file.
+   *
+   * @param file
+   *          Path of the log
+   * @param generator
+   *          Generator whose draws are recorded
+   * @throws IOException
+   *           if the file cannot be opened or the header written
+   */
+  public DrawLogWriter(final Path file, final RandomGen generator) throws IOException {
+    this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING), generator, DEFAULT_BLOCK_LONGS);
+  }
+
+  /**
+   * Constructor of a writer to a channel, which is closed when the writer is closed.
+   *
+   * @param channel
+   *          Channel the log is written to
+   * @param generator
+   *          Generator whose draws are recorded
+   * @param blockLongs
+   *          Number of longs of packed indices in each block written
+   * @throws IOException
+   *           if the header cannot be written
+   */
+  public DrawLogWriter(final WritableByteChannel channel, final RandomGen generator,
+      final int blockLongs) throws IOException {
+    if (channel == null || generator == null || blockLongs < 1 || blockLongs > (1 << 24)) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting a non-null channel and generator, and between 1 and %d longs in a block",
+          1 << 24));
+    }
+    this.generator = generator;
+    this.channel = channel;
+    this.randomNums = generator.getRandomNums();
+    final int[] nums = randomNums;
+    final float[] probs = generator.getProbabilities();
+    this.size = nums.length;
+    this.bits = bitsPerDraw(nums.length);
+    this.fullPosition = 4 + blockLongs * 8;
+    this.block = ByteBuffer.allocateDirect(fullPosition + 8);
+
+    final ByteBuffer header = ByteBuffer.allocate(14 + nums.length * 8);
+    header.putInt(MAGIC).put((byte) VERSION).putInt(nums.length).put((byte) bits)
+        .putInt(blockLongs);
+    for (final int num : nums) {
+      header.putInt(num);
+    }
+    for (final float prob : probs) {
+      header.putFloat(prob);
+    }
+    header.flip();
+    writeFully(header);
+    block.position(4);
+  }
+
+  /**
+   * Gets the number of bits used for each draw of a distribution of k random numbers.
+   *
+   * @param k
+   *          number of random numbers
+   * @return ceil(log2 k), which is 0 when there is only one random number
+   */
+  static int bitsPerDraw(final int k) {
+    return k <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(k - 1);
+  }
+
+  /**
+   * Draws a random number from the generator and records it.
+   *
+   * @return int randomNum
+   * @throws IOException
+   *           if a full block cannot be written
+   */
+  public int nextNum() throws IOException {
+    final int index = generator.nextIndex();
+    record(index);
+    return randomNums[index];
+  }
+
+  /**
+   * Fills part of an array with random numbers, as if by calling nextNum() once for each element.
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number of elements to fill
+   * @throws IOException
+   *           if a full block cannot be written
+   */
+  public void nextNums(final int[] dest, final int offset, final int length) throws IOException {
+    AbstractRandomGen.checkRange(dest.length, offset, length);
+    for (int i = offset; i < offset + length; i++) {
+      final int index = generator.nextIndex();
+      record(index);
+      dest[i] = randomNums[index];
+    }
+  }
+
+  /**
+   * Record the index of a random number drawn elsewhere from the same distribution.
+   *
+   * @param index
+   *          index of the random number
+   * @throws IOException
+   *           if a full block cannot be written
+   */
+  public void record(final int index) throws IOException {
+    if (index < 0 || index >= size) {
+      throw new IllegalArgumentException(String
+          .format("Expecting index between 0 and %d, however index is %d", size - 1, index));
+    }
+    pending |= (long) index << filled;
+    filled += bits;
+    if (filled >= 64) {
+      block.putLong(pending);
+      filled -= 64;
+      // Bits of the index that did not fit in the long just written
+      pending = filled > 0 ? (long) index >>> (bits - filled) : 0L;
+    }
+    blockDraws++;
+    draws++;
+    if (block.position() >= fullPosition || blockDraws == Integer.MAX_VALUE) {
+      flush();
+    }
+  }
+
+  /**
+   * Write the draws recorded so far as a block, including a partly filled long.
+   *
+   * @throws IOException
+   *           if the block cannot be written
+   */
+  public void flush() throws IOException {
+    if (blockDraws == 0) {
+      return;
+    }
+    if (filled > 0) {
+      block.putLong(pending);
+      pending = 0L;
+      filled = 0;
+    }
+    block.putInt(0, blockDraws);
+    block.flip();
+    writeFully(block);
+    block.clear();
+    block.position(4);
+    blockDraws = 0;
+  }
+
+  /**
+   * Gets the number of draws recorded.
+   *
+   * @return number of draws
+   */
+  public long getDraws() {
+    return draws;
+  }
+
+  /**
+   * Gets the number of bits used for each draw.
+   *
+   * @return bits per draw
+   */
+  public int getBitsPerDraw() {
+    return bits;
+  }
+
+  /**
+   * Write the remaining draws and close the channel.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void writeFully(final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+}
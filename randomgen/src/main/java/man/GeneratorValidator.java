@@ -0,0 +1,327 @@
+package man;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+/**
+ * Battery of statistical checks of a discrete generator, run for many seeds in parallel.
+ *
+ * <p>
+ * For each seed a new generator is created, a number of values are drawn, and each check gives a
+ * p-value: the probability of a result at least as extreme if the generator were correct. A check
+ * passes for a seed if its p-value is at least the significance level, so a correct generator is
+ * expected to fail a fraction of seeds equal to the significance level. The report gives the pass
+ * rate of each check, and whether the number of failures is within three standard deviations of
+ * what is expected.
+ * <li>{@link Check#CHI_SQUARED}: Pearson chi-squared statistic of the occurrences
+ * <li>{@link Check#G_TEST}: log-likelihood ratio statistic of the occurrences
+ * <li>{@link Check#KOLMOGOROV}: largest deviation of the cumulative proportions, in the order the
+ * random numbers were given, which is conservative for a discrete distribution
+ * <li>{@link Check#SERIAL_CORRELATION}: correlation between the indices of successive draws
+ *
+ * <p>
+ * The occurrence statistics come from {@link RandomGenSummarizer}. Seeds are run as separate tasks
+ * on a fork-join pool, so the battery scales with the cores available.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class GeneratorValidator {
+
+  /**
+   * Statistical checks made for each seed.
+   */
+  public enum Check {
+    CHI_SQUARED, G_TEST, KOLMOGOROV, SERIAL_CORRELATION
+  }
+
+  // Creates the generator to check for a given seed
+  private final LongFunction<? extends RandomGen> factory;
+
+  private final int numSeeds;
+  private final int draws;
+  private final double significance;
+
+  /**
+   * Constructor of a validator of generators created for seeds 0 to numSeeds-1.
+   *
+   * @param factory
+   *          Function creating a new generator from a seed
+   * @param numSeeds
+   *          Number of seeds to check
+   * @param draws
+   *          Number of values drawn for each seed, at least 2
+   * @param significance
+   *          Significance level between 0 and 1, e.g. 0.01
+   */
+  public GeneratorValidator(final LongFunction<? extends RandomGen> factory, final int numSeeds,
+      final int draws, final double significance) {
+    if (factory == null || numSeeds < 1 || draws < 2) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting a non-null factory, at least one seed and at least 2 draws, "
+              + "however there are %d seeds and %d draws",
+          numSeeds, draws));
+    }
+    if (!(significance > 0.0 && significance < 1.0)) {
+      throw new IllegalArgumentException(String
+          .format("Expecting significance between 0 and 1, however it is %s", significance));
+    }
+    this.factory = factory;
+    this.numSeeds = numSeeds;
+    this.draws = draws;
+    this.significance = significance;
+  }
+
+  /**
+   * Creates a validator of {@link RandomGen} for a distribution.
+   *
+   * @param randomNums
+   *          Array of integers that maybe generated
+   * @param probabilities
+   *          Same size array of the corresponding probability values
+   * @param numSeeds
+   *          Number of seeds to check
+   * @param draws
+   *          Number of values drawn for each seed
+   * @param significance
+   *          Significance level between 0 and 1, e.g. 0.01
+   * @return validator of the distribution
+   */
+  public static GeneratorValidator forDistribution(final int[] randomNums,
+      final float[] probabilities, final int numSeeds, final int draws,
+      final double significance) {
+    // Check the distribution and build its table once, rather than in every task
+    final DistributionTable table = new RandomGen(randomNums, probabilities).getTable();
+    return new GeneratorValidator(seed -> new RandomGen(randomNums, table, new Random(seed)),
+        numSeeds, draws, significance);
+  }
+
+  /**
+   * Run the checks on the common fork-join pool.
+   *
+   * @return report of the results
+   */
+  public Report validate() {
+    return validate(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Run the checks with one task for each seed.
+   *
+   * @param pool
+   *          Fork-join pool to run the tasks
+   * @return report of the results
+   */
+  public Report validate(final ForkJoinPool pool) {
+    final Report report = new Report(numSeeds, draws, significance);
+    final List<Callable<Void>> tasks = new ArrayList<>(numSeeds);
+    for (int s = 0; s < numSeeds; s++) {
+      final int seedIndex = s;
+      tasks.add(() -> {
+        check(seedIndex, report);
+        return null;
+      });
+    }
+    for (final Future<Void> future : pool.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while validating generator", e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
+    return report;
+  }
+
+  /**
+   * Draw from a new generator for one seed, and record the p-value of each check.
+   */
+  private void check(final int seedIndex, final Report report) {
+    final RandomGen generator = factory.apply(seedIndex);
+
+    // Running sums of the indices drawn for the lag-1 serial correlation
+    double sum = 0.0;
+    double sumSquares = 0.0;
+    double sumProducts = 0.0;
+    final int first = generator.nextIndex();
+    int previous = first;
+    sum += first;
+    sumSquares += (double) first * first;
+    for (int i = 1; i < draws; i++) {
+      final int index = generator.nextIndex();
+      sum += index;
+      sumSquares += (double) index * index;
+      sumProducts += (double) previous * index;
+      previous = index;
+    }
+    // Treat the sequence as circular, so each index has a successor
+    sumProducts += (double) previous * first;
+
+    final RandomGenSummarizer summarizer = new RandomGenSummarizer(generator);
+    final int degreesFreedom = countPositive(generator.getProbabilities()) - 1;
+    final double[] pValues = report.pValues[seedIndex];
+    pValues[Check.CHI_SQUARED.ordinal()] = StatisticalFunctions
+        .chiSquaredSurvival(summarizer.calcChi2(), degreesFreedom);
+    pValues[Check.G_TEST.ordinal()] = StatisticalFunctions
+        .chiSquaredSurvival(summarizer.calcG(), degreesFreedom);
+    pValues[Check.KOLMOGOROV.ordinal()] = StatisticalFunctions
+        .kolmogorovSurvival(Math.sqrt(draws) * summarizer.calcMaxCumulativeDeviation());
+
+    final double variance = draws * sumSquares - sum * sum;
+    if (variance > 0.0) {
+      final double correlation = (draws * sumProducts - sum * sum) / variance;
+      pValues[Check.SERIAL_CORRELATION.ordinal()] = StatisticalFunctions
+          .normalSurvivalTwoSided(correlation * Math.sqrt(draws));
+    } else {
+      // Every draw the same, which is only correct for a single possible value
+      pValues[Check.SERIAL_CORRELATION.ordinal()] = 1.0;
+    }
+  }
+
+  private static int countPositive(final float[] probabilities) {
+    int positive = 0;
+    for (final float p : probabilities) {
+      if (p > 0.0f) {
+        positive++;
+      }
+    }
+    return positive;
+  }
+
+  /**
+   * Results of the checks for every seed.
+   */
+  public static final class Report {
+    private final int numSeeds;
+    private final int draws;
+    private final double significance;
+
+    // P-value of each check for each seed
+    private final double[][] pValues;
+
+    private Report(final int numSeeds, final int draws, final double significance) {
+      this.numSeeds = numSeeds;
+      this.draws = draws;
+      this.significance = significance;
+      this.pValues = new double[numSeeds][Check.values().length];
+    }
+
+    /**
+     * Gets the number of seeds checked.
+     *
+     * @return number of seeds
+     */
+    public int getNumSeeds() {
+      return numSeeds;
+    }
+
+    /**
+     * Gets the p-values of a check for each seed.
+     *
+     * @param check
+     *          statistical check
+     * @return array of p-values indexed by seed
+     */
+    public double[] getPValues(final Check check) {
+      final double[] values = new double[numSeeds];
+      for (int s = 0; s < numSeeds; s++) {
+        values[s] = pValues[s][check.ordinal()];
+      }
+      return values;
+    }
+
+    /**
+     * Gets the number of seeds for which a check passed.
+     *
+     * @param check
+     *          statistical check
+     * @return number of seeds with a p-value at least the significance level
+     */
+    public int getPasses(final Check check) {
+      int passes = 0;
+      for (int s = 0; s < numSeeds; s++) {
+        if (pValues[s][check.ordinal()] >= significance) {
+          passes++;
+        }
+      }
+      return passes;
+    }
+
+    /**
+     * Gets the fraction of seeds for which a check passed.
+     *
+     * @param check
+     *          statistical check
+     * @return pass rate between 0 and 1
+     */
+    public double getPassRate(final Check check) {
+      return (double) getPasses(check) / numSeeds;
+    }
+
+    /**
+     * Whether the number of seeds failing a check is within three standard deviations of the
+     * number expected for a correct generator.
+     *
+     * @param check
+     *          statistical check
+     * @return <tt>true</tt> if the failures are consistent with the significance level
+     */
+    public boolean isAcceptable(final Check check) {
+      final double expected = numSeeds * significance;
+      final double limit = expected + 3.0 * Math.sqrt(expected * (1.0 - significance));
+      return numSeeds - getPasses(check) <= Math.max(1.0, limit);
+    }
+
+    /**
+     * Whether every check is acceptable.
+     *
+     * @return <tt>true</tt> if the failures of all checks are consistent with the significance
+     *         level
+     */
+    public boolean isAcceptable() {
+      for (final Check check : Check.values()) {
+        if (!isAcceptable(check)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Gets a string summary of the pass rate of each check.
+     *
+     * @return table of the results
+     */
+    public String getSummary() {
+      final StringBuilder tab = new StringBuilder();
+      tab.append(String.format("Validation of %d seeds, %d draws each, at significance %.4f",
+          numSeeds, draws, significance));
+      tab.append(String.format("%n %-18s | %-8s | %-9s | %-10s", "Check", "Passed", "Pass rate",
+          "Acceptable"));
+      for (final Check check : Check.values()) {
+        tab.append(String.format("%n %-18s | %8d | %9.4f | %-10s", check, getPasses(check),
+            getPassRate(check), isAcceptable(check)));
+      }
+      tab.append(String.format("%n"));
+      return tab.toString();
+    }
+
+    @Override
+    public String toString() {
+      return getSummary();
+    }
+  }
+
+}
@@ -0,0 +1,192 @@
+package man;
+
+import java.util.Arrays;
+
+/**
+ * Random generator of continuous values from a histogram, where each entry of the distribution is
+ * a bin [lower, upper) and values are uniformly distributed within a bin.
+ *
+ * <p>
+ * A single random double chooses both the bin and the value within it: the bin is found by binary
+ * search of the cumulative probabilities, as {@link RandomGen} does, and the position of the key
+ * within the segment of that bin, i.e. the random bits left over after the search, gives the
+ * uniform offset within the bin.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class HistogramRandomGen extends AbstractRandomGen {
+
+  // Lower bound (inclusive) of each bin
+  private final double[] lowerBounds;
+
+  // Upper bound (exclusive) of each bin
+  private final double[] upperBounds;
+
+  /**
+   * Constructor for a histogram of adjacent bins.
+   *
+   * @param edges
+   *          Strictly increasing array of k+1 bin edges, bin i is [edges[i], edges[i+1])
+   * @param probabilities
+   *          Array of k float values which are the probability values between 0 and 1 of each bin
+   */
+  public HistogramRandomGen(final double[] edges, final float[] probabilities) {
+    this(lowerEdges(edges), upperEdges(edges), probabilities);
+  }
+
+  /**
+   * Constructor for a histogram of adjacent bins with a given seed.
+   *
+   * @param edges
+   *          Strictly increasing array of k+1 bin edges, bin i is [edges[i], edges[i+1])
+   * @param probabilities
+   *          Array of k float values which are the probability values between 0 and 1 of each bin
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   */
+  public HistogramRandomGen(final double[] edges, final float[] probabilities, final long seed) {
+    this(edges, probabilities);
+    setSeed(seed);
+  }
+
+  /**
+   * Constructor for a histogram of bins with given bounds, which need not be adjacent.
+   *
+   * @param lowerBounds
+   *          Array of the lower bound (inclusive) of each bin
+   * @param upperBounds
+   *          Same size array of the upper bound (exclusive) of each bin
+   * @param probabilities
+   *          Same size array of float values which are the probability values between 0 and 1 of
+   *          each bin
+   */
+  public HistogramRandomGen(final double[] lowerBounds, final double[] upperBounds,
+      final float[] probabilities) {
+    super(buildTable(checkBounds(lowerBounds, upperBounds), probabilities));
+    this.lowerBounds = lowerBounds;
+    this.upperBounds = upperBounds;
+  }
+
+  /**
+   * Constructor for a histogram of bins with given bounds and a given seed.
+   *
+   * @param lowerBounds
+   *          Array of the lower bound (inclusive) of each bin
+   * @param upperBounds
+   *          Same size array of the upper bound (exclusive) of each bin
+   * @param probabilities
+   *          Same size array of float values which are the probability values between 0 and 1 of
+   *          each bin
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   */
+  public HistogramRandomGen(final double[] lowerBounds, final double[] upperBounds,
+      final float[] probabilities, final long seed) {
+    this(lowerBounds, upperBounds, probabilities);
+    setSeed(seed);
+  }
+
+  /**
+   * Returns a value from one of the bins. When this method is called multiple times over a long
+   * period, it should choose the bins roughly with the initialised probabilities, and values
+   * uniformly within each bin.
+   *
+   * @return double value
+   */
+  public double nextNum() {
+    final DistributionTable table = getTable();
+    final double key = nextDoubleKey();
+    final int index;
+    final double fraction;
+    if (table.isTrivial()) {
+      // Trivial case when only one bin, the whole key gives the offset
+      index = table.getTrivialIndex();
+      fraction = key;
+    } else {
+      index = table.binarySearch(key);
+      final double lower = index == 0 ? 0.0 : table.getCumulativeProbability(index - 1);
+      final double width = table.getCumulativeProbability(index) - lower;
+      fraction = width > 0.0 ? Math.min(Math.max((key - lower) / width, 0.0), 1.0) : 0.0;
+    }
+    recordOccurrence(index);
+
+    final double lo = lowerBounds[index];
+    final double value = lo + fraction * (upperBounds[index] - lo);
+    return value < upperBounds[index] ? value : Math.nextDown(upperBounds[index]);
+  }
+
+  /**
+   * Fills an array with values, as if by calling nextNum() once for each element.
+   *
+   * @param dest
+   *          Array to fill
+   */
+  public void nextNums(final double[] dest) {
+    nextNums(dest, 0, dest.length);
+  }
+
+  /**
+   * Fills part of an array with values, as if by calling nextNum() once for each element.
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number of elements to fill
+   */
+  public void nextNums(final double[] dest, final int offset, final int length) {
+    checkRange(dest.length, offset, length);
+    for (int i = offset; i < offset + length; i++) {
+      dest[i] = nextNum();
+    }
+  }
+
+  /**
+   * Gets the lower bound (inclusive) of each bin.
+   *
+   * @return array of lower bounds
+   */
+  public double[] getLowerBounds() {
+    return lowerBounds;
+  }
+
+  /**
+   * Gets the upper bound (exclusive) of each bin.
+   *
+   * @return array of upper bounds
+   */
+  public double[] getUpperBounds() {
+    return upperBounds;
+  }
+
+  /**
+   * Check the bounds of each bin are finite and the lower bound is less than the upper bound.
+   *
+   * @return number of bins, or -1 if either array is null or they are different lengths
+   */
+  private static int checkBounds(final double[] lowerBounds, final double[] upperBounds) {
+    if (lowerBounds == null || upperBounds == null || lowerBounds.length != upperBounds.length) {
+      return -1;
+    }
+    for (int i = 0; i < lowerBounds.length; i++) {
+      if (!(lowerBounds[i] < upperBounds[i]) || Double.isInfinite(lowerBounds[i])
+          || Double.isInfinite(upperBounds[i])) {
+        throw new IllegalArgumentException(String.format(
+            "Expecting finite bin bounds with lower < upper, bin at index %d is [%s, %s)", i,
+            lowerBounds[i], upperBounds[i]));
+      }
+    }
+    return lowerBounds.length;
+  }
+
+  private static double[] lowerEdges(final double[] edges) {
+    return edges == null || edges.length < 2 ? null : Arrays.copyOf(edges, edges.length - 1);
+  }
+
+  private static double[] upperEdges(final double[] edges) {
+    return edges == null || edges.length < 2 ? null : Arrays.copyOfRange(edges, 1, edges.length);
+  }
+
+}
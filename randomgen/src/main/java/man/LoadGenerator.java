@@ -0,0 +1,533 @@
+package man;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command-line load generator, to measure the throughput and latency of drawing from a
+ * distribution before deploying it.
+ *
+ * <p>
+ * The distribution is loaded with a {@link RandomGenLoader}, or is the example distribution when
+ * no file is given. Each thread draws its share of the draws in batches from its own generator,
+ * sharing one {@link DistributionTable}, and may write its draws to its own file. The report gives
+ * the throughput, percentiles of the latency of a batch, and the {@link RandomGenSummarizer}
+ * totals of all the draws merged.
+ *
+ * <p>
+ * Options, each followed by its value:
+ * <li><tt>--file</tt> text file of <tt>value,weight</tt> lines, default the example distribution
+ * <li><tt>--draws</tt> total number of draws, default 1000000
+ * <li><tt>--threads</tt> number of threads, default the number of processors
+ * <li><tt>--batch</tt> number of draws in a batch, default 1024
+ * <li><tt>--engine</tt> <tt>table</tt> (independent draws), <tt>systematic</tt> or
+ * <tt>stratified</tt> (resampling of each batch), default <tt>table</tt>
+ * <li><tt>--random</tt> <tt>jdk</tt>, <tt>quasi</tt> ({@link QuasiRandom}) or <tt>secure</tt>,
+ * default <tt>jdk</tt>
+ * <li><tt>--seed</tt> seed of the first thread, the next thread using the next seed
+ * <li><tt>--output</tt> path of the output, with <tt>-t</tt> appended for thread t when there is
+ * more than one thread
+ * <li><tt>--format</tt> <tt>text</tt> (one number a line), <tt>binary</tt> (big-endian ints) or
+ * <tt>packed</tt> (a {@link DrawLogWriter} log, table engine only), default <tt>binary</tt>
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public final class LoadGenerator {
+
+  /**
+   * How each batch of draws is made.
+   */
+  public enum Engine {
+    TABLE, SYSTEMATIC, STRATIFIED
+  }
+
+  /**
+   * Source of the uniform keys of each generator.
+   */
+  public enum Source {
+    JDK, QUASI, SECURE
+  }
+
+  /**
+   * Format of the output files.
+   */
+  public enum Format {
+    TEXT, BINARY, PACKED
+  }
+
+  // Percentiles of the batch latency reported
+  private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+  // Size of the buffer of each output file
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  // Example distribution, as used by App
+  private static final int[] EXAMPLE_NUMS = { -1, 0, 1, 2, 3 };
+  private static final float[] EXAMPLE_PROBS = { 0.01f, 0.3f, 0.58f, 0.1f, 0.01f };
+
+  // Exit status of a run that failed to draw or write, and of bad options
+  public static final int STATUS_FAILED = 1;
+  public static final int STATUS_USAGE = 2;
+
+  private Path file;
+  private long draws = 1000000;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private int batch = 1024;
+  private Engine engine = Engine.TABLE;
+  private Source source = Source.JDK;
+  private Long seed;
+  private Path output;
+  private Format format = Format.BINARY;
+
+  private LoadGenerator() {
+  }
+
+  /**
+   * Run the load generator and print its report, exiting with a non-zero status if it fails.
+   *
+   * @param args
+   *          options as described above
+   */
+  public static void main(final String[] args) {
+    final int status = execute(args);
+    if (status != 0) {
+      System.exit(status);
+    }
+  }
+
+  /**
+   * Run the load generator and print its report, or print why it failed to stderr.
+   *
+   * @param args
+   *          options as described above
+   * @return 0 on success, {@link #STATUS_USAGE} for bad options or {@link #STATUS_FAILED} if the
+   *         distribution cannot be loaded or the output written
+   */
+  public static int execute(final String[] args) {
+    final LoadGenerator generator;
+    try {
+      generator = parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: [--file path] [--draws n] [--threads t] [--batch b] "
+          + "[--engine table|systematic|stratified] [--random jdk|quasi|secure] [--seed s] "
+          + "[--output path] [--format text|binary|packed]");
+      return STATUS_USAGE;
+    }
+    try {
+      System.out.println(generator.run());
+    } catch (IOException e) {
+      System.err.println("Failed: " + e.getMessage());
+      return STATUS_FAILED;
+    }
+    return 0;
+  }
+
+  /**
+   * Parse the options of a load generator.
+   *
+   * @param args
+   *          options as described above
+   * @return load generator with the options
+   */
+  public static LoadGenerator parse(final String[] args) {
+    final LoadGenerator generator = new LoadGenerator();
+    if (args.length % 2 != 0) {
+      throw new IllegalArgumentException(
+          String.format("Expecting a value after each option, found %s", Arrays.toString(args)));
+    }
+    for (int i = 0; i < args.length; i += 2) {
+      final String value = args[i + 1];
+      switch (args[i]) {
+        case "--file":
+          generator.file = Paths.get(value);
+          break;
+        case "--draws":
+          generator.draws = Long.parseLong(value);
+          break;
+        case "--threads":
+          generator.threads = Integer.parseInt(value);
+          break;
+        case "--batch":
+          generator.batch = Integer.parseInt(value);
+          break;
+        case "--engine":
+          generator.engine = Engine.valueOf(value.toUpperCase(Locale.ROOT));
+          break;
+        case "--random":
+          generator.source = Source.valueOf(value.toUpperCase(Locale.ROOT));
+          break;
+        case "--seed":
+          generator.seed = Long.parseLong(value);
+          break;
+        case "--output":
+          generator.output = Paths.get(value);
+          break;
+        case "--format":
+          generator.format = Format.valueOf(value.toUpperCase(Locale.ROOT));
+          break;
+        default:
+          throw new IllegalArgumentException(String.format("Expecting an option, found %s",
+              args[i]));
+      }
+    }
+    if (generator.draws < 0 || generator.threads < 1 || generator.batch < 1) {
+      throw new IllegalArgumentException(
+          "Expecting non-negative draws, and at least one thread and one draw in a batch");
+    }
+    // Each thread counts its draws in a generator with int occurrences
+    final long share = generator.draws / generator.threads
+        + (generator.draws % generator.threads == 0 ? 0 : 1);
+    if (share > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting at most %d draws a thread, however there are %d draws for %d threads",
+          Integer.MAX_VALUE, generator.draws, generator.threads));
+    }
+    if (generator.output != null && generator.format == Format.PACKED
+        && generator.engine != Engine.TABLE) {
+      throw new IllegalArgumentException("Expecting the table engine for packed output");
+    }
+    return generator;
+  }
+
+  /**
+   * Run the draws on the threads and collect the results.
+   *
+   * @return result of the run
+   * @throws IOException
+   *           if the distribution cannot be loaded or the output written
+   */
+  public Result run() throws IOException {
+    final RandomGen loaded = file == null ? new RandomGen(EXAMPLE_NUMS, EXAMPLE_PROBS)
+        : new RandomGenLoader().load(file);
+    final int[] nums = loaded.getRandomNums();
+    final DistributionTable table = loaded.getTable();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Callable<Worker>> tasks = new ArrayList<>(threads);
+      for (int t = 0; t < threads; t++) {
+        final long share = draws / threads + (t < draws % threads ? 1 : 0);
+        final Random random = newRandom(t);
+        final Path path = output == null ? null
+            : threads == 1 ? output : Paths.get(output.toString() + "-" + t);
+        tasks.add(() -> {
+          final Worker worker = new Worker(new RandomGen(nums, table, random), share, path);
+          worker.run();
+          return worker;
+        });
+      }
+      final long start = System.nanoTime();
+      final List<Worker> workers = new ArrayList<>(threads);
+      for (final Future<Worker> future : executor.invokeAll(tasks)) {
+        workers.add(future.get());
+      }
+      return new Result(workers, System.nanoTime() - start);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while drawing", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private Random newRandom(final int thread) {
+    switch (source) {
+      case QUASI:
+        return seed == null ? new QuasiRandom() : new QuasiRandom(seed + thread);
+      case SECURE:
+        final SecureRandom secure = new SecureRandom();
+        if (seed != null) {
+          // Supplements rather than replaces the seeding of a secure random
+          secure.setSeed(seed + thread);
+        }
+        return secure;
+      default:
+        return seed == null ? new Random() : new Random(seed + thread);
+    }
+  }
+
+  /**
+   * Draws of one thread, and their batch latencies.
+   */
+  private final class Worker {
+    private final RandomGen generator;
+    private final long share;
+    private final Path path;
+    private final long[] latencies;
+
+    private Worker(final RandomGen generator, final long share, final Path path) {
+      this.generator = generator;
+      this.share = share;
+      this.path = path;
+      this.latencies = new long[(int) ((share + batch - 1) / batch)];
+    }
+
+    private void run() throws IOException {
+      final int[] dest = new int[batch];
+      try (Output out = open()) {
+        long remaining = share;
+        int b = 0;
+        while (remaining > 0) {
+          final int length = (int) Math.min(batch, remaining);
+          final long start = System.nanoTime();
+          if (out instanceof PackedOutput) {
+            ((PackedOutput) out).writer.nextNums(dest, 0, length);
+          } else {
+            draw(dest, length);
+          }
+          latencies[b++] = System.nanoTime() - start;
+          if (out != null) {
+            out.write(dest, length);
+          }
+          remaining -= length;
+        }
+      }
+    }
+
+    private void draw(final int[] dest, final int length) {
+      switch (engine) {
+        case SYSTEMATIC:
+          generator.nextNumsSystematic(dest, 0, length);
+          break;
+        case STRATIFIED:
+          generator.nextNumsStratified(dest, 0, length);
+          break;
+        default:
+          generator.nextNums(dest, 0, length);
+      }
+    }
+
+    private Output open() throws IOException {
+      if (path == null) {
+        return null;
+      }
+      if (format == Format.PACKED) {
+        return new PackedOutput(new DrawLogWriter(path, generator));
+      }
+      return new ChannelOutput(FileChannel.open(path, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), format == Format.TEXT);
+    }
+  }
+
+  /**
+   * Destination of the draws of a thread.
+   */
+  private interface Output extends Closeable {
+    void write(int[] nums, int length) throws IOException;
+  }
+
+  /**
+   * Draws logged as they are made, so nothing is left to write afterwards.
+   */
+  private static final class PackedOutput implements Output {
+    private final DrawLogWriter writer;
+
+    private PackedOutput(final DrawLogWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(final int[] nums, final int length) {
+      // Already recorded by the writer
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.close();
+    }
+  }
+
+  /**
+   * Draws written as ints or text lines through a direct buffer.
+   */
+  private static final class ChannelOutput implements Output {
+    // Longest text line: a sign, ten digits and a newline
+    private static final int MAX_LINE = 12;
+
+    private final FileChannel channel;
+    private final boolean text;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private ChannelOutput(final FileChannel channel, final boolean text) {
+      this.channel = channel;
+      this.text = text;
+    }
+
+    @Override
+    public void write(final int[] nums, final int length) throws IOException {
+      for (int i = 0; i < length; i++) {
+        if (buffer.remaining() < MAX_LINE) {
+          drain();
+        }
+        if (text) {
+          putLine(nums[i]);
+        } else {
+          buffer.putInt(nums[i]);
+        }
+      }
+    }
+
+    /**
+     * Put the decimal digits of a number and a newline, without creating a string.
+     */
+    private void putLine(final int num) {
+      long value = num;
+      if (value < 0) {
+        buffer.put((byte) '-');
+        value = -value;
+      }
+      final int end = buffer.position() + (value == 0 ? 1 : digits(value));
+      int pos = end;
+      do {
+        buffer.put(--pos, (byte) ('0' + value % 10));
+        value /= 10;
+      } while (value > 0);
+      buffer.position(end);
+      buffer.put((byte) '\n');
+    }
+
+    private static int digits(final long value) {
+      int digits = 0;
+      for (long v = value; v > 0; v /= 10) {
+        digits++;
+      }
+      return digits;
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        drain();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Throughput, latency and summary of a run.
+   */
+  public static final class Result {
+    private final long draws;
+    private final long elapsedNanos;
+    private final long[] latencies;
+    private final OccurrenceSnapshot snapshot;
+
+    private Result(final List<Worker> workers, final long elapsedNanos) {
+      this.elapsedNanos = elapsedNanos;
+      final List<OccurrenceSnapshot> snapshots = new ArrayList<>(workers.size());
+      int batches = 0;
+      for (final Worker worker : workers) {
+        snapshots.add(OccurrenceSnapshot.of(worker.generator));
+        batches += worker.latencies.length;
+      }
+      this.latencies = new long[batches];
+      int pos = 0;
+      for (final Worker worker : workers) {
+        System.arraycopy(worker.latencies, 0, latencies, pos, worker.latencies.length);
+        pos += worker.latencies.length;
+      }
+      Arrays.sort(latencies);
+      this.snapshot = OccurrenceSnapshot.mergeAll(snapshots);
+      this.draws = snapshot.getCount();
+    }
+
+    /**
+     * Gets the total number of draws.
+     *
+     * @return number of draws
+     */
+    public long getDraws() {
+      return draws;
+    }
+
+    /**
+     * Gets the number of draws a second of all the threads together.
+     *
+     * @return throughput
+     */
+    public double getThroughput() {
+      return elapsedNanos > 0 ? draws * 1e9 / elapsedNanos : 0.0;
+    }
+
+    /**
+     * Gets a percentile of the latency of a batch, by the nearest rank.
+     *
+     * @param percentile
+     *          percentile between 0 and 100
+     * @return latency in nanoseconds, or 0 if there were no batches
+     */
+    public long getLatencyPercentile(final double percentile) {
+      if (percentile < 0.0 || percentile > 100.0) {
+        throw new IllegalArgumentException(String
+            .format("Expecting a percentile between 0 and 100, however percentile is %s",
+                percentile));
+      }
+      if (latencies.length == 0) {
+        return 0;
+      }
+      final int rank = (int) Math.ceil(percentile / 100.0 * latencies.length);
+      return latencies[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Gets the occurrences of all the draws merged.
+     *
+     * @return snapshot of the occurrences
+     */
+    public OccurrenceSnapshot getSnapshot() {
+      return snapshot;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder();
+      sb.append(String.format("%d draws in %.3f s: %.0f draws/s%n", draws, elapsedNanos / 1e9,
+          getThroughput()));
+      sb.append("Batch latency (us):");
+      for (final double percentile : PERCENTILES) {
+        sb.append(String.format(" p%s=%.1f", percentile == Math.rint(percentile)
+            ? String.valueOf((int) percentile) : String.valueOf(percentile),
+            getLatencyPercentile(percentile) / 1e3));
+      }
+      sb.append(String.format(" max=%.1f%n", getLatencyPercentile(100.0) / 1e3));
+      sb.append(new RandomGenSummarizer(snapshot).getSummary(false));
+      return sb.toString();
+    }
+  }
+}
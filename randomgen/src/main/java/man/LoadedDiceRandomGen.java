@@ -0,0 +1,474 @@
+package man;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Random number generator with exact integer weights, using the Fast Loaded Dice Roller (FLDR)
+ * algorithm, which consumes close to the minimum possible number of random bits per draw.
+ *
+ * <p>
+ * For weights a_i with total m, let k = ceil(log2 m) and add a reject outcome of weight 2^k - m so
+ * that the weights total a power of 2. Reading the binary expansions of the weights as columns of a
+ * matrix, a random walk down a discrete distribution generating (DDG) tree chooses one of the
+ * weights in column c with each random bit, or moves to the next column, and restarts on the
+ * reject outcome. Each outcome is chosen with probability exactly a_i / m, and the expected number
+ * of bits per draw is less than the entropy of the distribution plus 6, e.g. about 1 bit for a
+ * fair coin rather than the 32 bits of a float key.
+ *
+ * <p>
+ * Random bits are taken one at a time from a buffered 64-bit word, refilled with
+ * <tt>nextLong()</tt>. The DDG tree is stored as the non-zero bits of each column only, so its
+ * size is the total number of 1 bits in the weights. Rational weights can be used as their
+ * numerators over a common denominator.
+ *
+ * <p>
+ * The float probabilities of the table, a_i / m rounded to floats, are only used to summarise the
+ * draws, e.g. by {@link RandomGenSummarizer}.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class LoadedDiceRandomGen extends RandomGen {
+  // Largest total of the weights, so that 2^k fits in a long
+  public static final long MAX_TOTAL = 1L << 62;
+
+  private final Random random;
+
+  // Number of weights, which is also the index of the reject outcome
+  private final int size;
+
+  // Cumulative weights of the random numbers, the last being their total m
+  private final long[] cumWeights;
+  private final long total;
+
+  // Index of the only positive weight, otherwise -1
+  private final int trivialIndex;
+
+  // Number of columns, k = ceil(log2 m)
+  private final int depth;
+
+  // For column c, the outcomes with a 1 in bit k-1-c are entries[colStart[c]...colStart[c+1]-1]
+  private final int[] colStart;
+  private final int[] entries;
+
+  // Fenwick tree of the weights with the excluded ones removed, built by the first masked draw
+  // that searches it, and the excluded set removed from it
+  private long[] maskedTree;
+  private BitSet maskedExcluded;
+
+  // Buffered random bits not yet used, and how many of them there are
+  private long word;
+  private int bitsLeft;
+
+  // Number of random bits used
+  private long bitsConsumed;
+
+  /**
+   * Constructor for generator of random numbers with integer weights.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param weights
+   *          Same size array of non-negative weights, totalling at most {@link #MAX_TOTAL}
+   */
+  public LoadedDiceRandomGen(final int[] randomNums, final long[] weights) {
+    this(randomNums, weights, new Random());
+  }
+
+  /**
+   * Constructor for generator of random numbers with integer weights and a given seed.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param weights
+   *          Same size array of non-negative weights, totalling at most {@link #MAX_TOTAL}
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   */
+  public LoadedDiceRandomGen(final int[] randomNums, final long[] weights, final long seed) {
+    this(randomNums, weights, new Random(seed));
+  }
+
+  private LoadedDiceRandomGen(final int[] randomNums, final long[] weights, final Random random) {
+    super(randomNums, buildTable(randomNums == null ? -1 : randomNums.length,
+        probabilities(weights, total(randomNums, weights))), random,
+        trivialIndex(weights) >= 0);
+    this.random = random;
+    this.size = weights.length;
+    this.trivialIndex = trivialIndex(weights);
+    this.total = total(randomNums, weights);
+    this.cumWeights = new long[weights.length];
+    long sum = 0;
+    for (int i = 0; i < weights.length; i++) {
+      sum += weights[i];
+      cumWeights[i] = sum;
+    }
+    this.depth = 64 - Long.numberOfLeadingZeros(total - 1);
+    final long reject = (1L << depth) - total;
+
+    // Column c holds bit k-1-c of each weight, with the reject outcome last
+    this.colStart = new int[depth + 1];
+    int numEntries = 0;
+    for (int c = 0; c < depth; c++) {
+      colStart[c] = numEntries;
+      final int bit = depth - 1 - c;
+      for (int i = 0; i < size; i++) {
+        numEntries += (int) ((weights[i] >>> bit) & 1L);
+      }
+      numEntries += (int) ((reject >>> bit) & 1L);
+    }
+    colStart[depth] = numEntries;
+    this.entries = new int[numEntries];
+    int e = 0;
+    for (int c = 0; c < depth; c++) {
+      final int bit = depth - 1 - c;
+      for (int i = 0; i < size; i++) {
+        if (((weights[i] >>> bit) & 1L) != 0) {
+          entries[e++] = i;
+        }
+      }
+      if (((reject >>> bit) & 1L) != 0) {
+        entries[e++] = size;
+      }
+    }
+  }
+
+  /**
+   * Check the weights and calculate their total.
+   */
+  private static long total(final int[] randomNums, final long[] weights) {
+    if (randomNums == null || weights == null || randomNums.length != weights.length
+        || weights.length == 0) {
+      throw new IllegalArgumentException(
+          "Expecting arrays to be non-null and of the same non-zero length");
+    }
+    long total = 0;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] < 0) {
+        throw new IllegalArgumentException(String.format(
+            "Expecting non-negative weights, weight at index %d has illegal value: %d", i,
+            weights[i]));
+      }
+      total += weights[i];
+      if (total > MAX_TOTAL || total < 0) {
+        throw new IllegalArgumentException(
+            String.format("Expecting weights to total at most %d", MAX_TOTAL));
+      }
+    }
+    if (total == 0) {
+      throw new IllegalArgumentException("Expecting at least one positive weight");
+    }
+    return total;
+  }
+
+  /**
+   * Index of the only positive weight, or -1 if there is more than one. The float probabilities of
+   * the table round a tiny weight next to a large one to zero, so cannot decide this.
+   */
+  private static int trivialIndex(final long[] weights) {
+    int index = -1;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] > 0) {
+        if (index >= 0) {
+          return -1;
+        }
+        index = i;
+      }
+    }
+    return index;
+  }
+
+  private static float[] probabilities(final long[] weights, final long total) {
+    final double[] probs = new double[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      probs[i] = (double) weights[i] / total;
+    }
+    return Probabilities.normalise(probs);
+  }
+
+  /**
+   * Returns the index of one of the random numbers, with probability exactly proportional to its
+   * weight.
+   *
+   * @return index of the chosen random number
+   */
+  @Override
+  public int nextIndex() {
+    final int index = walk();
+    recordOccurrence(index);
+    return index;
+  }
+
+  /**
+   * Returns the index of one of the random numbers other than the excluded ones, with probability
+   * exactly proportional to its weight. Up to {@link #MASKED_REJECTION_TRIES} indices are walked
+   * until one is not excluded; otherwise a uniform long below the weight not excluded is searched
+   * for in a Fenwick tree of the weights with the excluded ones removed, kept between draws, so the
+   * cost is O(log k) however much weight is excluded.
+   *
+   * @param excluded
+   *          Indices of the random numbers not to choose
+   * @return index of the chosen random number
+   */
+  @Override
+  public int nextIndex(final BitSet excluded) {
+    for (int t = 0; t < MASKED_REJECTION_TRIES; t++) {
+      final int index = walk();
+      if (!excluded.get(index)) {
+        recordOccurrence(index);
+        return index;
+      }
+    }
+    applyExcluded(excluded);
+    long remaining = 0;
+    for (int i = size; i > 0; i -= i & -i) {
+      remaining += maskedTree[i];
+    }
+    if (remaining == 0) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting some weight not to be excluded, however all the weight %d is excluded",
+          total));
+    }
+    // Largest prefix of the leaves whose weight is at most the key, which is never an excluded
+    // or zero weight as the integer sums are exact
+    long key = nextLong(remaining);
+    int pos = 0;
+    for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+      final int next = pos + step;
+      if (next <= size && maskedTree[next] <= key) {
+        key -= maskedTree[next];
+        pos = next;
+      }
+    }
+    recordOccurrence(pos);
+    return pos;
+  }
+
+  /**
+   * Update the Fenwick tree of the weights to remove the excluded ones, building it on first use,
+   * and restoring the weights excluded last time but not this time.
+   */
+  private void applyExcluded(final BitSet excluded) {
+    if (maskedTree == null) {
+      maskedTree = new long[size + 1];
+      for (int i = 1; i <= size; i++) {
+        maskedTree[i] += weightBetween(i - 1, i - 1);
+        final int parent = i + (i & -i);
+        if (parent <= size) {
+          maskedTree[parent] += maskedTree[i];
+        }
+      }
+      maskedExcluded = new BitSet(size);
+    } else if (maskedExcluded.equals(excluded)) {
+      return;
+    }
+    for (int i = maskedExcluded.nextSetBit(0); i >= 0 && i < size;
+        i = maskedExcluded.nextSetBit(i + 1)) {
+      if (!excluded.get(i)) {
+        addToTree(i, weightBetween(i, i));
+      }
+    }
+    for (int i = excluded.nextSetBit(0); i >= 0 && i < size; i = excluded.nextSetBit(i + 1)) {
+      if (!maskedExcluded.get(i)) {
+        addToTree(i, -weightBetween(i, i));
+      }
+    }
+    maskedExcluded.clear();
+    maskedExcluded.or(excluded);
+  }
+
+  private void addToTree(final int index, final long delta) {
+    for (int i = index + 1; i < maskedTree.length; i += i & -i) {
+      maskedTree[i] += delta;
+    }
+  }
+
+  /**
+   * Returns an index between first and last inclusive, with probability exactly proportional to
+   * its weight: a uniform long below the weight of the range, offset by the weight before it, is
+   * searched for in the cumulative weights, in O(log k) however little weight the range holds.
+   *
+   * @param first
+   *          Smallest index to return
+   * @param last
+   *          Largest index to return, at least first
+   * @return index of the chosen random number
+   */
+  @Override
+  protected int nextIndex(final int first, final int last) {
+    final long weight = weightBetween(first, last);
+    if (weight == 0) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting some weight for the numbers in [%d, %d], however it is 0",
+          getRandomNums()[first], getRandomNums()[last]));
+    }
+    final long key = (first == 0 ? 0 : cumWeights[first - 1]) + nextLong(weight);
+    // First index where key < cumWeights[index], which lies in the range
+    int left = first;
+    int right = last;
+    while (left < right) {
+      final int mid = left + (right - left) / 2;
+      if (cumWeights[mid] <= key) {
+        left = mid + 1;
+      } else {
+        right = mid;
+      }
+    }
+    recordOccurrence(left);
+    return left;
+  }
+
+  private long weightBetween(final int first, final int last) {
+    return cumWeights[last] - (first == 0 ? 0 : cumWeights[first - 1]);
+  }
+
+  /**
+   * Walk down the DDG tree to choose an index, without recording it.
+   */
+  private int walk() {
+    if (trivialIndex >= 0) {
+      // Only one positive weight, so no random bits are needed
+      return trivialIndex;
+    }
+    int c = 0;
+    int d = 0;
+    while (true) {
+      d = (d << 1) + 1 - nextBit();
+      final int h = colStart[c + 1] - colStart[c];
+      if (d < h) {
+        final int outcome = entries[colStart[c] + d];
+        if (outcome < size) {
+          return outcome;
+        }
+        // Reject outcome, start again from the root
+        c = 0;
+        d = 0;
+      } else {
+        d -= h;
+        c++;
+      }
+    }
+  }
+
+  /**
+   * Fills part of an array by systematic resampling with exact integer keys: one uniform r below
+   * the total m, and keys floor((j*m + r)/n), i.e. floor((j + u)*m/n) for a uniform u in [0, 1),
+   * swept once over the cumulative weights. Each number occurs within one of its expected n*a_i/m
+   * times, and exactly that many when n divides it, in O(n + k).
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number n of elements to fill
+   */
+  @Override
+  public void nextNumsSystematic(final int[] dest, final int offset, final int length) {
+    resampleExact(dest, offset, length, false);
+  }
+
+  /**
+   * Fills part of an array by stratified resampling with exact integer keys: a new uniform r below
+   * the total m for each key floor((j*m + r)/n), one in each of the n strata, swept once over the
+   * cumulative weights in O(n + k).
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number n of elements to fill
+   */
+  @Override
+  public void nextNumsStratified(final int[] dest, final int offset, final int length) {
+    resampleExact(dest, offset, length, true);
+  }
+
+  private void resampleExact(final int[] dest, final int offset, final int length,
+      final boolean stratified) {
+    checkRange(dest.length, offset, length);
+    if (length == 0) {
+      return;
+    }
+    final int[] randomNums = getRandomNums();
+    if (trivialIndex >= 0) {
+      Arrays.fill(dest, offset, offset + length, randomNums[trivialIndex]);
+      recordOccurrences(trivialIndex, length);
+      return;
+    }
+    // j*m as quotient and remainder of n, advanced by those of m, so nothing overflows
+    final long stepQuot = total / length;
+    final long stepRem = total % length;
+    long baseQuot = 0;
+    long baseRem = 0;
+    long r = nextLong(total);
+    int index = 0;
+    int run = 0;
+    for (int j = 0; j < length; j++) {
+      if (stratified && j > 0) {
+        r = nextLong(total);
+      }
+      // floor((j*m + r)/n), which is below m
+      final long key = baseQuot + r / length + (baseRem + r % length) / length;
+      // Same segments as the walk: the first index where key < cumWeights[index]
+      while (cumWeights[index] <= key) {
+        if (run > 0) {
+          recordOccurrences(index, run);
+          run = 0;
+        }
+        index++;
+      }
+      dest[offset + j] = randomNums[index];
+      run++;
+      baseQuot += stepQuot;
+      baseRem += stepRem;
+      if (baseRem >= length) {
+        baseQuot++;
+        baseRem -= length;
+      }
+    }
+    recordOccurrences(index, run);
+  }
+
+  /**
+   * Uniform random long between 0 inclusive and a positive bound exclusive, rejecting the values
+   * of nextLong() that would bias the remainder.
+   */
+  private long nextLong(final long bound) {
+    final long m = bound - 1;
+    long r = random.nextLong();
+    bitsConsumed += 64;
+    if ((bound & m) == 0L) {
+      return r & m;
+    }
+    for (long u = r >>> 1; u + m - (r = u % bound) < 0L; u = random.nextLong() >>> 1) {
+      bitsConsumed += 64;
+    }
+    return r;
+  }
+
+  private int nextBit() {
+    if (bitsLeft == 0) {
+      word = random.nextLong();
+      bitsLeft = 64;
+    }
+    final int bit = (int) (word & 1L);
+    word >>>= 1;
+    bitsLeft--;
+    bitsConsumed++;
+    return bit;
+  }
+
+  /**
+   * Gets the number of random bits used by all the draws so far.
+   *
+   * @return number of bits consumed
+   */
+  public long getBitsConsumed() {
+    return bitsConsumed;
+  }
+
+}
@@ -0,0 +1,95 @@
+package man;
+
+/**
+ * Random generator of <tt>long</tt> values, when called multiple times over a long period, it
+ * should return the values roughly with the initialised probabilities.
+ *
+ * <p>
+ * Shares the index-sampling core of {@link RandomGen}, see {@link AbstractRandomGen}, and returns
+ * the chosen values as primitives.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class LongRandomGen extends AbstractRandomGen {
+
+  // Values that may be returned by nextNum()
+  private final long[] values;
+
+  /**
+   * Constructor for class to generate long values according to given distribution.
+   *
+   * @param values
+   *          Array of long values that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the corresponding probability values between
+   *          0 and 1 of the value that maybe generated
+   */
+  public LongRandomGen(final long[] values, final float[] probabilities) {
+    super(buildTable(values == null ? -1 : values.length, probabilities));
+    this.values = values;
+  }
+
+  /**
+   * Constructor to generate long values according to given distribution with a given seed.
+   *
+   * @param values
+   *          Array of long values that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the corresponding probability values between
+   *          0 and 1 of the value that maybe generated
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   */
+  public LongRandomGen(final long[] values, final float[] probabilities, final long seed) {
+    this(values, probabilities);
+    setSeed(seed);
+  }
+
+  /**
+   * Returns one of the values. When this method is called multiple times over a long period, it
+   * should return the values roughly with the initialised probabilities.
+   *
+   * @return long value
+   */
+  public long nextNum() {
+    return values[nextIndex()];
+  }
+
+  /**
+   * Fills an array with values, as if by calling nextNum() once for each element.
+   *
+   * @param dest
+   *          Array to fill
+   */
+  public void nextNums(final long[] dest) {
+    nextNums(dest, 0, dest.length);
+  }
+
+  /**
+   * Fills part of an array with values, as if by calling nextNum() once for each element.
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number of elements to fill
+   */
+  public void nextNums(final long[] dest, final int offset, final int length) {
+    checkRange(dest.length, offset, length);
+    for (int i = offset; i < offset + length; i++) {
+      dest[i] = values[nextIndex()];
+    }
+  }
+
+  /**
+   * Gets the given input array of values.
+   *
+   * @return The input array of the choice of long values
+   */
+  public long[] getValues() {
+    return values;
+  }
+
+}
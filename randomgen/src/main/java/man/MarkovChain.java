@@ -0,0 +1,373 @@
+package man;
+
+import static man.RandomGen.ACCEPTABLE_ERROR;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Markov chain sampler where each state has its own distribution of next states.
+ *
+ * <p>
+ * Rather than one {@link RandomGen} per state, all the rows of the transition table are packed
+ * into one contiguous table: the next states and cumulative probabilities of state <tt>s</tt> lie
+ * at indices <tt>rowStart[s]</tt> to <tt>rowStart[s+1]-1</tt>. A step chooses the next state with a
+ * binary search of the row of the current state, as {@link DistributionTable} does for a single
+ * distribution, using a single source of randomness for the whole chain.
+ *
+ * <p>
+ * The number of visits to each state and the number of times each transition is taken are
+ * recorded, and a summary of the transitions out of any state can be built with
+ * {@link #getRowSummarizer(int)}.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class MarkovChain {
+  // Scale of the top 24 bits of a random int to a float in [0, 1), as Random.nextFloat()
+  private static final float FLOAT_UNIT = 0x1.0p-24f;
+
+  // Minimum number of chains simulated by each parallel task
+  private static final int MIN_CHAINS_PER_TASK = 16;
+
+  // Start of the row of each state, with one extra entry for the end of the last row
+  private final int[] rowStart;
+
+  // Next state of each transition
+  private final int[] nextStates;
+
+  // Probability of each transition
+  private final float[] probabilities;
+
+  // Cumulative probabilities within each row
+  private final float[] cumProb;
+
+  // Record of how many times each state has been visited
+  private final long[] visits;
+
+  // Record of how many times each transition has been taken
+  private final long[] transitions;
+
+  // Single random source used to step the chain
+  private final SplittableRandom random;
+
+  /**
+   * Constructor of a Markov chain from the transitions out of each state.
+   *
+   * @param nextStates
+   *          For each state, array of the states that may follow it
+   * @param probabilities
+   *          For each state, same size array of float values which are the corresponding
+   *          probabilities between 0 and 1 of moving to each of the next states
+   */
+  public MarkovChain(final int[][] nextStates, final float[][] probabilities) {
+    this(nextStates, probabilities, new SplittableRandom());
+  }
+
+  /**
+   * Constructor of a Markov chain with a given seed.
+   *
+   * @param nextStates
+   *          For each state, array of the states that may follow it
+   * @param probabilities
+   *          For each state, same size array of float values which are the corresponding
+   *          probabilities between 0 and 1 of moving to each of the next states
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   */
+  public MarkovChain(final int[][] nextStates, final float[][] probabilities, final long seed) {
+    this(nextStates, probabilities, new SplittableRandom(seed));
+  }
+
+  private MarkovChain(final int[][] nextStates, final float[][] probabilities,
+      final SplittableRandom random) {
+    if (nextStates == null || probabilities == null || nextStates.length != probabilities.length
+        || nextStates.length == 0) {
+      throw new IllegalArgumentException(
+          "Expecting arrays of rows to be non-null and of the same non-zero length");
+    }
+    final int numStates = nextStates.length;
+    this.rowStart = new int[numStates + 1];
+    long size = 0;
+    for (int s = 0; s < numStates; s++) {
+      if (nextStates[s] == null || probabilities[s] == null
+          || nextStates[s].length != probabilities[s].length || nextStates[s].length == 0) {
+        throw new IllegalArgumentException(String.format(
+            "Expecting arrays of row %d to be non-null and of the same non-zero length", s));
+      }
+      rowStart[s] = (int) size;
+      size += nextStates[s].length;
+      if (size > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Expecting fewer transitions in the table");
+      }
+    }
+    rowStart[numStates] = (int) size;
+
+    this.nextStates = new int[(int) size];
+    this.probabilities = new float[(int) size];
+    this.cumProb = new float[(int) size];
+    for (int s = 0; s < numStates; s++) {
+      packRow(s, nextStates[s], probabilities[s]);
+    }
+    this.visits = new long[numStates];
+    this.transitions = new long[(int) size];
+    this.random = random;
+  }
+
+  /**
+   * Copy a row into the packed table, checking that the next states are valid and the
+   * probabilities lie between 0.0 and 1.0 and sum to 1.0.
+   */
+  private void packRow(final int state, final int[] next, final float[] probs) {
+    final int start = rowStart[state];
+    float sum = 0.0f;
+    for (int i = 0; i < next.length; i++) {
+      if (next[i] < 0 || next[i] >= numStates()) {
+        throw new IllegalArgumentException(String.format(
+            "Expecting next states between 0 and %d, row %d has illegal state %d", numStates() - 1,
+            state, next[i]));
+      }
+      DistributionTable.checkProbability(i, probs[i]);
+      sum += probs[i];
+      nextStates[start + i] = next[i];
+      probabilities[start + i] = probs[i];
+      cumProb[start + i] = sum;
+    }
+    if (Math.abs(sum - 1.0f) > ACCEPTABLE_ERROR * next.length) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting probabilities of row %d to total to 1.0, however total is %9.8f", state,
+          sum - 1.0f));
+    }
+  }
+
+  // Number of states, usable while the table is being packed
+  private int numStates() {
+    return rowStart.length - 1;
+  }
+
+  /**
+   * Take one step of the chain from the given state.
+   *
+   * @param state
+   *          current state
+   * @return next state
+   */
+  public int step(final int state) {
+    checkState(state);
+    final int idx = chooseTransition(state, random);
+    visits[state]++;
+    transitions[idx]++;
+    return nextStates[idx];
+  }
+
+  /**
+   * Simulate a trajectory of the chain, recording every state visited.
+   *
+   * @param start
+   *          initial state
+   * @param trajectory
+   *          array filled with the state after each step
+   * @return final state
+   */
+  public int simulate(final int start, final int[] trajectory) {
+    checkState(start);
+    int state = start;
+    for (int i = 0; i < trajectory.length; i++) {
+      state = step(state);
+      trajectory[i] = state;
+    }
+    return state;
+  }
+
+  /**
+   * Simulate a trajectory of the chain for a number of steps.
+   *
+   * @param start
+   *          initial state
+   * @param steps
+   *          number of steps
+   * @return final state
+   */
+  public int simulate(final int start, final long steps) {
+    checkState(start);
+    int state = start;
+    for (long i = 0; i < steps; i++) {
+      state = step(state);
+    }
+    return state;
+  }
+
+  /**
+   * Simulate many independent chains in parallel on the common fork-join pool. Each chain has its
+   * own random stream split from the random source of this chain, so the result is repeatable for
+   * a given seed whatever the number of threads.
+   *
+   * @param starts
+   *          initial state of each chain
+   * @param steps
+   *          number of steps of each chain
+   * @return final state of each chain
+   */
+  public int[] simulateParallel(final int[] starts, final long steps) {
+    return simulateParallel(starts, steps, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Simulate many independent chains in parallel.
+   *
+   * @param starts
+   *          initial state of each chain
+   * @param steps
+   *          number of steps of each chain
+   * @param pool
+   *          Fork-join pool to run the chains on
+   * @return final state of each chain
+   */
+  public int[] simulateParallel(final int[] starts, final long steps, final ForkJoinPool pool) {
+    for (final int start : starts) {
+      checkState(start);
+    }
+    final int[] finals = new int[starts.length];
+    final SplittableRandom[] randoms = new SplittableRandom[starts.length];
+    for (int c = 0; c < starts.length; c++) {
+      randoms[c] = random.split();
+    }
+
+    final int numTasks = Math.max(1,
+        Math.min(pool.getParallelism() * 4, starts.length / MIN_CHAINS_PER_TASK));
+    final List<Callable<Void>> tasks = new ArrayList<>(numTasks);
+    for (int t = 0; t < numTasks; t++) {
+      final int from = (int) ((long) starts.length * t / numTasks);
+      final int to = (int) ((long) starts.length * (t + 1) / numTasks);
+      tasks.add(() -> {
+        runChains(starts, steps, finals, randoms, from, to);
+        return null;
+      });
+    }
+    for (final Future<Void> future : pool.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while simulating chains", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Failed to simulate chains", e.getCause());
+      }
+    }
+    return finals;
+  }
+
+  /**
+   * Run a range of chains with local counts, then add them to the counts of this chain.
+   */
+  private void runChains(final int[] starts, final long steps, final int[] finals,
+      final SplittableRandom[] randoms, final int from, final int to) {
+    final long[] localVisits = new long[visits.length];
+    final long[] localTransitions = new long[transitions.length];
+    for (int c = from; c < to; c++) {
+      final SplittableRandom rnd = randoms[c];
+      int state = starts[c];
+      for (long i = 0; i < steps; i++) {
+        final int idx = chooseTransition(state, rnd);
+        localVisits[state]++;
+        localTransitions[idx]++;
+        state = nextStates[idx];
+      }
+      finals[c] = state;
+    }
+    synchronized (this) {
+      for (int i = 0; i < localVisits.length; i++) {
+        visits[i] += localVisits[i];
+      }
+      for (int i = 0; i < localTransitions.length; i++) {
+        transitions[i] += localTransitions[i];
+      }
+    }
+  }
+
+  /**
+   * Binary search of the row of the given state for the transition where a random float key lies.
+   *
+   * @return index of the transition in the packed table
+   */
+  private int chooseTransition(final int state, final SplittableRandom rnd) {
+    int left = rowStart[state];
+    int right = rowStart[state + 1] - 1;
+    if (left == right) {
+      // Only one next state
+      return left;
+    }
+    final float key = (rnd.nextInt() >>> 8) * FLOAT_UNIT;
+    while (left < right) {
+      int mid = left + (right - left) / 2;
+      if (cumProb[mid] < key) {
+        left = mid + 1;
+      } else {
+        right = mid;
+      }
+    }
+    return left;
+  }
+
+  private void checkState(final int state) {
+    if (state < 0 || state >= visits.length) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting state between 0 and %d, however state is %d", visits.length - 1, state));
+    }
+  }
+
+  /**
+   * Gets the number of states.
+   *
+   * @return number of states
+   */
+  public int getNumStates() {
+    return visits.length;
+  }
+
+  /**
+   * Gets array of the number of times each state has been left, i.e. visited before a step.
+   *
+   * @return a long array recording number of visits of each state.
+   */
+  public long[] getVisits() {
+    return visits;
+  }
+
+  /**
+   * Gets the total number of steps taken by all chains.
+   *
+   * @return number of steps
+   */
+  public long getCount() {
+    long total = 0;
+    for (final long v : visits) {
+      total += v;
+    }
+    return total;
+  }
+
+  /**
+   * Gets a summary of the transitions taken out of a state, where the random numbers are the next
+   * states and the count is the number of visits to the state.
+   *
+   * @param state
+   *          the state
+   * @return summarizer of the transitions from the state
+   */
+  public RandomGenSummarizer getRowSummarizer(final int state) {
+    checkState(state);
+    final int from = rowStart[state];
+    final int to = rowStart[state + 1];
+    return new RandomGenSummarizer(Arrays.copyOfRange(nextStates, from, to),
+        Arrays.copyOfRange(probabilities, from, to), Arrays.copyOfRange(transitions, from, to),
+        visits[state]);
+  }
+
+}
@@ -0,0 +1,91 @@
+package man;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Random generator of arbitrary values, when called multiple times over a long period, it should
+ * return the values roughly with the initialised probabilities.
+ *
+ * <p>
+ * Shares the index-sampling core of {@link RandomGen}, see {@link AbstractRandomGen}.
+ *
+ * @param <T>
+ *          type of the values
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class ObjectRandomGen<T> extends AbstractRandomGen {
+
+  // Values that may be returned by nextValue()
+  private final List<T> values;
+
+  /**
+   * Constructor for class to generate values according to given distribution.
+   *
+   * @param values
+   *          List of values that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the corresponding probability values between
+   *          0 and 1 of the value that maybe generated
+   */
+  public ObjectRandomGen(final List<? extends T> values, final float[] probabilities) {
+    super(buildTable(values == null ? -1 : values.size(), probabilities));
+    this.values = Collections.unmodifiableList(new ArrayList<T>(values));
+  }
+
+  /**
+   * Constructor to generate values according to given distribution with a given seed.
+   *
+   * @param values
+   *          List of values that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the corresponding probability values between
+   *          0 and 1 of the value that maybe generated
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   */
+  public ObjectRandomGen(final List<? extends T> values, final float[] probabilities,
+      final long seed) {
+    this(values, probabilities);
+    setSeed(seed);
+  }
+
+  /**
+   * Returns one of the values. When this method is called multiple times over a long period, it
+   * should return the values roughly with the initialised probabilities.
+   *
+   * @return chosen value
+   */
+  public T nextValue() {
+    return values.get(nextIndex());
+  }
+
+  /**
+   * Fills part of an array with values, as if by calling nextValue() once for each element.
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number of elements to fill
+   */
+  public void nextValues(final T[] dest, final int offset, final int length) {
+    checkRange(dest.length, offset, length);
+    for (int i = offset; i < offset + length; i++) {
+      dest[i] = values.get(nextIndex());
+    }
+  }
+
+  /**
+   * Gets the values that maybe generated.
+   *
+   * @return unmodifiable list of the choice of values
+   */
+  public List<T> getValues() {
+    return values;
+  }
+
+}
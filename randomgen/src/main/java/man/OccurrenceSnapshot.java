@@ -0,0 +1,318 @@
+package man;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Immutable snapshot of the number of times each random number of a distribution has been drawn,
+ * with 64-bit counts, which can be merged with snapshots of the same distribution from other
+ * generators, threads or processes.
+ *
+ * <p>
+ * Merging adds the counts, so it is associative and commutative, and snapshots can be combined in
+ * any order or tree shape before being summarised by {@link RandomGenSummarizer}. Snapshots can
+ * only be merged when their random numbers and probabilities are identical.
+ *
+ * <p>
+ * A snapshot is serialised in a compact binary form: a header, then the random numbers and
+ * probabilities, then each count as a variable-length integer of 7 bits per byte, so small counts
+ * take a single byte.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public final class OccurrenceSnapshot {
+  // First int of the serialised form, followed by the format version
+  private static final int MAGIC = 0x524E4753;
+  private static final int VERSION = 1;
+
+  // Largest number of random numbers read from a serialised snapshot
+  public static final int MAX_VALUES = 1 << 26;
+
+  private final int[] randomNums;
+  private final float[] probabilities;
+  private final long[] occurrences;
+  private final long count;
+
+  private OccurrenceSnapshot(final int[] randomNums, final float[] probabilities,
+      final long[] occurrences, final long count) {
+    this.randomNums = randomNums;
+    this.probabilities = probabilities;
+    this.occurrences = occurrences;
+    this.count = count;
+  }
+
+  /**
+   * Take a snapshot of the occurrences of a generator, which may still be drawing in another
+   * thread. The occurrences are those at one instant between two draws, and the count of the
+   * snapshot is their total, see {@link AbstractRandomGen#copyOccurrences()}.
+   *
+   * @param generator
+   *          A random number generator {@link RandomGen}
+   * @return snapshot of the draws so far
+   */
+  public static OccurrenceSnapshot of(final RandomGen generator) {
+    final long[] counts = generator.copyOccurrences();
+    long total = 0;
+    for (final long occurrence : counts) {
+      total += occurrence;
+    }
+    return new OccurrenceSnapshot(generator.getRandomNums().clone(),
+        generator.getProbabilities(), counts, total);
+  }
+
+  /**
+   * Create a snapshot from arrays describing a distribution and its counts.
+   *
+   * @param randomNums
+   *          Array of integers that maybe generated
+   * @param probabilities
+   *          Same size array of the corresponding probability values
+   * @param occurrences
+   *          Same size array of the non-negative number of occurrences of each random number
+   * @return snapshot of copies of the arrays
+   */
+  public static OccurrenceSnapshot of(final int[] randomNums, final float[] probabilities,
+      final long[] occurrences) {
+    if (randomNums == null || probabilities == null || occurrences == null
+        || randomNums.length == 0 || probabilities.length != randomNums.length
+        || occurrences.length != randomNums.length) {
+      throw new IllegalArgumentException(
+          "Expecting arrays to be non-null and of the same non-zero length");
+    }
+    long total = 0;
+    for (int i = 0; i < occurrences.length; i++) {
+      if (occurrences[i] < 0) {
+        throw new IllegalArgumentException(String.format(
+            "Expecting non-negative occurrences, occurrence at index %d is %d", i,
+            occurrences[i]));
+      }
+      total = Math.addExact(total, occurrences[i]);
+    }
+    return new OccurrenceSnapshot(randomNums.clone(), probabilities.clone(), occurrences.clone(),
+        total);
+  }
+
+  /**
+   * Merge with a snapshot of the same distribution, adding the counts.
+   *
+   * @param other
+   *          snapshot with the same random numbers and probabilities
+   * @return new snapshot of the combined counts
+   */
+  public OccurrenceSnapshot merge(final OccurrenceSnapshot other) {
+    if (!isSameDistribution(other)) {
+      throw new IllegalArgumentException(
+          "Expecting snapshots of the same random numbers and probabilities");
+    }
+    final long[] counts = new long[occurrences.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = Math.addExact(occurrences[i], other.occurrences[i]);
+    }
+    return new OccurrenceSnapshot(randomNums, probabilities, counts,
+        Math.addExact(count, other.count));
+  }
+
+  /**
+   * Merge any number of snapshots of the same distribution.
+   *
+   * @param snapshots
+   *          non-empty collection of snapshots with the same random numbers and probabilities
+   * @return new snapshot of the combined counts
+   */
+  public static OccurrenceSnapshot mergeAll(final Collection<OccurrenceSnapshot> snapshots) {
+    if (snapshots == null || snapshots.isEmpty()) {
+      throw new IllegalArgumentException("Expecting at least one snapshot to merge");
+    }
+    final Iterator<OccurrenceSnapshot> it = snapshots.iterator();
+    final OccurrenceSnapshot first = it.next();
+    final long[] counts = first.occurrences.clone();
+    long total = first.count;
+    while (it.hasNext()) {
+      final OccurrenceSnapshot next = it.next();
+      if (!first.isSameDistribution(next)) {
+        throw new IllegalArgumentException(
+            "Expecting snapshots of the same random numbers and probabilities");
+      }
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = Math.addExact(counts[i], next.occurrences[i]);
+      }
+      total = Math.addExact(total, next.count);
+    }
+    return new OccurrenceSnapshot(first.randomNums, first.probabilities, counts, total);
+  }
+
+  /**
+   * Whether another snapshot is of the same random numbers and probabilities, so can be merged.
+   *
+   * @param other
+   *          snapshot to compare
+   * @return <tt>true</tt> if the snapshots can be merged
+   */
+  public boolean isSameDistribution(final OccurrenceSnapshot other) {
+    return other != null && (other.randomNums == randomNums
+        || Arrays.equals(other.randomNums, randomNums))
+        && (other.probabilities == probabilities
+            || Arrays.equals(other.probabilities, probabilities));
+  }
+
+  /**
+   * Write the snapshot in its compact binary form.
+   *
+   * @param out
+   *          destination of the bytes
+   * @throws IOException
+   *           if the bytes cannot be written
+   */
+  public void writeTo(final DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeInt(randomNums.length);
+    for (final int num : randomNums) {
+      out.writeInt(num);
+    }
+    for (final float prob : probabilities) {
+      out.writeFloat(prob);
+    }
+    for (final long occurrence : occurrences) {
+      long v = occurrence;
+      while ((v & ~0x7FL) != 0) {
+        out.writeByte((int) (v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      out.writeByte((int) v);
+    }
+  }
+
+  /**
+   * Read a snapshot written by {@link #writeTo(DataOutput)}.
+   *
+   * @param in
+   *          source of the bytes
+   * @return snapshot read
+   * @throws IOException
+   *           if the bytes cannot be read or are not a snapshot
+   */
+  public static OccurrenceSnapshot readFrom(final DataInput in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Expecting an occurrence snapshot, however header does not match");
+    }
+    final int version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException(
+          String.format("Expecting snapshot version %d, however it is %d", VERSION, version));
+    }
+    final int k = in.readInt();
+    if (k < 1 || k > MAX_VALUES) {
+      throw new IOException(String.format(
+          "Expecting between 1 and %d random numbers, however there are %d", MAX_VALUES, k));
+    }
+    final int[] nums = new int[k];
+    for (int i = 0; i < k; i++) {
+      nums[i] = in.readInt();
+    }
+    final float[] probs = new float[k];
+    for (int i = 0; i < k; i++) {
+      probs[i] = in.readFloat();
+    }
+    final long[] counts = new long[k];
+    long total = 0;
+    for (int i = 0; i < k; i++) {
+      long v = 0;
+      for (int shift = 0;; shift += 7) {
+        if (shift > 63) {
+          throw new IOException("Expecting a variable-length count of at most 10 bytes");
+        }
+        final int b = in.readUnsignedByte();
+        v |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          break;
+        }
+      }
+      if (v < 0) {
+        throw new IOException(String.format("Expecting non-negative count at index %d", i));
+      }
+      counts[i] = v;
+      try {
+        total = Math.addExact(total, v);
+      } catch (ArithmeticException e) {
+        throw new IOException("Expecting the counts to total at most Long.MAX_VALUE", e);
+      }
+    }
+    return new OccurrenceSnapshot(nums, probs, counts, total);
+  }
+
+  /**
+   * Gets the compact binary form of the snapshot.
+   *
+   * @return bytes of the snapshot
+   */
+  public byte[] toByteArray() {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + randomNums.length * 10);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      writeTo(out);
+    } catch (IOException e) {
+      // Not thrown by a byte array
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Read a snapshot from its compact binary form.
+   *
+   * @param bytes
+   *          bytes of a snapshot
+   * @return snapshot read
+   * @throws IOException
+   *           if the bytes are not a snapshot
+   */
+  public static OccurrenceSnapshot fromByteArray(final byte[] bytes) throws IOException {
+    return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  /**
+   * Gets a copy of the random numbers of the distribution.
+   *
+   * @return array of random numbers
+   */
+  public int[] getRandomNums() {
+    return randomNums.clone();
+  }
+
+  /**
+   * Gets a copy of the probabilities of the distribution.
+   *
+   * @return array of probabilities
+   */
+  public float[] getProbabilities() {
+    return probabilities.clone();
+  }
+
+  /**
+   * Gets a copy of the number of occurrences of each random number.
+   *
+   * @return array of 64-bit counts
+   */
+  public long[] getOccurrences() {
+    return occurrences.clone();
+  }
+
+  /**
+   * Gets the total number of draws.
+   *
+   * @return sum of the occurrences
+   */
+  public long getCount() {
+    return count;
+  }
+
+}
@@ -0,0 +1,243 @@
+package man;
+
+import java.io.Closeable;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Random number generator where a background thread draws ahead into a ring buffer, so that a
+ * latency-sensitive thread usually only has to take the next value from the buffer.
+ *
+ * <p>
+ * The buffer is lock-free with a single producer, the background thread, and any number of
+ * consumers. The producer writes the indices of the chosen random numbers into the ring and then
+ * publishes the new tail. A consumer reads the index at the head, and claims it by advancing the
+ * head with a compare-and-set, retrying if another consumer claimed it first. If the buffer has
+ * drained, the consumer draws directly from the shared {@link DistributionTable} instead of
+ * waiting. When the ring is full the producer parks until a consumer has taken half of it, and the
+ * consumer that reaches that point wakes it.
+ *
+ * <p>
+ * Occurrences are counted when a value is taken by a consumer, not when it is drawn into the
+ * buffer, so they record exactly the values that have been returned.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class PrefetchingRandomGen implements Closeable {
+  // Default number of values drawn ahead
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  // Values that may be returned by nextNum(), and their table
+  private final int[] randomNums;
+  private final DistributionTable table;
+
+  // Ring buffer of indices of random numbers, with capacity a power of 2
+  private final int[] ring;
+  private final int mask;
+
+  // Next position to be taken by a consumer, and next position to be written by the producer
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  // Record of how many times each random number has been returned
+  private final AtomicIntegerArray occurrences;
+
+  // Number of values drawn directly because the buffer was empty
+  private final AtomicLong fallbacks = new AtomicLong();
+
+  // Head a consumer must reach to wake the parked producer, or Long.MAX_VALUE when it is drawing
+  private volatile long wakeAt = Long.MAX_VALUE;
+
+  private final Thread producer;
+  private volatile boolean running = true;
+
+  /**
+   * Constructor of a generator drawing {@link #DEFAULT_CAPACITY} values ahead from the distribution
+   * of the given generator, once started with {@link #start()}.
+   *
+   * @param generator
+   *          generator whose random numbers and table are used, its own occurrences are unchanged
+   */
+  public PrefetchingRandomGen(final RandomGen generator) {
+    this(generator, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructor of a generator drawing ahead from the distribution of the given generator, once
+   * started with {@link #start()}.
+   *
+   * @param generator
+   *          generator whose random numbers and table are used, its own occurrences are unchanged
+   * @param capacity
+   *          number of values to draw ahead, rounded up to a power of 2
+   */
+  public PrefetchingRandomGen(final RandomGen generator, final int capacity) {
+    this(generator, capacity, new Random());
+  }
+
+  /**
+   * Constructor of a generator drawing ahead, where the background thread draws with a given
+   * seed, once started with {@link #start()}.
+   *
+   * @param generator
+   *          generator whose random numbers and table are used, its own occurrences are unchanged
+   * @param capacity
+   *          number of values to draw ahead, rounded up to a power of 2
+   * @param seed
+   *          to create the random number generator of the background thread.
+   */
+  public PrefetchingRandomGen(final RandomGen generator, final int capacity, final long seed) {
+    this(generator, capacity, new Random(seed));
+  }
+
+  private PrefetchingRandomGen(final RandomGen generator, final int capacity,
+      final Random random) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException(String
+          .format("Expecting capacity between 1 and %d, however it is %d", 1 << 30, capacity));
+    }
+    this.randomNums = generator.getRandomNums();
+    this.table = generator.getTable();
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    this.ring = new int[size];
+    this.mask = size - 1;
+    this.occurrences = new AtomicIntegerArray(randomNums.length);
+    this.producer = new Thread(() -> produce(random), "prefetching-random-gen");
+    producer.setDaemon(true);
+  }
+
+  /**
+   * Start the background thread drawing ahead. Until then, nextNum() draws every value directly.
+   */
+  public void start() {
+    producer.start();
+  }
+
+  /**
+   * Background loop drawing into the free part of the ring, publishing the tail after each batch.
+   */
+  private void produce(final Random random) {
+    long t = tail.get();
+    while (running) {
+      final long limit = head.get() + ring.length;
+      if (t < limit) {
+        for (; t < limit; t++) {
+          ring[(int) t & mask] = table.sampleIndex(random);
+        }
+        // Ordered write, so the indices are visible to a consumer that sees the new tail
+        tail.lazySet(t);
+      } else {
+        // Ask to be woken once half the ring is free, then check the head again in case a
+        // consumer passed that point before it could see the request
+        wakeAt = t - ring.length + Math.max(1, ring.length / 2);
+        if (head.get() < wakeAt && running) {
+          LockSupport.park(this);
+        }
+        wakeAt = Long.MAX_VALUE;
+      }
+    }
+  }
+
+  /**
+   * Returns integer that is one of the randomNums, taken from the buffer if it is not empty.
+   *
+   * @return int randomNum
+   */
+  public int nextNum() {
+    while (true) {
+      final long h = head.get();
+      if (h >= tail.get()) {
+        // Buffer has drained, so draw directly
+        final int index = table.sampleIndex(ThreadLocalRandom.current());
+        fallbacks.incrementAndGet();
+        occurrences.incrementAndGet(index);
+        return randomNums[index];
+      }
+      // Read before the claim: the producer cannot overwrite this slot until the head moves on
+      final int index = ring[(int) h & mask];
+      if (head.compareAndSet(h, h + 1)) {
+        if (h + 1 >= wakeAt) {
+          LockSupport.unpark(producer);
+        }
+        occurrences.incrementAndGet(index);
+        return randomNums[index];
+      }
+    }
+  }
+
+  /**
+   * Gets the number of values drawn ahead that have not yet been taken.
+   *
+   * @return number of values in the buffer
+   */
+  public int getBuffered() {
+    return (int) Math.max(0L, tail.get() - head.get());
+  }
+
+  /**
+   * Gets the number of values drawn directly because the buffer was empty.
+   *
+   * @return number of fallbacks
+   */
+  public long getFallbacks() {
+    return fallbacks.get();
+  }
+
+  /**
+   * Gets a copy of the number of occurrences of each random number returned by nextNum().
+   *
+   * @return an integer array recording number of occurrences of each random number choice.
+   */
+  public int[] getOccurrences() {
+    final int[] copy = new int[occurrences.length()];
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = occurrences.get(i);
+    }
+    return copy;
+  }
+
+  /**
+   * Gets a summary of the values returned so far.
+   *
+   * @return summarizer of the occurrences
+   */
+  public RandomGenSummarizer getSummarizer() {
+    final int[] copy = getOccurrences();
+    int count = 0;
+    for (final int occurrence : copy) {
+      count += occurrence;
+    }
+    return new RandomGenSummarizer(randomNums, table.getProbabilities(), copy, count);
+  }
+
+  /**
+   * Gets the given input array of random numbers.
+   *
+   * @return The input array of the choice of random integers
+   */
+  public int[] getRandomNums() {
+    return randomNums;
+  }
+
+  /**
+   * Stop the background thread, after which nextNum() draws every value directly.
+   */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(producer);
+    try {
+      producer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
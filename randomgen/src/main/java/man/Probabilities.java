@@ -0,0 +1,143 @@
+package man;
+
+import static man.RandomGen.ACCEPTABLE_ERROR;
+
+/**
+ * Utility methods for turning weights into an array of probabilities accepted by
+ * {@link RandomGen}.
+ *
+ * <p>
+ * The generator checks that the running float sum of the probabilities is within
+ * <tt>k * ACCEPTABLE_ERROR</tt> of 1.0, which for small k is tighter than the rounding of a single
+ * float. Probabilities normalised from weights therefore have any residual rounding error moved
+ * onto the largest probability, where its relative effect is smallest.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+final class Probabilities {
+
+  // Maximum number of attempts to move rounding error onto the largest probability
+  private static final int MAX_ADJUSTMENTS = 4;
+
+  private Probabilities() {
+  }
+
+  /**
+   * Normalise an array of non-negative weights into a new array of probabilities that sum to 1.0
+   * as checked by {@link RandomGen}.
+   *
+   * @param weights
+   *          Array of non-negative weights
+   * @return Same size array of probabilities
+   */
+  static float[] normalise(final double[] weights) {
+    return normalise(weights, sum(weights, 0, weights.length));
+  }
+
+  /**
+   * Normalise an array of non-negative weights with a known total into a new array of
+   * probabilities. Each weight is divided in double precision before it is narrowed to a float, so
+   * weights beyond the range of a float still give their probability.
+   *
+   * @param weights
+   *          Array of non-negative weights
+   * @param total
+   *          Total of the weights, ideally calculated with compensated summation
+   * @return Same size array of probabilities
+   */
+  static float[] normalise(final double[] weights, final double total) {
+    checkTotal(total);
+    final float[] probs = new float[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      probs[i] = (float) (weights[i] / total);
+    }
+    balance(probs);
+    return probs;
+  }
+
+  /**
+   * Compensated (Kahan) sum of part of an array of doubles.
+   *
+   * @param values
+   *          Array of doubles
+   * @param from
+   *          First index, inclusive
+   * @param to
+   *          Last index, exclusive
+   * @return sum of the values
+   */
+  static double sum(final double[] values, final int from, final int to) {
+    double sum = 0.0;
+    double comp = 0.0;
+    for (int i = from; i < to; i++) {
+      final double y = values[i] - comp;
+      final double t = sum + y;
+      comp = (t - sum) - y;
+      sum = t;
+    }
+    return sum;
+  }
+
+  /**
+   * Compensated (Kahan) exclusive prefix sums of an array of doubles, e.g. the offsets of blocks
+   * from their sums.
+   *
+   * @param values
+   *          Array of doubles
+   * @param prefixes
+   *          Same size array, filled with the sum of the values before each index
+   * @return sum of all the values
+   */
+  static double prefixSums(final double[] values, final double[] prefixes) {
+    double sum = 0.0;
+    double comp = 0.0;
+    for (int i = 0; i < values.length; i++) {
+      prefixes[i] = sum;
+      final double y = values[i] - comp;
+      final double t = sum + y;
+      comp = (t - sum) - y;
+      sum = t;
+    }
+    return sum;
+  }
+
+  /**
+   * Move any rounding error in the float sum of the probabilities onto the largest probability, so
+   * that the sum is within the tolerance checked by {@link RandomGen}.
+   *
+   * @param probs
+   *          Array of probabilities that sum approximately to 1.0
+   */
+  static void balance(final float[] probs) {
+    if (probs.length == 0) {
+      return;
+    }
+    int largest = 0;
+    for (int i = 1; i < probs.length; i++) {
+      if (probs[i] > probs[largest]) {
+        largest = i;
+      }
+    }
+
+    for (int attempt = 0; attempt < MAX_ADJUSTMENTS; attempt++) {
+      // Same order of summation as used to build the cumulative probabilities
+      float sum = 0.0f;
+      for (int i = 0; i < probs.length; i++) {
+        sum += probs[i];
+      }
+      final float residual = 1.0f - sum;
+      if (Math.abs(residual) <= ACCEPTABLE_ERROR * probs.length) {
+        return;
+      }
+      probs[largest] = Math.min(1.0f, Math.max(0.0f, probs[largest] + residual));
+    }
+  }
+
+  private static void checkTotal(final double total) {
+    if (!(total > 0.0) || Double.isInfinite(total)) {
+      throw new IllegalArgumentException(String
+          .format("Expecting weights to have a positive finite total, however total is %s", total));
+    }
+  }
+}
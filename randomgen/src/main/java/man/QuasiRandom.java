@@ -0,0 +1,132 @@
+package man;
+
+import java.util.Random;
+
+/**
+ * Source of low-discrepancy (quasi-random) keys, to replace the pseudo-random keys used to search
+ * the cumulative probability table.
+ *
+ * <p>
+ * The keys are the base 2 van der Corput sequence, which is the first dimension of the Sobol
+ * sequence, with a nested uniform (Owen) scramble. Every run of 2^m keys starting at a multiple of
+ * 2^m puts exactly one key in each interval [j/2^m, (j+1)/2^m), so the occurrences of each value
+ * stay within a few counts of n*pi and the deviations shrink close to 1/n rather than the 1/sqrt(n)
+ * of pseudo-random keys. The scramble is the hash of Burley (2020), "Practical Hash-based Owen
+ * Scrambling", which only lets each bit of the index affect more significant bits, so it keeps the
+ * stratification while making the keys from different seeds independent and unbiased.
+ *
+ * <p>
+ * The keys are not independent of each other, so the sequence should only be used for estimates
+ * such as sums over the draws, not where each draw must look random, e.g. the chi squared test of a
+ * {@link GeneratorValidator}. The sequence has 2^32 keys, of which float keys use the first 24
+ * bits. Every method of {@link Random} other than {@link #nextFloat()} and {@link #nextDouble()}
+ * takes its bits from the same sequence.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public final class QuasiRandom extends Random {
+
+  private static final long serialVersionUID = 1L;
+
+  // Scale of an unsigned 32 bit key
+  private static final double DOUBLE_UNIT = 1.0 / (1L << 32);
+
+  // Scale of a 24 bit float key
+  private static final float FLOAT_UNIT = 1.0f / (1 << 24);
+
+  // Seed of the scramble, assigned by setSeed during construction
+  private int scramble;
+
+  // Index of the next key in the sequence
+  private long index;
+
+  /**
+   * Constructor of a sequence with a scramble chosen at random.
+   */
+  public QuasiRandom() {
+    super();
+  }
+
+  /**
+   * Constructor of a reproducible sequence.
+   *
+   * @param seed
+   *          Seed of the scramble
+   */
+  public QuasiRandom(final long seed) {
+    super(seed);
+  }
+
+  /**
+   * Restart the sequence with a new scramble.
+   *
+   * @param seed
+   *          Seed of the scramble
+   */
+  @Override
+  public synchronized void setSeed(final long seed) {
+    // Called by the constructor of Random, before any field initialisers would run
+    final long mixed = mix(seed);
+    this.scramble = (int) (mixed ^ (mixed >>> 32));
+    this.index = 0;
+  }
+
+  /**
+   * Gets the next key of the sequence as a float strictly between 0 and 1.
+   *
+   * @return quasi-random float key
+   */
+  @Override
+  public float nextFloat() {
+    return ((nextKey() >>> 8) + 0.5f) * FLOAT_UNIT;
+  }
+
+  /**
+   * Gets the next key of the sequence as a double strictly between 0 and 1, with 32 bits of
+   * resolution.
+   *
+   * @return quasi-random double key
+   */
+  @Override
+  public double nextDouble() {
+    return ((nextKey() & 0xFFFFFFFFL) + 0.5) * DOUBLE_UNIT;
+  }
+
+  @Override
+  protected int next(final int bits) {
+    return nextKey() >>> (32 - bits);
+  }
+
+  /**
+   * Gets the next 32 bits of the scrambled sequence, the most significant bit first.
+   */
+  private synchronized int nextKey() {
+    final int i = (int) index++;
+    return Integer.reverse(laineKarras(i, scramble));
+  }
+
+  /**
+   * Hash of the index whose bits only affect bits of more significance, which after reversing the
+   * bits is a nested uniform scramble of the van der Corput sequence.
+   */
+  private static int laineKarras(final int index, final int seed) {
+    int x = index + seed;
+    x ^= x * 0x6c50b47c;
+    x ^= x * 0xb82f1e52;
+    x ^= x * 0xc7afe638;
+    x ^= x * 0x8d22f6e6;
+    return x;
+  }
+
+  /**
+   * Mix the bits of the seed (the finaliser of SplitMix64), so that nearby seeds give unrelated
+   * scrambles.
+   */
+  private static long mix(final long seed) {
+    long z = seed + 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -1,5 +1,6 @@
 package man;
 
+import java.util.BitSet;
 import java.util.Random;
 
 /**
@@ -11,40 +12,21 @@ import java.util.Random;
  * the length of each segment is proportional to its corresponding probability. The boundaries of
  * each segment are stored in cumulative probability array, and so already sorted in ascending
  * order. Use binary search to find which segment a random float value falls, (where this is chosen
- * using random.nextFloat(), a uniformly distributed random float between 0 and 1).
+ * using random.nextFloat(), a uniformly distributed random float between 0 and 1). The search is
+ * done by the shared {@link DistributionTable}, see {@link AbstractRandomGen}.
  * 
  * @author Sioned Baker
  * @version 1.0
  */
-public class RandomGen {
+public class RandomGen extends AbstractRandomGen {
   // Error tolerance
   public static final float ACCEPTABLE_ERROR = 0.00000001f;
 
   // Values that may be returned by nextNum()
   private final int[] randomNums;
 
-  // Probability of the occurrence of corresponding integer in randomNums
-  private final float[] probabilities;
-
-  // Cumulative probabilities
-  private final float[] cumProb;
-
-  // Record of how many times each random number has been chosen by nextNum()
-  private final int[] occurrences;
-
-  // Instance of uniform random generator
-  private final Random random = new Random();
-
-  // if all probabilities are zero except one with probability 1.0,
-  // then the choice is trivial
-  private Integer trivialCaseIdx = null;
-
-  // The number k of random number choices
-  // The 3 arrays, randomNums, probabilities, cumProb should all be of this size
-  private final int numChoices;
-
-  // Number of times nextNum() has been called
-  private int count = 0;
+  // Whether randomNums is in ascending order, needed for draws restricted to a range
+  private final boolean ascending;
 
   /**
    * Constructor for class to generate random numbers according to given distribution.
@@ -56,15 +38,8 @@ public class RandomGen {
    *          0 and 1 of the randomNums integer that maybe generated
    */
   public RandomGen(final int[] randomNums, final float[] probabilities) {
-
-    // Check size of inputs
-    this.numChoices = getInputSize(randomNums, probabilities);
-    this.randomNums = randomNums;
-
-    // Check probabilities and build cumulative probability
-    this.cumProb = buildCumProb(probabilities);
-    this.probabilities = probabilities;
-    this.occurrences = new int[numChoices];
+    // Check size of inputs, probabilities and build cumulative probability
+    this(randomNums, buildTable(randomNums == null ? -1 : randomNums.length, probabilities));
   }
 
   /**
@@ -84,226 +59,310 @@ public class RandomGen {
   }
 
   /**
-   * Create a random number generator using a single long seed (for repeatable testing).
+   * Constructor to generate random numbers from an already built table.
    * 
-   * @param seed
-   *          long value
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param table
+   *          Table of the corresponding probabilities of the randomNums integer that maybe
+   *          generated
    */
-  private void setSeed(final long seed) {
-    this.random.setSeed(seed);
+  private RandomGen(final int[] randomNums, final DistributionTable table) {
+    this(randomNums, table, new Random());
   }
 
   /**
-   * Returns integer that is one of the randomNums. When this method is called multiple times over a
-   * long period, it should return the numbers roughly with the initialised probabilities.
+   * Constructor for subclasses to generate random numbers from an already built table with a given
+   * source of randomness.
    * 
-   * @return int randomNum
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param table
+   *          Table of the corresponding probabilities of the randomNums integer that maybe
+   *          generated
+   * @param random
+   *          Source of uniformly distributed random floats
    */
-  public int nextNum() {
-    final int index;
-
-    if (isTrivialCase()) {
-      // Trivial case when only one choice of number
-      index = trivialCaseIdx;
-    } else {
-      index = binarySearch(random.nextFloat());
-    }
-
-    // Increment occurrence of this random integer and the count
-    occurrences[index]++;
-    count++;
-    return randomNums[index];
+  protected RandomGen(final int[] randomNums, final DistributionTable table, final Random random) {
+    this(randomNums, table, random, table.isTrivial());
   }
 
   /**
-   * For a given key (which is random float value selected from uniform distribution), search the
-   * array of cumulative probabilities to find the largest index, <tt>i </tt>, where
-   * <tt>key &lt;= cumProb[i]</tt>. If i=0 then<tt> 0 &lt; key &lt;= cumProb[0] </tt>, otherwise
-   * <tt>cumProb[i-1] &lt; key &lt;= cumProb[i]</tt>
+   * Constructor for subclasses that decide themselves whether the choice is trivial, e.g. from
+   * exact weights rather than the float probabilities of the table.
    * 
-   * @param key
-   *          the search key as a float
-   * @return index for the segment of the distribution where key lies. Note: that index guaranteed
-   *         to be 0 or greater and less than length of the array
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param table
+   *          Table of the corresponding probabilities of the randomNums integer that maybe
+   *          generated
+   * @param random
+   *          Source of uniformly distributed random floats
+   * @param trivial
+   *          <tt>true</tt> to report that the same random number will always be returned
    */
-  private int binarySearch(final float key) {
-    int left = 0;
-    int right = numChoices - 1;
-
-    while (left < right) {
-      int mid = left + (right - left) / 2;
-      if (cumProb[mid] < key) {
-        left = mid + 1;
-      } else {
-        right = mid;
-      }
-    }
-    return left;
+  protected RandomGen(final int[] randomNums, final DistributionTable table, final Random random,
+      final boolean trivial) {
+    this(randomNums, table, random, trivial, isAscending(randomNums));
   }
 
   /**
-   * Gets array of the number occurrences each random number as been selected.
+   * Constructor for a generator whose random numbers are already known to be in ascending order or
+   * not, e.g. from a cache, so they are not checked again.
    * 
-   * @return an integer array recording number of occurrences of each random number choice.
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param table
+   *          Table of the corresponding probabilities of the randomNums integer that maybe
+   *          generated
+   * @param random
+   *          Source of uniformly distributed random floats
+   * @param trivial
+   *          <tt>true</tt> to report that the same random number will always be returned
+   * @param ascending
+   *          Whether the randomNums are in ascending order
    */
-  public int[] getOccurrences() {
-    return occurrences;
+  RandomGen(final int[] randomNums, final DistributionTable table, final Random random,
+      final boolean trivial, final boolean ascending) {
+    super(table, random);
+    this.randomNums = randomNums;
+    this.ascending = ascending;
+
+    if (trivial) {
+      // Some debug
+      System.out.println(String.format(
+          "INFO: For an array of %d random numbers, all have probability zero "
+              + "except one which has probability 1 - this is a trivial case of the generator "
+              + "where random value %d will always be returned with certainity.",
+          randomNums.length, randomNums[table.getTrivialIndex()]));
+    }
   }
 
   /**
-   * Gets number of times nextNum() has been called.
+   * Create a generator of random numbers from an already built table, which may be shared with
+   * other generators.
    * 
-   * @return number of times nextNum called
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param table
+   *          Table of the corresponding probabilities of the randomNums integer that maybe
+   *          generated
+   * @return new generator with its own occurrences and source of randomness
    */
-  public int getCount() {
-    return count;
+  public static RandomGen of(final int[] randomNums, final DistributionTable table) {
+    if (randomNums == null || table == null || randomNums.length != table.size()) {
+      throw new IllegalArgumentException(
+          "Expecting arrays to be non-null and of the same non-zero length");
+    }
+    return new RandomGen(randomNums, table);
   }
 
   /**
-   * Gets the given input array of random numbers.
-   * 
-   * @return The input array of the choice of random integers
+   * Create a generator whose keys are a scrambled low-discrepancy sequence from a
+   * {@link QuasiRandom}, so that the occurrences converge to the probabilities close to 1/n rather
+   * than 1/sqrt(n). The draws are not independent, so use it for estimates, not as random values.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the corresponding probability values between
+   *          0 and 1 of the randomNums integer that maybe generated
+   * @param seed
+   *          Seed of the scramble, the same seed giving the same draws
+   * @return new generator with quasi-random keys
    */
-  public int[] getRandomNums() {
-    return randomNums;
+  public static RandomGen quasiRandom(final int[] randomNums, final float[] probabilities,
+      final long seed) {
+    return new RandomGen(randomNums,
+        buildTable(randomNums == null ? -1 : randomNums.length, probabilities),
+        new QuasiRandom(seed));
   }
 
   /**
-   * Gets an array of float values corresponding to probability values the randomNums integer.
+   * Returns integer that is one of the randomNums. When this method is called multiple times over a
+   * long period, it should return the numbers roughly with the initialised probabilities.
    * 
-   * @return The input array of probabilities
+   * @return int randomNum
    */
-  public float[] getProbabilities() {
-    return probabilities;
+  public int nextNum() {
+    return randomNums[nextIndex()];
   }
 
   /**
-   * Gets the number of degrees of freedom, i.e. one less than the number of random numbers to be
-   * chosen Since all the probabilities need to add to 1.0, for a choice of k number there are only
-   * k-1 degrees of freedom.
-   * 
-   * @return integer number of degrees of freedom.
+   * Returns integer that is one of the randomNums other than the excluded ones, with the
+   * probabilities of the others renormalised, see {@link #nextIndex(BitSet)}.
+   *
+   * @param excluded
+   *          Indices into the randomNums array of the numbers not to return
+   * @return int randomNum
    */
-  public int getDegreesFreedom() {
-    return numChoices - 1;
+  public int nextNum(final BitSet excluded) {
+    return randomNums[nextIndex(excluded)];
   }
 
   /**
-   * Get size of the 2 input arrays, expect them to be both of same length, non-null and non-zero
-   * length
-   * 
-   * @param randomNums
-   *          Array of integers (positive or negative) that maybe generated
-   * @param probabilities
-   *          Same size array of float values which are the corresponding probability values between
-   *          0 and 1 of the randomNums integer that maybe generated
-   * 
-   * @return integer length of the input arrays
+   * Returns integer that is one of the randomNums between lo and hi inclusive, with the
+   * probabilities of those numbers renormalised. The randomNums must be in ascending order, so that
+   * the numbers in the range are a run of indices [a, b]. The bounds of the run are found by binary
+   * search, and a single key between cumProb[a-1] and cumProb[b] is searched for in the cumulative
+   * probabilities, in O(log k) without allocating or rebuilding the table, however little
+   * probability the range has.
+   *
+   * @param lo
+   *          Smallest number to return
+   * @param hi
+   *          Largest number to return
+   * @return int randomNum
    */
-  private int getInputSize(final int[] nums, final float[] probs) {
-    if (nums == null || probs == null || nums.length != probs.length || nums.length == 0) {
+  public int nextNum(final int lo, final int hi) {
+    if (!ascending) {
       throw new IllegalArgumentException(
-          "Expecting arrays to be non-null and of the same non-zero length");
+          "Expecting the random numbers to be in ascending order for a range of numbers");
+    }
+    if (lo > hi) {
+      throw new IllegalArgumentException(
+          String.format("Expecting lo <= hi, however lo is %d and hi is %d", lo, hi));
+    }
+    // First index of a number >= lo and last index of a number <= hi
+    final int first = firstAbove(lo - 1L);
+    final int last = firstAbove(hi) - 1;
+    if (first > last) {
+      throw new IllegalArgumentException(
+          String.format("Expecting some of the random numbers in [%d, %d], however none are", lo,
+              hi));
     }
-    return nums.length;
+    return randomNums[nextIndex(first, last)];
   }
 
   /**
-   * Build array of cumulative probabilities and check given probabilities lie between 0.0 and 1.0
-   * and sum to 1.0. Identify whether the input probability is trivial, i.e. there's only one
-   * probability of 1.0 and all the other probabilities are zero.
-   * 
-   * @param probabilities
-   *          Array of float values which are the corresponding probability values between 0 and 1
-   *          of the randomNums integer that maybe generated
-   * 
-   * @return Same size array of cumulative probabilities as floats
+   * Returns an index between first and last inclusive, with the probabilities of those indices
+   * renormalised, for {@link #nextNum(int, int)}. A subclass that overrides {@link #nextIndex()}
+   * to choose indices another way should override this too.
+   *
+   * @param first
+   *          Smallest index to return
+   * @param last
+   *          Largest index to return, at least first
+   * @return index of the chosen random number
    */
-  private float[] buildCumProb(final float[] probs) {
-
-    final float[] cumProb = new float[numChoices];
-    int idxPotentialTrivialCase = -1;
-    float sum = 0.0f;
-
-    // Check if probabilities are all valid and sum to 1.0
-    for (int i = 0; i < numChoices; i++) {
-      float prob = probs[i];
-      if (checkProbability(i, prob)) {
-        idxPotentialTrivialCase = i;
-      }
-      sum += prob;
-      cumProb[i] = sum;
-    }
-
-    if (Math.abs(sum - 1.0f) > ACCEPTABLE_ERROR * numChoices) {
-      throw new IllegalArgumentException(String
-          .format("Expecting probabilities to total to 1.0, however total is %9.8f", sum - 1.0f));
+  protected int nextIndex(final int first, final int last) {
+    final DistributionTable table = getTable();
+    final double low = first == 0 ? 0.0 : table.getCumulativeProbability(first - 1);
+    final double high = table.getCumulativeProbability(last);
+    if (!(high - low > ACCEPTABLE_ERROR)) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting some probability for the numbers in [%d, %d], however it is %9.8f",
+          randomNums[first], randomNums[last], Math.max(high - low, 0.0)));
     }
+    // Key in (low, high], so the search finds an index in [first, last] with a probability > 0
+    final double key = high - nextDoubleKey() * (high - low);
+    final int index = Math.min(Math.max(table.binarySearch(key), first), last);
+    recordKey(index, key);
+    recordOccurrence(index);
+    return index;
+  }
 
-    // Check if trivial case
-    setTrivialCase(idxPotentialTrivialCase);
-    return cumProb;
+  /**
+   * Fills an array with random numbers, as if by calling nextNum() once for each element.
+   * 
+   * @param dest
+   *          Array to fill
+   */
+  public void nextNums(final int[] dest) {
+    nextNums(dest, 0, dest.length);
   }
 
   /**
-   * Checks whether a probability value is valid, i.e. lies between or equal to 0.0 and 1.0 Returns
-   * boolean flag when the probability is 1.0, no checks if probability is 0.0
+   * Fills part of an array with random numbers, as if by calling nextNum() once for each element.
    * 
-   * @param index
-   *          integer index of random number in the given array
-   * @param prob
-   *          probability of random number
-   * @return <tt>true</tt> if probability of 1.0, otherwise returns <tt>false</tt>
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number of elements to fill
    */
-  private boolean checkProbability(final int idx, final float prob) {
-    if (prob < 0.0f || prob > 1.0f || Float.isNaN(prob) || Float.isInfinite(prob)) {
-      throw new IllegalArgumentException(
-          String.format("Expecting probabilities array to have values between 0 and 1,"
-              + "probability at index %d has illegal value: %4.3f", idx, prob));
+  public void nextNums(final int[] dest, final int offset, final int length) {
+    checkRange(dest.length, offset, length);
+    for (int i = offset; i < offset + length; i++) {
+      dest[i] = randomNums[nextIndex()];
     }
+  }
 
-    // if probability is zero, then we could exclude corresponding number from the array
-    // but this seems unnecessary and means resizing both randomNums and probabilities array
+  /**
+   * Fills part of an array by systematic resampling: one random offset u, and keys (j + u)/n
+   * swept once over the cumulative probabilities. Each number occurs within one of its expected
+   * n*pi times, in O(n + k). The numbers are in the order of the randomNums array, not shuffled.
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number n of elements to fill
+   */
+  public void nextNumsSystematic(final int[] dest, final int offset, final int length) {
+    resampleIndices(dest, offset, length, false);
+    toNums(dest, offset, length);
+  }
+
+  /**
+   * Fills part of an array by stratified resampling: one random key in each of the n strata [j/n,
+   * (j+1)/n), swept once over the cumulative probabilities in O(n + k). The numbers are in the
+   * order of the randomNums array, not shuffled.
+   *
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number n of elements to fill
+   */
+  public void nextNumsStratified(final int[] dest, final int offset, final int length) {
+    resampleIndices(dest, offset, length, true);
+    toNums(dest, offset, length);
+  }
 
-    // if probability is 1.0, there should only be one choice,
-    // either one choice or all the probabilities are zero apart from one
-    // i.e. the generator is trivial - flag this potential case
-    if (Math.abs(prob - 1.0f) < ACCEPTABLE_ERROR) {
-      return true;
-    } else {
-      return false;
+  private void toNums(final int[] dest, final int offset, final int length) {
+    for (int i = offset; i < offset + length; i++) {
+      dest[i] = randomNums[dest[i]];
     }
   }
 
   /**
-   * Check whether trivial case when there is only a single choice for random number
-   * 
-   * @return <tt>true </tt> if only one random number choice with probability 1.0, otherwise
-   *         <tt>false</tt>
+   * Index of the first of the ascending randomNums that is greater than the value, or the length if
+   * there is none.
    */
-  private boolean isTrivialCase() {
-    return (trivialCaseIdx != null);
+  private int firstAbove(final long value) {
+    int left = 0;
+    int right = randomNums.length;
+    while (left < right) {
+      final int mid = (left + right) >>> 1;
+      if (randomNums[mid] <= value) {
+        left = mid + 1;
+      } else {
+        right = mid;
+      }
+    }
+    return left;
+  }
+
+  static boolean isAscending(final int[] randomNums) {
+    for (int i = 1; i < randomNums.length; i++) {
+      if (randomNums[i - 1] > randomNums[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
-   * If the given probabilities are such that only one is non-zero and has value 1.0, then store the
-   * corresponding random integer value as trivialCase as we can always return this value with
-   * certainty
+   * Gets the given input array of random numbers.
    * 
-   * @param idxOfNonZeroCase
-   *          Index of the only random number in input array with probability of 1.0
+   * @return The input array of the choice of random integers
    */
-  private void setTrivialCase(final int idxOfNonZeroCase) {
-    if (idxOfNonZeroCase > -1 && idxOfNonZeroCase < numChoices) {
-      this.trivialCaseIdx = new Integer(idxOfNonZeroCase);
-
-      // Some debug
-      System.out.println(String.format(
-          "INFO: For an array of %d random numbers, all have probability zero "
-              + "except one which has probability 1 - this is a trivial case of the generator "
-              + "where random value %d will always be returned with certainity.",
-          numChoices, randomNums[trivialCaseIdx]));
-    }
+  public int[] getRandomNums() {
+    return randomNums;
   }
 
 }
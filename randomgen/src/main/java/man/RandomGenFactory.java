@@ -0,0 +1,255 @@
+package man;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Factory of {@link RandomGen} that caches the validated table of each distribution, so creating a
+ * generator for a distribution that has been seen before is a lookup rather than a rebuild.
+ *
+ * <p>
+ * The cache is keyed by the content of the random numbers and probabilities arrays, so callers may
+ * pass new arrays with the same values each time. Each distribution is stored once, as a copy of
+ * the arrays and its immutable {@link DistributionTable}, and every generator created for it shares
+ * the table while having its own source of randomness and occurrences. Each generator is given its
+ * own copy of the random numbers, and the table copies its probabilities, so no caller can change
+ * the distribution of the others. The cache holds at most a given number of distributions, evicting
+ * the least recently used.
+ *
+ * <p>
+ * The factory is thread-safe. A table is built outside the lock, so threads creating generators
+ * for different distributions do not wait for each other's validation.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class RandomGenFactory {
+  // Default maximum number of distributions cached
+  public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+  private final int maxEntries;
+
+  // Distributions in order of access, guarded by this
+  private final LinkedHashMap<Key, Cached> cache;
+
+  // Statistics, guarded by this
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Constructor of a factory caching up to {@link #DEFAULT_MAX_ENTRIES} distributions.
+   */
+  public RandomGenFactory() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Constructor of a factory.
+   *
+   * @param maxEntries
+   *          Maximum number of distributions cached
+   */
+  public RandomGenFactory(final int maxEntries) {
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException(String
+          .format("Expecting at least one cache entry, however maximum is %d", maxEntries));
+    }
+    this.maxEntries = maxEntries;
+    this.cache = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, Cached> eldest) {
+        if (size() > RandomGenFactory.this.maxEntries) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Create a generator for a distribution, sharing its table with other generators of the same
+   * distribution.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the probability values between 0 and 1
+   * @return new generator with its own occurrences and source of randomness
+   */
+  public RandomGen create(final int[] randomNums, final float[] probabilities) {
+    return create(lookup(randomNums, probabilities), new Random());
+  }
+
+  /**
+   * Create a generator for a distribution with a given seed, sharing its table with other
+   * generators of the same distribution.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the probability values between 0 and 1
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   * @return new generator with its own occurrences and source of randomness
+   */
+  public RandomGen create(final int[] randomNums, final float[] probabilities, final long seed) {
+    return create(lookup(randomNums, probabilities), new Random(seed));
+  }
+
+  /**
+   * Create a generator sharing a cached distribution, reporting a trivial distribution only the
+   * first time.
+   */
+  private RandomGen create(final Cached cached, final Random random) {
+    // Own copy of the random numbers, which the generator hands out, sharing only the table
+    return new RandomGen(cached.randomNums.clone(), cached.table, random,
+        cached.table.isTrivial() && firstUse(cached), cached.ascending);
+  }
+
+  private synchronized boolean firstUse(final Cached cached) {
+    final boolean first = !cached.used;
+    cached.used = true;
+    return first;
+  }
+
+  /**
+   * Find the cached distribution, building and caching it on a miss.
+   */
+  private Cached lookup(final int[] randomNums, final float[] probabilities) {
+    if (randomNums == null || probabilities == null) {
+      throw new IllegalArgumentException(
+          "Expecting arrays to be non-null and of the same non-zero length");
+    }
+    final Key key = new Key(randomNums, probabilities);
+    synchronized (this) {
+      final Cached cached = cache.get(key);
+      if (cached != null) {
+        hits++;
+        return cached;
+      }
+      misses++;
+    }
+
+    // Copy the arrays, so the cached distribution cannot be changed by the caller
+    final int[] nums = randomNums.clone();
+    final float[] probs = probabilities.clone();
+    final Cached built = new Cached(nums, RandomGen
+        .buildTable(nums.length == probs.length ? nums.length : -1, probs),
+        RandomGen.isAscending(nums));
+
+    synchronized (this) {
+      // Another thread may have built the same distribution meanwhile
+      final Cached cached = cache.get(key);
+      if (cached != null) {
+        return cached;
+      }
+      cache.put(new Key(nums, probs), built);
+      return built;
+    }
+  }
+
+  /**
+   * Gets the number of generators created for a distribution that was already cached.
+   *
+   * @return number of cache hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of generators created for a distribution that had to be built.
+   *
+   * @return number of cache misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Gets the number of distributions evicted from the cache.
+   *
+   * @return number of evictions
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Gets the number of distributions in the cache.
+   *
+   * @return size of the cache
+   */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  /**
+   * Remove all distributions from the cache, keeping the statistics.
+   */
+  public synchronized void clear() {
+    cache.clear();
+  }
+
+  /**
+   * Copy of the random numbers of a distribution, copied again for each generator, and its table,
+   * shared by its generators.
+   */
+  private static final class Cached {
+    private final int[] randomNums;
+    private final DistributionTable table;
+
+    // Whether the random numbers are in ascending order, for draws restricted to a range
+    private final boolean ascending;
+
+    // Whether a generator has been created for the distribution, guarded by the factory
+    private boolean used;
+
+    private Cached(final int[] randomNums, final DistributionTable table,
+        final boolean ascending) {
+      this.randomNums = randomNums;
+      this.table = table;
+      this.ascending = ascending;
+    }
+  }
+
+  /**
+   * Content of a distribution, with its hash computed once.
+   */
+  private static final class Key {
+    private final int[] randomNums;
+    private final float[] probabilities;
+    private final int hash;
+
+    private Key(final int[] randomNums, final float[] probabilities) {
+      this.randomNums = randomNums;
+      this.probabilities = probabilities;
+      this.hash = 31 * Arrays.hashCode(randomNums) + Arrays.hashCode(probabilities);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return hash == other.hash && Arrays.equals(randomNums, other.randomNums)
+          && Arrays.equals(probabilities, other.probabilities);
+    }
+  }
+
+}
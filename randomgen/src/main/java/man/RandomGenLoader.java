@@ -0,0 +1,484 @@
+package man;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the distribution for a {@link RandomGen} from a text file of <tt>value,weight</tt> lines.
+ *
+ * <p>
+ * The file is split into chunks on line boundaries and the chunks are parsed in parallel straight
+ * into the <tt>int[]</tt> and <tt>float[]</tt> arrays handed to the generator, without any boxed or
+ * intermediate copies. A first pass counts the records in each chunk, so that every chunk knows its
+ * offset into the arrays, and a second pass parses the values and weights into place. The weights
+ * can be any non-negative numbers, they are normalised to probabilities using a compensated (Kahan)
+ * sum of all the weights. The table of a large distribution is also built in parallel, see
+ * {@link DistributionTable#of(float[], ForkJoinPool)}.
+ *
+ * <p>
+ * File format:
+ * <li>one record per line, a random integer followed by its weight, e.g. <tt>100,0.55</tt>
+ * <li>value and weight are separated by a comma, tab or spaces
+ * <li>blank lines and lines starting with <tt>#</tt> are ignored
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class RandomGenLoader {
+  // Default size in bytes of each chunk of the file parsed in parallel
+  public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+  // Powers of ten that are exactly representable as a double
+  private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+      1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  // Most significant digits of a weight that are kept
+  private static final int MAX_DIGITS = 18;
+
+  // Bytes read at a time when looking for the end of a line
+  private static final int SCAN_SIZE = 256;
+
+  private final ForkJoinPool pool;
+  private final int chunkSize;
+
+  /**
+   * Constructor for a loader that parses the file in chunks on the common fork-join pool.
+   */
+  public RandomGenLoader() {
+    this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Constructor for a loader.
+   *
+   * @param pool
+   *          Fork-join pool used to parse chunks of the file in parallel
+   * @param chunkSize
+   *          Approximate size in bytes of each chunk
+   */
+  public RandomGenLoader(final ForkJoinPool pool, final int chunkSize) {
+    if (pool == null || chunkSize < 1) {
+      throw new IllegalArgumentException(
+          "Expecting a non-null pool and a chunk size of at least one byte");
+    }
+    this.pool = pool;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Load a generator from a file of <tt>value,weight</tt> lines.
+   *
+   * @param file
+   *          Path of the text file
+   * @return generator with the distribution described in the file
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  public RandomGen load(final Path file) throws IOException {
+    final Distribution dist = parse(file);
+    return RandomGen.of(dist.randomNums, DistributionTable.of(dist.probabilities, pool));
+  }
+
+  /**
+   * Load a generator with a given seed from a file of <tt>value,weight</tt> lines.
+   *
+   * @param file
+   *          Path of the text file
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   * @return generator with the distribution described in the file
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  public RandomGen load(final Path file, final long seed) throws IOException {
+    final Distribution dist = parse(file);
+    return new RandomGen(dist.randomNums, DistributionTable.of(dist.probabilities, pool),
+        new Random(seed));
+  }
+
+  /**
+   * Parse the file into arrays of random numbers and normalised probabilities.
+   *
+   * @param file
+   *          Path of the text file
+   * @return parsed distribution
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  private Distribution parse(final Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final List<Chunk> chunks = split(channel);
+
+      // First pass: count records in each chunk to find its offset into the arrays
+      final List<Callable<Void>> counts = new ArrayList<>(chunks.size());
+      for (final Chunk chunk : chunks) {
+        counts.add(() -> {
+          chunk.countRecords();
+          return null;
+        });
+      }
+      invokeAll(counts);
+
+      int total = 0;
+      for (final Chunk chunk : chunks) {
+        chunk.offset = total;
+        if (total + (long) chunk.records > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException(
+              String.format("Expecting at most %d records in file %s", Integer.MAX_VALUE, file));
+        }
+        total += chunk.records;
+      }
+
+      // Second pass: parse values and weights into place
+      final int[] randomNums = new int[total];
+      // Raw weights are kept in double, as narrowing them before normalising would overflow large
+      // weights to infinity and flush small ones to zero
+      final double[] weights = new double[total];
+      final List<Callable<Void>> parses = new ArrayList<>(chunks.size());
+      for (final Chunk chunk : chunks) {
+        parses.add(() -> {
+          chunk.parseRecords(randomNums, weights);
+          return null;
+        });
+      }
+      invokeAll(parses);
+
+      // Combine the compensated sums of each chunk
+      double sum = 0.0;
+      double comp = 0.0;
+      for (final Chunk chunk : chunks) {
+        final double y = chunk.sum - (comp + chunk.comp);
+        final double t = sum + y;
+        comp = (t - sum) - y;
+        sum = t;
+      }
+
+      final float[] probabilities = total > 0 ? Probabilities.normalise(weights, sum)
+          : new float[0];
+      return new Distribution(randomNums, probabilities);
+    }
+  }
+
+  /**
+   * Split the file into chunks of approximately chunkSize bytes, where every chunk starts at the
+   * beginning of a line.
+   *
+   * @param channel
+   *          File channel
+   * @return List of chunks covering the whole file
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  private List<Chunk> split(final FileChannel channel) throws IOException {
+    final long size = channel.size();
+    final List<Chunk> chunks = new ArrayList<>();
+    final ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+    long start = 0;
+    while (start < size) {
+      long end = Math.min(size, start + chunkSize);
+      if (end < size) {
+        end = findNextLine(channel, end, scan);
+      }
+      if (end - start > Integer.MAX_VALUE) {
+        throw new IOException(String.format("Line starting after byte %d is too long", start));
+      }
+      chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), start));
+      start = end;
+    }
+    return chunks;
+  }
+
+  /**
+   * Find the start of the line following the given position.
+   *
+   * @return Position after the next new line, or the end of the file
+   */
+  private static long findNextLine(final FileChannel channel, final long from,
+      final ByteBuffer scan) throws IOException {
+    long pos = from;
+    while (true) {
+      scan.clear();
+      final int n = channel.read(scan, pos);
+      if (n < 0) {
+        return channel.size();
+      }
+      for (int i = 0; i < n; i++) {
+        if (scan.get(i) == '\n') {
+          return pos + i + 1;
+        }
+      }
+      pos += n;
+    }
+  }
+
+  private void invokeAll(final List<Callable<Void>> tasks) throws IOException {
+    for (final Future<Void> future : pool.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while loading distribution", e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  /**
+   * Parsed arrays of random numbers and probabilities.
+   */
+  private static final class Distribution {
+    private final int[] randomNums;
+    private final float[] probabilities;
+
+    private Distribution(final int[] randomNums, final float[] probabilities) {
+      this.randomNums = randomNums;
+      this.probabilities = probabilities;
+    }
+  }
+
+  /**
+   * A chunk of the file made up of whole lines, parsed by a single task.
+   */
+  private static final class Chunk {
+    private final MappedByteBuffer buf;
+    private final long start;
+    private final int limit;
+
+    // Index into the arrays of the first record, and the number of records in this chunk
+    private int offset;
+    private int records;
+
+    // Compensated sum of weights in this chunk
+    private double sum;
+    private double comp;
+
+    // Current position while parsing
+    private int pos;
+
+    private Chunk(final MappedByteBuffer buf, final long start) {
+      this.buf = buf;
+      this.start = start;
+      this.limit = buf.limit();
+    }
+
+    /**
+     * Count the lines that are neither blank nor comments.
+     */
+    private void countRecords() {
+      int n = 0;
+      pos = 0;
+      while (pos < limit) {
+        if (isRecord()) {
+          n++;
+        }
+        skipLine();
+      }
+      this.records = n;
+    }
+
+    /**
+     * Parse each record into the arrays, starting at the offset of this chunk.
+     */
+    private void parseRecords(final int[] randomNums, final double[] weights) {
+      int idx = offset;
+      pos = 0;
+      while (pos < limit) {
+        if (isRecord()) {
+          final long lineStart = pos;
+          randomNums[idx] = parseInt();
+          skipSeparator();
+          final double weight = parseWeight();
+          skipBlanks();
+          if (pos < limit && buf.get(pos) != '\n') {
+            throw parseError(lineStart, "unexpected characters after the weight");
+          }
+          if (!(weight >= 0.0) || Double.isInfinite(weight)) {
+            throw parseError(lineStart, "weight is not a finite non-negative number");
+          }
+          weights[idx++] = weight;
+
+          final double y = weight - comp;
+          final double t = sum + y;
+          comp = (t - sum) - y;
+          sum = t;
+        }
+        skipLine();
+      }
+    }
+
+    /**
+     * Skip leading blanks and check whether the current line holds a record.
+     */
+    private boolean isRecord() {
+      skipBlanks();
+      if (pos >= limit) {
+        return false;
+      }
+      final byte b = buf.get(pos);
+      return b != '\n' && b != '\r' && b != '#';
+    }
+
+    private void skipLine() {
+      while (pos < limit && buf.get(pos++) != '\n') {
+        // Skip to the start of the next line
+      }
+    }
+
+    private void skipBlanks() {
+      while (pos < limit) {
+        final byte b = buf.get(pos);
+        if (b != ' ' && b != '\t' && b != '\r') {
+          return;
+        }
+        pos++;
+      }
+    }
+
+    private void skipSeparator() {
+      final int from = pos;
+      while (pos < limit) {
+        final byte b = buf.get(pos);
+        if (b != ' ' && b != '\t' && b != ',') {
+          break;
+        }
+        pos++;
+      }
+      if (pos == from) {
+        throw parseError(from, "expecting a comma, tab or space after the value");
+      }
+    }
+
+    private int parseInt() {
+      final int from = pos;
+      final boolean negative = consumeSign();
+      long value = 0;
+      int digits = 0;
+      while (pos < limit) {
+        final int d = buf.get(pos) - '0';
+        if (d < 0 || d > 9) {
+          break;
+        }
+        value = value * 10 + d;
+        if (value > Integer.MAX_VALUE + 1L) {
+          throw parseError(from, "value is not a 32-bit integer");
+        }
+        digits++;
+        pos++;
+      }
+      if (digits == 0) {
+        throw parseError(from, "expecting an integer value");
+      }
+      value = negative ? -value : value;
+      if (value > Integer.MAX_VALUE) {
+        throw parseError(from, "value is not a 32-bit integer");
+      }
+      return (int) value;
+    }
+
+    /**
+     * Parse a decimal number with optional fraction and exponent, keeping the most significant 18
+     * digits.
+     */
+    private double parseWeight() {
+      final int from = pos;
+      final boolean negative = consumeSign();
+      long mantissa = 0;
+      int digits = 0;
+      int exponent = 0;
+      boolean seenDigit = false;
+      boolean seenPoint = false;
+      while (pos < limit) {
+        final byte b = buf.get(pos);
+        if (b == '.' && !seenPoint) {
+          seenPoint = true;
+        } else if (b >= '0' && b <= '9') {
+          seenDigit = true;
+          if (digits < MAX_DIGITS) {
+            if (mantissa > 0 || b != '0') {
+              digits++;
+            }
+            mantissa = mantissa * 10 + (b - '0');
+            if (seenPoint) {
+              exponent--;
+            }
+          } else if (!seenPoint) {
+            exponent++;
+          }
+        } else {
+          break;
+        }
+        pos++;
+      }
+      if (!seenDigit) {
+        throw parseError(from, "expecting a numeric weight");
+      }
+      if (pos < limit && (buf.get(pos) == 'e' || buf.get(pos) == 'E')) {
+        pos++;
+        final boolean negativeExp = consumeSign();
+        final int expFrom = pos;
+        int exp = 0;
+        while (pos < limit && buf.get(pos) >= '0' && buf.get(pos) <= '9') {
+          exp = Math.min(exp * 10 + (buf.get(pos) - '0'), 1000);
+          pos++;
+        }
+        if (pos == expFrom) {
+          throw parseError(from, "expecting digits in the exponent of the weight");
+        }
+        exponent += negativeExp ? -exp : exp;
+      }
+      final double value = scale(mantissa, exponent);
+      return negative ? -value : value;
+    }
+
+    private boolean consumeSign() {
+      if (pos < limit) {
+        final byte b = buf.get(pos);
+        if (b == '-' || b == '+') {
+          pos++;
+          return b == '-';
+        }
+      }
+      return false;
+    }
+
+    private IllegalArgumentException parseError(final long lineStart, final String reason) {
+      return new IllegalArgumentException(String.format(
+          "Unable to parse record at byte %d of distribution file: %s", start + lineStart,
+          reason));
+    }
+
+  }
+
+  /**
+   * Calculates mantissa x 10<sup>exponent</sup>.
+   */
+  private static double scale(final long mantissa, final int exponent) {
+    if (mantissa == 0) {
+      return 0.0;
+    } else if (exponent >= 0 && exponent < POW10.length) {
+      return mantissa * POW10[exponent];
+    } else if (exponent < 0 && -exponent < POW10.length) {
+      return mantissa / POW10[-exponent];
+    }
+    return mantissa * Math.pow(10, exponent);
+  }
+
+}
@@ -0,0 +1,293 @@
+package man;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random number generator for a weighted mixture of other generators, e.g. 70% of draws from
+ * distribution A and 30% from distribution B.
+ *
+ * <p>
+ * Rather than choosing a component and then drawing from it, the mixture is compiled into one
+ * flattened distribution where the probability of each random number is the weighted sum of its
+ * probability in each component, and duplicate random numbers are merged. So a draw costs exactly
+ * one random float and one binary search, however deeply mixtures are nested (a component may
+ * itself be a mixture).
+ *
+ * <p>
+ * Each draw is still attributed to one component: the segment of the [0, 1] range of a merged
+ * random number is split in proportion to the contribution of each component, and the component is
+ * identified from where the same random float lies within the segment.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class RandomGenMixture extends RandomGen {
+
+  // The component generators and their probabilities of being chosen
+  private final RandomGen[] components;
+  private final float[] componentProbs;
+
+  // For each merged random number, the start of its contributions in the arrays below
+  private final int[] contribStart;
+
+  // Component and index within the component of each contribution
+  private final int[] contribComponent;
+  private final int[] contribIndex;
+
+  // Upper boundary of the part of the merged random number's segment for each contribution
+  private final float[] contribCum;
+
+  // Record of how many times each contribution has been drawn
+  private final int[] contribOccurrences;
+
+  // Record of how many draws have been attributed to each component
+  private final int[] componentOccurrences;
+
+  /**
+   * Constructor of a mixture of generators.
+   *
+   * @param components
+   *          Array of generators (which may themselves be mixtures)
+   * @param weights
+   *          Same size array of non-negative weights of each component, normalised to the
+   *          probability of a draw coming from the component
+   */
+  public RandomGenMixture(final RandomGen[] components, final float[] weights) {
+    this(Compiled.compile(components, weights), new Random());
+  }
+
+  /**
+   * Constructor of a mixture of generators with a given seed.
+   *
+   * @param components
+   *          Array of generators (which may themselves be mixtures)
+   * @param weights
+   *          Same size array of non-negative weights of each component, normalised to the
+   *          probability of a draw coming from the component
+   * @param seed
+   *          to create a random number generator using a single long seed.
+   */
+  public RandomGenMixture(final RandomGen[] components, final float[] weights, final long seed) {
+    this(Compiled.compile(components, weights), new Random(seed));
+  }
+
+  private RandomGenMixture(final Compiled compiled, final Random random) {
+    super(compiled.randomNums, compiled.table, random);
+    this.components = compiled.components;
+    this.componentProbs = compiled.componentProbs;
+    this.contribStart = compiled.contribStart;
+    this.contribComponent = compiled.contribComponent;
+    this.contribIndex = compiled.contribIndex;
+    this.contribCum = compiled.contribCum;
+    this.contribOccurrences = new int[contribComponent.length];
+    this.componentOccurrences = new int[components.length];
+  }
+
+  /**
+   * Returns the index of one of the merged random numbers, attributing the draw to one of the
+   * components.
+   *
+   * @return index of the chosen random number
+   */
+  @Override
+  public int nextIndex() {
+    final DistributionTable table = getTable();
+    final float key = nextKey();
+    final int index = table.isTrivial() ? table.getTrivialIndex() : table.binarySearch(key);
+    recordKey(index, key);
+    recordOccurrence(index);
+    return index;
+  }
+
+  /**
+   * Attribute a draw to one of the components, from where its key lies in the segment of the
+   * merged random number, or from a new key when the choice was trivial.
+   *
+   * @param index
+   *          index of the chosen random number
+   * @param key
+   *          key in the cumulative probabilities that chose the index, or NaN
+   */
+  @Override
+  protected void recordKey(final int index, final double key) {
+    final double within = Double.isNaN(key) ? nextKey() : key;
+
+    // Find the contribution within the segment where the same key lies
+    int left = contribStart[index];
+    int right = contribStart[index + 1] - 1;
+    while (left < right) {
+      int mid = left + (right - left) / 2;
+      if (contribCum[mid] < within) {
+        left = mid + 1;
+      } else {
+        right = mid;
+      }
+    }
+    contribOccurrences[left]++;
+    componentOccurrences[contribComponent[left]]++;
+  }
+
+  /**
+   * Gets the number of component generators.
+   *
+   * @return number of components
+   */
+  public int getNumComponents() {
+    return components.length;
+  }
+
+  /**
+   * Gets the normalised probability of a draw coming from each component.
+   *
+   * @return array of probabilities of the components
+   */
+  public float[] getComponentProbabilities() {
+    return componentProbs;
+  }
+
+  /**
+   * Gets array of the number of draws attributed to each component.
+   *
+   * @return an integer array recording number of draws from each component
+   */
+  public int[] getComponentOccurrences() {
+    return componentOccurrences;
+  }
+
+  /**
+   * Gets a summary of the draws attributed to a component, against the distribution of that
+   * component.
+   *
+   * @param component
+   *          index of the component
+   * @return summarizer of the draws from the component
+   */
+  public RandomGenSummarizer getComponentSummarizer(final int component) {
+    if (component < 0 || component >= components.length) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting component between 0 and %d, however component is %d", components.length - 1,
+          component));
+    }
+    final RandomGen gen = components[component];
+    final int[] occurrences = new int[gen.getRandomNums().length];
+    for (int e = 0; e < contribComponent.length; e++) {
+      if (contribComponent[e] == component) {
+        occurrences[contribIndex[e]] += contribOccurrences[e];
+      }
+    }
+    return new RandomGenSummarizer(gen.getRandomNums(), gen.getProbabilities(), occurrences,
+        componentOccurrences[component]);
+  }
+
+  /**
+   * Flattened table of a mixture, built before calling the constructor of the generator.
+   */
+  private static final class Compiled {
+    private RandomGen[] components;
+    private float[] componentProbs;
+    private int[] randomNums;
+    private DistributionTable table;
+    private int[] contribStart;
+    private int[] contribComponent;
+    private int[] contribIndex;
+    private float[] contribCum;
+
+    private static Compiled compile(final RandomGen[] components, final float[] weights) {
+      if (components == null || weights == null || components.length != weights.length
+          || components.length == 0) {
+        throw new IllegalArgumentException(
+            "Expecting arrays to be non-null and of the same non-zero length");
+      }
+      final double[] componentWeights = new double[weights.length];
+      long size = 0;
+      for (int c = 0; c < components.length; c++) {
+        if (components[c] == null) {
+          throw new IllegalArgumentException(
+              String.format("Expecting component %d to be non-null", c));
+        }
+        if (!(weights[c] >= 0.0f) || Float.isInfinite(weights[c])) {
+          throw new IllegalArgumentException(String.format(
+              "Expecting non-negative weights, weight at index %d has illegal value: %4.3f", c,
+              weights[c]));
+        }
+        componentWeights[c] = weights[c];
+        size += components[c].getRandomNums().length;
+      }
+      if (size > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Expecting fewer random numbers in the components");
+      }
+      final double totalWeight = Probabilities.sum(componentWeights, 0, componentWeights.length);
+      final Compiled compiled = new Compiled();
+      compiled.components = components.clone();
+      compiled.componentProbs = Probabilities.normalise(componentWeights);
+
+      // Sort every (component, index) contribution by random number, so duplicates are adjacent:
+      // random number in the high 32 bits, position of the contribution in the low 32 bits
+      final int n = (int) size;
+      final int[] entryComponent = new int[n];
+      final int[] entryIndex = new int[n];
+      final double[] entryProb = new double[n];
+      final long[] order = new long[n];
+      int e = 0;
+      for (int c = 0; c < components.length; c++) {
+        final int[] nums = components[c].getRandomNums();
+        final float[] probs = components[c].getProbabilities();
+        for (int i = 0; i < nums.length; i++) {
+          entryComponent[e] = c;
+          entryIndex[e] = i;
+          entryProb[e] = componentWeights[c] / totalWeight * probs[i];
+          order[e] = ((long) nums[i] << 32) | e;
+          e++;
+        }
+      }
+      Arrays.sort(order);
+
+      // Merge contributions with the same random number
+      final int[] merged = new int[n];
+      final double[] mergedProb = new double[n];
+      final int[] start = new int[n + 1];
+      compiled.contribComponent = new int[n];
+      compiled.contribIndex = new int[n];
+      final double[] contribProb = new double[n];
+      int k = -1;
+      for (int j = 0; j < n; j++) {
+        final int num = (int) (order[j] >> 32);
+        final int entry = (int) order[j];
+        if (k < 0 || merged[k] != num) {
+          k++;
+          merged[k] = num;
+          start[k] = j;
+        }
+        mergedProb[k] += entryProb[entry];
+        compiled.contribComponent[j] = entryComponent[entry];
+        compiled.contribIndex[j] = entryIndex[entry];
+        contribProb[j] = entryProb[entry];
+      }
+      final int numMerged = k + 1;
+      start[numMerged] = n;
+
+      compiled.randomNums = Arrays.copyOf(merged, numMerged);
+      compiled.contribStart = Arrays.copyOf(start, numMerged + 1);
+      compiled.table = DistributionTable
+          .of(Probabilities.normalise(Arrays.copyOf(mergedProb, numMerged)));
+
+      // Split the segment of each merged random number in proportion to its contributions
+      compiled.contribCum = new float[n];
+      for (int j = 0; j < numMerged; j++) {
+        final double lower = j == 0 ? 0.0 : compiled.table.getCumulativeProbability(j - 1);
+        final double upper = compiled.table.getCumulativeProbability(j);
+        double partial = 0.0;
+        for (int c = start[j]; c < start[j + 1] - 1; c++) {
+          partial += contribProb[c];
+          compiled.contribCum[c] = mergedProb[j] > 0.0
+              ? (float) (lower + (upper - lower) * partial / mergedProb[j])
+              : (float) upper;
+        }
+        compiled.contribCum[start[j + 1] - 1] = (float) upper;
+      }
+      return compiled;
+    }
+  }
+
+}
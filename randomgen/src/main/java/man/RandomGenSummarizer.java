@@ -2,6 +2,14 @@ package man;
 
 import static man.RandomGen.ACCEPTABLE_ERROR;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 /**
  * Helper class to analyse and summarise for the {@link RandomGen}.
  * 
@@ -19,11 +27,35 @@ import static man.RandomGen.ACCEPTABLE_ERROR;
  */
 public class RandomGenSummarizer {
 
-  private final RandomValue[] data;
-  private final int count;
+  /**
+   * Measures of how far the occurrences of a random integer are from its expected occurrences.
+   */
+  public enum Measure {
+    // Contribution (pi*n-Oi)^2/(pi*n) to the chi squared statistic
+    CHI_SQUARED,
+    // Deviation |pi - Oi/n| of the proportion
+    DEVIATION
+  }
+
+  // Smallest number of random integers for which the statistics are calculated in parallel
+  static final int PARALLEL_THRESHOLD = DistributionTable.PARALLEL_THRESHOLD;
+
+  // Smallest number of random integers in each block of a parallel calculation
+  private static final int MIN_BLOCK = 1 << 14;
+
+  // Struct of arrays describing each random integer
+  private final int[] randomNums;
+  private final float[] probabilities;
+  private final long[] occurrences;
+  private final long count;
+
+  // Statistics of all the random integers, calculated in one pass when first needed
+  private Moments moments;
 
   /**
-   * Constructor of a summary at a given number (count) of draws from the generator.
+   * Constructor of a summary at a given number (count) of draws from the generator. The generator
+   * may still be drawing in another thread, the summary is of a consistent snapshot of its
+   * occurrences and their total, see {@link OccurrenceSnapshot#of(RandomGen)}.
    * 
    * @param generator
    *          A random number generator {@link RandomGen} that has generated certain number of
@@ -31,22 +63,83 @@ public class RandomGenSummarizer {
    * 
    */
   public RandomGenSummarizer(final RandomGen generator) {
-    this.count = generator.getCount();
+    this(OccurrenceSnapshot.of(generator));
+  }
+
+  /**
+   * Constructor of a summary from arrays describing a distribution and the number of times each of
+   * its random numbers has been drawn, e.g. for a sampler other than {@link RandomGen}.
+   * 
+   * @param randomNums
+   *          Array of integers that maybe generated
+   * @param probabilities
+   *          Same size array of the corresponding probability values
+   * @param occurrences
+   *          Same size array of the number of occurrences of each random number
+   * @param count
+   *          Total number of draws
+   */
+  public RandomGenSummarizer(final int[] randomNums, final float[] probabilities,
+      final int[] occurrences, final int count) {
+    this(randomNums, probabilities, toLongs(occurrences), count, false);
+  }
+
+  /**
+   * Constructor of a combined summary of the draws recorded in a snapshot, e.g. one merged from
+   * many generators.
+   * 
+   * @param snapshot
+   *          Occurrences of the random numbers of a distribution
+   */
+  public RandomGenSummarizer(final OccurrenceSnapshot snapshot) {
+    // The snapshot returns copies of its arrays
+    this(snapshot.getRandomNums(), snapshot.getProbabilities(), snapshot.getOccurrences(),
+        snapshot.getCount(), false);
+  }
+
+  /**
+   * Constructor of a summary from arrays describing a distribution and 64-bit counts of the number
+   * of times each of its random numbers has been drawn.
+   * 
+   * @param randomNums
+   *          Array of integers that maybe generated
+   * @param probabilities
+   *          Same size array of the corresponding probability values
+   * @param occurrences
+   *          Same size array of the number of occurrences of each random number
+   * @param count
+   *          Total number of draws
+   */
+  public RandomGenSummarizer(final int[] randomNums, final float[] probabilities,
+      final long[] occurrences, final long count) {
+    this(randomNums, probabilities, occurrences, count, true);
+  }
 
-    // Generator already validated that these array are non-zero size and same length
-    final int[] randomNums = generator.getRandomNums();
-    final float[] probabilities = generator.getProbabilities();
-    final int[] occurrences = generator.getOccurrences();
-    final int nNum = generator.getDegreesFreedom() + 1;
+  private RandomGenSummarizer(final int[] randomNums, final float[] probabilities,
+      final long[] occurrences, final long count, final boolean copy) {
+    this.count = count;
+    final int nNum = randomNums.length;
     if (nNum < 1) {
       throw new IllegalArgumentException(String.format(
           "Expecting RandomGen to have at least one random number choice, however only %d found ",
           nNum));
     }
-    this.data = new RandomValue[nNum];
-    for (int i = 0; i < nNum; i++) {
-      data[i] = new RandomValue(randomNums[i], probabilities[i], occurrences[i]);
+    if (probabilities.length != nNum || occurrences.length != nNum) {
+      throw new IllegalArgumentException(
+          "Expecting arrays of random numbers, probabilities and occurrences of the same length");
+    }
+    // The numbers and probabilities are not changed by a generator, only the occurrences
+    this.randomNums = randomNums;
+    this.probabilities = probabilities;
+    this.occurrences = copy ? occurrences.clone() : occurrences;
+  }
+
+  private static long[] toLongs(final int[] occurrences) {
+    final long[] longs = new long[occurrences.length];
+    for (int i = 0; i < longs.length; i++) {
+      longs[i] = occurrences[i];
     }
+    return longs;
   }
 
   /**
@@ -64,39 +157,231 @@ public class RandomGenSummarizer {
     final StringBuilder tab = new StringBuilder(line);
 
     if (showBreakdown) {
-      // Header
-      tab.append(String.format("%n %-6s | %-11s | %-18s | %-18s | %-10s", "Random", "Probability",
-          "Actual Occurrences", "Chi squared", "Deviation"));
-      tab.append(String.format("%n %-6s | %-11s | %-18s | %-18s | %-10s%n", "Number", " pi ",
-          " Oi ", "(pi*n-Oi)^2/(pi*n)", " |pi - Oi/n| "));
-      tab.append(line);
+      appendHeader(tab, line);
+      for (int i = 0; i < randomNums.length; i++) {
+        appendRow(tab, i);
+      }
     }
+    appendTotals(tab);
 
-    // Calculate the squared error and the chi2 statistic for each number and the total
-    float totalDev = 0.0f;
-    float totalChi2 = 0.0f;
-
-    for (RandomValue val : data) {
-      final float chi2 = val.calcChi2(count);
-      final float deviation = val.calcDeviation(count);
-      totalChi2 += chi2;
-      totalDev += deviation;
-
-      if (showBreakdown) {
-        tab.append(String.format("%n %-6d", val.getNumber()));
-        tab.append(String.format(" | %-11.4f", val.getProbability()));
-        tab.append(String.format(" | %9d times   ", val.getOccurrence()));
-        tab.append(String.format(" | %-17.4f ", chi2));
-        tab.append(String.format(" | %-12.4f ", deviation));
-      }
+    return tab.toString();
+  }
+
+  /**
+   * Gets a string summary of the random integers with the largest chi squared contribution or
+   * deviation, followed by the totals, so that the worst values of a large distribution can be seen
+   * without a row for every value.
+   * 
+   * @param measure
+   *          Measure to rank the random integers by
+   * @param limit
+   *          Largest number of random integers to show
+   * @return String description of results
+   */
+  public String getTopSummary(final Measure measure, final int limit) {
+    return getBreakdown(findTop(measure, limit));
+  }
+
+  /**
+   * Gets a string summary of the random integers whose chi squared contribution or deviation is
+   * over a threshold, followed by the totals.
+   * 
+   * @param measure
+   *          Measure to compare with the threshold
+   * @param threshold
+   *          Value of the measure that the random integers shown exceed
+   * @return String description of results
+   */
+  public String getSummaryOver(final Measure measure, final double threshold) {
+    return getBreakdown(findOver(measure, threshold));
+  }
+
+  private String getBreakdown(final int[] indices) {
+    final String line = "=========================================================================";
+    final StringBuilder tab = new StringBuilder(line);
+    appendHeader(tab, line);
+    for (final int index : indices) {
+      appendRow(tab, index);
     }
-    double sem = calcStandardErrorOfMean();
+    appendTotals(tab);
+    return tab.toString();
+  }
+
+  private static void appendHeader(final StringBuilder tab, final String line) {
+    tab.append(String.format("%n %-6s | %-11s | %-18s | %-18s | %-10s", "Random", "Probability",
+        "Actual Occurrences", "Chi squared", "Deviation"));
+    tab.append(String.format("%n %-6s | %-11s | %-18s | %-18s | %-10s%n", "Number", " pi ",
+        " Oi ", "(pi*n-Oi)^2/(pi*n)", " |pi - Oi/n| "));
+    tab.append(line);
+  }
+
+  private void appendRow(final StringBuilder tab, final int index) {
+    tab.append(String.format("%n %-6d", randomNums[index]));
+    tab.append(String.format(" | %-11.4f", probabilities[index]));
+    tab.append(String.format(" | %9d times   ", occurrences[index]));
+    tab.append(String.format(" | %-17.4f ", chi2(index)));
+    tab.append(String.format(" | %-12.4f ", deviation(index)));
+  }
+
+  private void appendTotals(final StringBuilder tab) {
+    final Moments all = getMoments();
     tab.append(String.format(
         "%nFor an array of k=%d integers, after n=%d attempts: chi squared "
             + "statistic= %5.4f, total root squared deviation=%5.4f, std error of mean= %5.4f %n",
-        data.length, count, totalChi2, totalDev, sem));
+        randomNums.length, count, all.getChi2(), all.deviationSum,
+        calcStandardErrorOfMean()));
+  }
 
-    return tab.toString();
+  /**
+   * Find the indices of the random integers with the largest values of a measure, in one pass
+   * keeping the best so far in a bounded min-heap of primitive indices and values, in O(k log N).
+   * 
+   * @param measure
+   *          Measure to rank the random integers by
+   * @param limit
+   *          Largest number N of indices to find
+   * @return indices in descending order of the measure, ties in ascending order of index
+   */
+  public int[] findTop(final Measure measure, final int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException(
+          String.format("Expecting a non-negative limit, however limit is %d", limit));
+    }
+    final int capacity = Math.min(limit, randomNums.length);
+    final int[] heap = new int[capacity];
+    final double[] keys = new double[capacity];
+    int size = 0;
+    for (int i = 0; i < randomNums.length; i++) {
+      final double key = calcMeasure(measure, i);
+      if (size < capacity) {
+        // Sift up the new entry
+        int child = size++;
+        while (child > 0) {
+          final int parent = (child - 1) >>> 1;
+          if (!worse(key, i, keys[parent], heap[parent])) {
+            break;
+          }
+          heap[child] = heap[parent];
+          keys[child] = keys[parent];
+          child = parent;
+        }
+        heap[child] = i;
+        keys[child] = key;
+      } else if (capacity > 0 && worse(keys[0], heap[0], key, i)) {
+        siftDown(heap, keys, size, i, key);
+      }
+    }
+
+    // Remove the worst repeatedly, filling from the end
+    final int[] top = new int[size];
+    for (int end = size - 1; end >= 0; end--) {
+      top[end] = heap[0];
+      siftDown(heap, keys, end, heap[end], keys[end]);
+    }
+    return top;
+  }
+
+  /**
+   * Replace the root of a min-heap and sift it down.
+   */
+  private static void siftDown(final int[] heap, final double[] keys, final int size,
+      final int index, final double key) {
+    int parent = 0;
+    while (true) {
+      int child = 2 * parent + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && worse(keys[child + 1], heap[child + 1], keys[child], heap[child])) {
+        child++;
+      }
+      if (!worse(keys[child], heap[child], key, index)) {
+        break;
+      }
+      heap[parent] = heap[child];
+      keys[parent] = keys[child];
+      parent = child;
+    }
+    if (size > 0) {
+      heap[parent] = index;
+      keys[parent] = key;
+    }
+  }
+
+  /**
+   * Whether the first entry ranks below the second, i.e. has a smaller value or an equal value and
+   * a larger index.
+   */
+  private static boolean worse(final double key, final int index, final double otherKey,
+      final int otherIndex) {
+    return key < otherKey || (key == otherKey && index > otherIndex);
+  }
+
+  /**
+   * Find the indices of the random integers whose measure is over a threshold, in one pass.
+   * 
+   * @param measure
+   *          Measure to compare with the threshold
+   * @param threshold
+   *          Value of the measure that the indices found exceed
+   * @return indices in ascending order
+   */
+  public int[] findOver(final Measure measure, final double threshold) {
+    int[] found = new int[16];
+    int size = 0;
+    for (int i = 0; i < randomNums.length; i++) {
+      if (calcMeasure(measure, i) > threshold) {
+        if (size == found.length) {
+          found = Arrays.copyOf(found, 2 * size);
+        }
+        found[size++] = i;
+      }
+    }
+    return Arrays.copyOf(found, size);
+  }
+
+  /**
+   * Calculates a measure of how far the occurrences of one random integer are from its expected
+   * occurrences.
+   * 
+   * @param measure
+   *          Measure to calculate
+   * @param index
+   *          Index of the random integer
+   * @return chi squared contribution or deviation
+   */
+  public double calcMeasure(final Measure measure, final int index) {
+    switch (measure) {
+      case CHI_SQUARED:
+        return chi2(index);
+      case DEVIATION:
+        return deviation(index);
+      default:
+        throw new IllegalArgumentException(String.format("Expecting a measure, found %s",
+            measure));
+    }
+  }
+
+  /**
+   * Gets the random integer at an index, e.g. one found by {@link #findTop(Measure, int)}.
+   * 
+   * @param index
+   *          Index of the random integer
+   * @return random integer
+   */
+  public int getRandomNum(final int index) {
+    return randomNums[index];
+  }
+
+  /**
+   * Gets the number of occurrences of the random integer at an index.
+   * 
+   * @param index
+   *          Index of the random integer
+   * @return number of occurrences
+   */
+  public long getOccurrence(final int index) {
+    return occurrences[index];
   }
 
   /**
@@ -105,11 +390,45 @@ public class RandomGenSummarizer {
    * @return chi squared statistic as float
    */
   public float calcChi2() {
-    float total = 0.0f;
-    for (RandomValue val : data) {
-      total += val.calcChi2(count);
+    return (float) getMoments().getChi2();
+  }
+
+  /**
+   * Calculates the G-test (log-likelihood ratio) statistic 2 SUM_i Oi ln(Oi/Ei) for the current
+   * number of iterations, where Ei=pi*n. Like chi squared it has k-1 degrees of freedom.
+   *
+   * @return G statistic as double, or infinity if a number with probability zero has occurred
+   */
+  public double calcG() {
+    double total = 0.0;
+    for (int i = 0; i < randomNums.length; i++) {
+      if (occurrences[i] > 0) {
+        final double expected = (double) probabilities[i] * count;
+        total += occurrences[i] * Math.log(occurrences[i] / expected);
+      }
+    }
+    return 2.0 * total;
+  }
+
+  /**
+   * Calculates the Kolmogorov distance, i.e. the largest absolute difference between the observed
+   * and expected cumulative proportions, taking the random numbers in the order they were given.
+   *
+   * @return largest cumulative deviation as double between 0 and 1
+   */
+  public double calcMaxCumulativeDeviation() {
+    if (count == 0) {
+      return 0.0;
+    }
+    double observed = 0.0;
+    double expected = 0.0;
+    double max = 0.0;
+    for (int i = 0; i < randomNums.length; i++) {
+      observed += (double) occurrences[i] / count;
+      expected += probabilities[i];
+      max = Math.max(max, Math.abs(observed - expected));
     }
-    return total;
+    return max;
   }
 
   /**
@@ -125,14 +444,13 @@ public class RandomGenSummarizer {
   }
 
   /**
-   * Calculate the standard deviation
+   * Calculate the standard deviation of the deviations |pi-oi/N|.
    * 
    * @return standard deviation as a double
    */
   protected double calcStandardDeviation() {
-    final float[] deviations = calculateDeviations();
-    final float mean = calcMean(deviations);
-    return calcStdDev(deviations, mean);
+    final Moments all = getMoments();
+    return all.num > 1 ? Math.sqrt(all.squares / (all.num - 1)) : 0.0;
   }
 
   /**
@@ -147,19 +465,13 @@ public class RandomGenSummarizer {
    * @return The standard deviation
    */
   protected double calcStdDev(final float[] values, final float mean) {
-    float total = 0.0f;
-    final double stdDev;
+    double total = 0.0;
     final int k = values.length;
     for (int i = 0; i < k; i++) {
-      final float xi = values[i] - mean;
+      final double xi = values[i] - mean;
       total += xi * xi;
     }
-    if (k > 1) {
-      stdDev = Math.sqrt(total / (k - 1));
-    } else {
-      stdDev = 0.0;
-    }
-    return stdDev;
+    return k > 1 ? Math.sqrt(total / (k - 1)) : 0.0;
   }
 
   /**
@@ -170,16 +482,14 @@ public class RandomGenSummarizer {
    * @return mean value as a float
    */
   protected float calcMean(final float[] values) {
-    float total = 0.0f;
-    for (int i = 0; i < values.length; i++) {
-      total += values[i];
-    }
-
     if (values.length == 0) {
       return 0.0f;
-    } else {
-      return total / values.length;
     }
+    double total = 0.0;
+    for (int i = 0; i < values.length; i++) {
+      total += values[i];
+    }
+    return (float) (total / values.length);
   }
 
   /**
@@ -189,10 +499,9 @@ public class RandomGenSummarizer {
    * @return deviation as float[]
    */
   protected float[] calculateDeviations() {
-    final float[] deviations = new float[data.length];
-    int idx = 0;
-    for (RandomValue val : data) {
-      deviations[idx++] = val.calcDeviation(count);
+    final float[] deviations = new float[randomNums.length];
+    for (int i = 0; i < deviations.length; i++) {
+      deviations[i] = (float) deviation(i);
     }
     return deviations;
   }
@@ -206,99 +515,178 @@ public class RandomGenSummarizer {
    * @return standard error of mean
    */
   protected double calcStdErrorOfMean(final double stdDev) {
-    return stdDev / Math.sqrt(data.length);
+    return stdDev / Math.sqrt(randomNums.length);
   }
 
   /**
-   * Class to hold information about a particular random integer number.
-   *
+   * Calculate the absolute value of deviation of the actual number of occurrences compared to the
+   * expected value, i.e. |Oi/n - pi| where n is number of iterations (i.e. count)
    */
-  private class RandomValue {
-    private final int number;
-    private final float probability;
-    private final int occurrence;
+  private double deviation(final int index) {
+    return count > 0 ? Math.abs((double) occurrences[index] / count - probabilities[index])
+        : probabilities[index];
+  }
 
-    /**
-     * Constructor
-     * 
-     * @param number
-     *          random number value as integer
-     * @param probability
-     *          probability of the number being generated (float value between 0.0f and 1.0f)
-     */
-    public RandomValue(final int number, final float probability, final int occurrence) {
-      this.number = number;
-      this.probability = probability;
-      this.occurrence = occurrence;
+  /**
+   * After certain number of iterations, n, calculates chi-squared statistic for choosing random
+   * number a position index. i.e. calculates (Oi-Ei)^2/Ei where Ei=pi *n is expected occurrences,
+   * pi is the probability of this number occurring, Oi actual is actual number of occurrences
+   * generated. Random numbers with probability zero and occurrences are invalid for the model.
+   */
+  private double chi2(final int index) {
+    final double expected = (double) probabilities[index] * count;
+    if (expected > 0) {
+      final double diff = occurrences[index] - expected;
+      return diff * diff / expected;
     }
-
-    public int getNumber() {
-      return number;
+    if (isInvalidZero(index)) {
+      throw zeroProbabilityOccurred(index);
     }
+    // If count=0, or probability & occurrences=0 then return 0.0
+    return 0.0;
+  }
+
+  private boolean isInvalidZero(final int index) {
+    return probabilities[index] < ACCEPTABLE_ERROR && occurrences[index] > 0 && count > 0;
+  }
+
+  private ArithmeticException zeroProbabilityOccurred(final int index) {
+    return new ArithmeticException(String.format(
+        "Random number %d has probability zero, but generator has generated %d occurrences "
+            + "- unable to calculate chi squared statistic",
+        randomNums[index], occurrences[index]));
+  }
 
-    public float getProbability() {
-      return probability;
+  private Moments getMoments() {
+    Moments all = moments;
+    if (all == null) {
+      all = randomNums.length < PARALLEL_THRESHOLD ? accumulate(0, randomNums.length)
+          : accumulateParallel(ForkJoinPool.commonPool());
+      moments = all;
     }
+    return all;
+  }
+
+  /**
+   * Accumulate the statistics of a range of the random integers in one pass: compensated (Kahan)
+   * sums of the chi squared contributions and the deviations, and Welford's running mean and sum of
+   * squared differences from the mean of the deviations.
+   */
+  private Moments accumulate(final int from, final int to) {
+    double chi2 = 0.0;
+    double chi2Comp = 0.0;
+    double devSum = 0.0;
+    double devComp = 0.0;
+    double mean = 0.0;
+    double squares = 0.0;
+    int invalid = -1;
+    for (int i = from; i < to; i++) {
+      final double expected = (double) probabilities[i] * count;
+      if (expected > 0) {
+        final double diff = occurrences[i] - expected;
+        final double y = diff * diff / expected - chi2Comp;
+        final double t = chi2 + y;
+        chi2Comp = (t - chi2) - y;
+        chi2 = t;
+      } else if (invalid < 0 && isInvalidZero(i)) {
+        invalid = i;
+      }
+
+      final double dev = deviation(i);
+      final double y = dev - devComp;
+      final double t = devSum + y;
+      devComp = (t - devSum) - y;
+      devSum = t;
 
-    public int getOccurrence() {
-      return occurrence;
+      final double delta = dev - mean;
+      mean += delta / (i - from + 1);
+      squares += delta * (dev - mean);
     }
+    return new Moments(to - from, chi2, devSum, mean, squares, invalid);
+  }
 
-    /**
-     * Calculate the absolute value of deviation of the actual number of occurrences compared to the
-     * expected value, i.e. |Oi/n - pi| where n is number of iterations (i.e. count)
-     * 
-     * @param count
-     *          integer number of iterations n
-     * @return absolute double value of the deviation of number of occurrences compared to expected
-     *         probability
-     */
-    private float calcDeviation(final int count) {
-      return count > 0 ? Math.abs((float) occurrence / count - probability) : probability;
+  /**
+   * Accumulate the statistics of blocks of the random integers in parallel, combining the blocks in
+   * order so the result does not depend on the scheduling.
+   */
+  private Moments accumulateParallel(final ForkJoinPool pool) {
+    final int numValues = randomNums.length;
+    final int blockSize = Math.max(MIN_BLOCK,
+        (int) ((numValues + 4L * pool.getParallelism() - 1) / (4L * pool.getParallelism())));
+    final int numBlocks = (numValues + blockSize - 1) / blockSize;
+    final Moments[] blocks = new Moments[numBlocks];
+    final List<Callable<Void>> tasks = new ArrayList<>(numBlocks);
+    for (int b = 0; b < numBlocks; b++) {
+      final int block = b;
+      tasks.add(() -> {
+        final int from = block * blockSize;
+        blocks[block] = accumulate(from, Math.min(from + blockSize, numValues));
+        return null;
+      });
+    }
+    for (final Future<Void> future : pool.invokeAll(tasks)) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while summarising", e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
+    Moments all = blocks[0];
+    for (int b = 1; b < numBlocks; b++) {
+      all = all.combine(blocks[b]);
+    }
+    return all;
+  }
 
+  /**
+   * Statistics of a range of the random integers.
+   */
+  private final class Moments {
+    // Number of random integers
+    private final int num;
+    private final double chi2;
+    private final double deviationSum;
+    // Mean of the deviations, and the sum of their squared differences from it
+    private final double mean;
+    private final double squares;
+    // Index of the first random integer with probability zero that has occurred, otherwise -1
+    private final int invalid;
+
+    private Moments(final int num, final double chi2, final double deviationSum,
+        final double mean, final double squares, final int invalid) {
+      this.num = num;
+      this.chi2 = chi2;
+      this.deviationSum = deviationSum;
+      this.mean = mean;
+      this.squares = squares;
+      this.invalid = invalid;
     }
 
-    /**
-     * After certain number of iterations, n, calculates chi-squared statistic for choosing random
-     * number a position index. i.e. calculates (Oi-Ei)^2/Ei where Ei=pi *n is expected occurrences,
-     * pi is the probability of this number occurring, Oi actual is actual number of occurrences
-     * generated.
-     * 
-     * @param index
-     *          integer number of iterations n
-     * @return chi squared statistic as float
-     */
-    private float calcChi2(final int count) {
-      final float expected = probability * count;
-      final float chi2;
-      if (expected > 0) {
-        final float diff = (occurrence - expected);
-        chi2 = diff * diff / expected;
-      } else {
-        chi2 = calcChi2Zero(count);
+    private double getChi2() {
+      if (invalid >= 0) {
+        throw zeroProbabilityOccurred(invalid);
       }
       return chi2;
     }
 
     /**
-     * Utility method for checking the zero chi-squared case
-     * 
-     * @param index
-     *          integer number of iterations n
-     * @return float 0.0f if this random number is valid for the model
+     * Combine with the statistics of the following range (Chan et al. for the squares).
      */
-    private float calcChi2Zero(final int count) {
-
-      if (probability < ACCEPTABLE_ERROR && occurrence > 0 && count > 0) {
-        throw new ArithmeticException(String.format(
-            "Random number %d has probability zero, but generator has generated %d occurrences "
-                + "- unable to calculate chi squared statistic",
-            number, occurrence));
-      }
-      // If count=0, or probability & occurrences=0 then return 0.0
-      return 0.0f;
+    private Moments combine(final Moments next) {
+      final int total = num + next.num;
+      final double delta = next.mean - mean;
+      return new Moments(total, chi2 + next.chi2, deviationSum + next.deviationSum,
+          mean + delta * next.num / total,
+          squares + next.squares + delta * delta * ((double) num * next.num / total),
+          invalid >= 0 ? invalid : next.invalid);
     }
-
   }
 
 }
@@ -0,0 +1,132 @@
+package man;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Blocking client of a {@link SamplingServer}.
+ *
+ * <p>
+ * Requests can be pipelined by calling {@link #send(String, int)} several times before reading the
+ * responses, in the same order, with {@link #receive(int[], int)}.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class SamplingClient implements Closeable {
+  // Size in bytes of the buffers
+  private static final int BUFFER_SIZE = 64 << 10;
+
+  private final SocketChannel channel;
+  private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+  /**
+   * Constructor of a client connected to a server.
+   *
+   * @param address
+   *          address of the server
+   * @throws IOException
+   *           if unable to connect
+   */
+  public SamplingClient(final InetSocketAddress address) throws IOException {
+    this.channel = SocketChannel.open(address);
+    channel.socket().setTcpNoDelay(true);
+    in.flip();
+  }
+
+  /**
+   * Draw random numbers from a named generator on the server.
+   *
+   * @param name
+   *          name of the generator
+   * @param dest
+   *          Array to fill with draws
+   * @throws IOException
+   *           if the connection fails or the generator is unknown
+   */
+  public void draw(final String name, final int[] dest) throws IOException {
+    send(name, dest.length);
+    receive(dest, 0);
+  }
+
+  /**
+   * Send a request for draws without waiting for the response.
+   *
+   * @param name
+   *          name of the generator
+   * @param count
+   *          number of draws
+   * @throws IOException
+   *           if the connection fails
+   */
+  public void send(final String name, final int count) throws IOException {
+    final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (nameBytes.length > SamplingServer.MAX_NAME_LENGTH || count < 0) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting a name of at most %d bytes and a non-negative count",
+          SamplingServer.MAX_NAME_LENGTH));
+    }
+    out.clear();
+    out.putInt(count).putShort((short) nameBytes.length).put(nameBytes);
+    out.flip();
+    while (out.hasRemaining()) {
+      channel.write(out);
+    }
+  }
+
+  /**
+   * Receive the response to the oldest request not yet received.
+   *
+   * @param dest
+   *          Array to fill with draws, from the offset
+   * @param offset
+   *          Index of the first element to fill
+   * @return number of draws received
+   * @throws IOException
+   *           if the connection fails, the generator is unknown or the array is too small, in
+   *           which case the response is skipped
+   */
+  public int receive(final int[] dest, final int offset) throws IOException {
+    final int status = readInt();
+    if (status == SamplingServer.UNKNOWN_GENERATOR) {
+      throw new IOException("Unknown generator");
+    } else if (status < 0) {
+      throw new IOException("Bad request");
+    } else if (status > dest.length - offset) {
+      // Skip the draws, so the next response is read from its start
+      for (int i = 0; i < status; i++) {
+        readInt();
+      }
+      throw new IOException(String.format("Expecting room for %d draws in array", status));
+    }
+    for (int i = offset; i < offset + status; i++) {
+      dest[i] = readInt();
+    }
+    return status;
+  }
+
+  private int readInt() throws IOException {
+    if (in.remaining() < 4) {
+      in.compact();
+      while (in.position() < 4) {
+        if (channel.read(in) < 0) {
+          throw new EOFException("Connection closed by server");
+        }
+      }
+      in.flip();
+    }
+    return in.getInt();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -0,0 +1,309 @@
+package man;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Embedded server giving remote clients draws from named generators in large binary batches.
+ *
+ * <p>
+ * The server uses plain NIO with a single selector thread, which is the only thread to call the
+ * registered generators once the server has started. All integers are big-endian.
+ * <li>Request: <tt>int count, short nameLength, byte[nameLength] name</tt> (UTF-8)
+ * <li>Response: <tt>int status</tt> followed by <tt>status</tt> ints drawn from the generator when
+ * the status is zero or more, otherwise {@link #UNKNOWN_GENERATOR} or {@link #BAD_REQUEST}
+ *
+ * <p>
+ * Requests may be pipelined: a client can send many requests without waiting, and the responses are
+ * returned in the same order. Draws are generated straight into the output buffer of the connection
+ * only when there is room to send them, so a request for millions of draws never needs more memory
+ * than the buffer. See {@link SamplingClient} for a client.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class SamplingServer implements Closeable {
+  // Status returned when the name of the generator is not registered
+  public static final int UNKNOWN_GENERATOR = -1;
+
+  // Status returned when the request cannot be parsed, after which the connection is closed
+  public static final int BAD_REQUEST = -2;
+
+  // Maximum length in bytes of the name of a generator
+  public static final int MAX_NAME_LENGTH = 1024;
+
+  // Size in bytes of the request header before the name
+  static final int REQUEST_HEADER = 6;
+
+  // Size in bytes of the buffers of each connection
+  private static final int IN_BUFFER_SIZE = 16 << 10;
+  private static final int OUT_BUFFER_SIZE = 256 << 10;
+
+  // Number of draws generated at a time into the output buffer
+  private static final int CHUNK = 1024;
+
+  private final Map<String, RandomGen> generators = new ConcurrentHashMap<>();
+
+  // Open client connections, only used by the selector thread
+  private final Set<SocketChannel> connections = new HashSet<>();
+
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final Thread thread;
+
+  /**
+   * Constructor of a server listening on the given address, which is started with
+   * {@link #start()}.
+   *
+   * @param address
+   *          address to bind to, e.g. port 0 of the loopback address for any free port on the
+   *          loopback interface
+   * @throws IOException
+   *           if the server socket cannot be opened
+   */
+  public SamplingServer(final InetSocketAddress address) throws IOException {
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(address);
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    this.thread = new Thread(this::run, "sampling-server");
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Register a generator under a name. Once the server is started, the generator should only be
+   * used by the server.
+   *
+   * @param name
+   *          name used by clients
+   * @param generator
+   *          generator of random numbers
+   */
+  public void register(final String name, final RandomGen generator) {
+    if (name == null || generator == null
+        || name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_LENGTH) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting a non-null generator and a non-null name of at most %d bytes",
+          MAX_NAME_LENGTH));
+    }
+    generators.put(name, generator);
+  }
+
+  /**
+   * Start the selector thread.
+   */
+  public void start() {
+    thread.start();
+  }
+
+  /**
+   * Gets the port the server is listening on.
+   *
+   * @return local port
+   * @throws IOException
+   *           if the server socket is closed
+   */
+  public int getPort() throws IOException {
+    return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+  }
+
+  /**
+   * Stop the server and close all connections.
+   */
+  @Override
+  public void close() throws IOException {
+    selector.close();
+    serverChannel.close();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    try {
+      while (selector.isOpen()) {
+        selector.select();
+        final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          final SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            handle(key);
+          } catch (IOException e) {
+            closeConnection(key);
+          }
+        }
+      }
+    } catch (ClosedSelectorException e) {
+      // Server has been closed
+    } catch (IOException e) {
+      System.err.println("ERROR: Sampling server stopped: " + e);
+    } finally {
+      for (final SocketChannel channel : connections) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          // Already closing
+        }
+      }
+      connections.clear();
+    }
+  }
+
+  private void handle(final SelectionKey key) throws IOException {
+    if (!key.isValid()) {
+      return;
+    }
+    if (key.isAcceptable()) {
+      final SocketChannel channel = serverChannel.accept();
+      if (channel != null) {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+        connections.add(channel);
+      }
+      return;
+    }
+    final SocketChannel channel = (SocketChannel) key.channel();
+    final Connection conn = (Connection) key.attachment();
+    if (key.isReadable()) {
+      if (channel.read(conn.in) < 0) {
+        conn.closing = true;
+      }
+    }
+    if (key.isValid() && key.isWritable()) {
+      conn.out.flip();
+      channel.write(conn.out);
+      conn.out.compact();
+    }
+    process(conn);
+
+    // Keep writing while output is pending, and stop reading when the input buffer is full
+    if (conn.out.position() > 0) {
+      conn.out.flip();
+      channel.write(conn.out);
+      conn.out.compact();
+    }
+    final boolean pending = conn.out.position() > 0 || conn.remaining > 0;
+    if (!pending && (conn.closing || conn.failed)) {
+      closeConnection(key);
+      return;
+    }
+    int ops = 0;
+    if (pending) {
+      ops |= SelectionKey.OP_WRITE;
+    }
+    if (conn.in.hasRemaining() && !conn.closing && !conn.failed) {
+      ops |= SelectionKey.OP_READ;
+    }
+    key.interestOps(ops);
+  }
+
+  /**
+   * Generate draws for the current request while there is room in the output buffer, then move
+   * on to the next complete request in the input buffer.
+   */
+  private void process(final Connection conn) {
+    final ByteBuffer out = conn.out;
+    while (!conn.failed) {
+      if (conn.remaining > 0) {
+        final int n = Math.min(Math.min(conn.remaining, CHUNK), out.remaining() / 4);
+        if (n == 0) {
+          return;
+        }
+        conn.generator.nextNums(conn.draws, 0, n);
+        for (int i = 0; i < n; i++) {
+          out.putInt(conn.draws[i]);
+        }
+        conn.remaining -= n;
+        continue;
+      }
+      if (out.remaining() < 4 || !parseRequest(conn)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Parse the next request if it has been completely received, and write the response status.
+   *
+   * @return <tt>true</tt> if a request was parsed
+   */
+  private boolean parseRequest(final Connection conn) {
+    final ByteBuffer in = conn.in;
+    in.flip();
+    try {
+      if (in.remaining() < REQUEST_HEADER) {
+        return false;
+      }
+      final int count = in.getInt(in.position());
+      final int nameLength = in.getShort(in.position() + 4);
+      if (count < 0 || nameLength < 0 || nameLength > MAX_NAME_LENGTH) {
+        conn.out.putInt(BAD_REQUEST);
+        conn.failed = true;
+        return false;
+      }
+      if (in.remaining() < REQUEST_HEADER + nameLength) {
+        return false;
+      }
+      final byte[] nameBytes = new byte[nameLength];
+      in.position(in.position() + REQUEST_HEADER);
+      in.get(nameBytes);
+      final RandomGen generator = generators.get(new String(nameBytes, StandardCharsets.UTF_8));
+      if (generator == null) {
+        conn.out.putInt(UNKNOWN_GENERATOR);
+      } else {
+        conn.out.putInt(count);
+        conn.generator = generator;
+        conn.remaining = count;
+      }
+      return true;
+    } finally {
+      in.compact();
+    }
+  }
+
+  private void closeConnection(final SelectionKey key) {
+    connections.remove(key.channel());
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException e) {
+      // Already closing
+    }
+  }
+
+  /**
+   * State of a client connection.
+   */
+  private static final class Connection {
+    private final ByteBuffer in = ByteBuffer.allocateDirect(IN_BUFFER_SIZE);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(OUT_BUFFER_SIZE);
+    private final int[] draws = new int[CHUNK];
+
+    // Generator and number of draws still to send for the current request
+    private RandomGen generator;
+    private int remaining;
+
+    // Client has closed its side of the connection, or sent a bad request
+    private boolean closing;
+    private boolean failed;
+  }
+
+}
@@ -0,0 +1,158 @@
+package man;
+
+/**
+ * Distribution functions used to turn test statistics into p-values.
+ *
+ * <p>
+ * The incomplete gamma function, log gamma and complementary error function follow the well known
+ * algorithms of Numerical Recipes, which are accurate to better than 1e-7, more than enough for
+ * deciding whether a test passes at a given significance level.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+final class StatisticalFunctions {
+
+  private static final int MAX_ITERATIONS = 1000;
+  private static final double EPS = 1e-12;
+  private static final double FPMIN = 1e-300;
+
+  // Lanczos coefficients for log gamma
+  private static final double[] LANCZOS = { 76.18009172947146, -86.50532032941677,
+      24.01409824083091, -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5 };
+
+  private StatisticalFunctions() {
+  }
+
+  /**
+   * Probability that a chi-squared statistic with the given degrees of freedom is at least x.
+   *
+   * @param x
+   *          chi-squared statistic
+   * @param degreesFreedom
+   *          number of degrees of freedom
+   * @return p-value between 0 and 1
+   */
+  static double chiSquaredSurvival(final double x, final int degreesFreedom) {
+    if (degreesFreedom < 1 || x <= 0.0) {
+      return 1.0;
+    }
+    return regularizedGammaQ(degreesFreedom / 2.0, x / 2.0);
+  }
+
+  /**
+   * Probability that the absolute value of a standard normal variable is at least |z|.
+   *
+   * @param z
+   *          normal statistic
+   * @return p-value between 0 and 1
+   */
+  static double normalSurvivalTwoSided(final double z) {
+    return erfc(Math.abs(z) / Math.sqrt(2.0));
+  }
+
+  /**
+   * Probability that the Kolmogorov statistic <tt>sqrt(n) D</tt> is at least lambda.
+   *
+   * @param lambda
+   *          scaled Kolmogorov-Smirnov statistic
+   * @return p-value between 0 and 1
+   */
+  static double kolmogorovSurvival(final double lambda) {
+    final double a2 = -2.0 * lambda * lambda;
+    double fac = 2.0;
+    double sum = 0.0;
+    double termbf = 0.0;
+    for (int j = 1; j <= 100; j++) {
+      final double term = fac * Math.exp(a2 * j * j);
+      sum += term;
+      if (Math.abs(term) <= 0.001 * termbf || Math.abs(term) <= 1.0e-8 * sum) {
+        return Math.min(1.0, Math.max(0.0, sum));
+      }
+      fac = -fac;
+      termbf = Math.abs(term);
+    }
+    // Series has not converged, which only happens for very small lambda
+    return 1.0;
+  }
+
+  /**
+   * Regularized upper incomplete gamma function Q(a, x) = 1 - P(a, x).
+   */
+  static double regularizedGammaQ(final double a, final double x) {
+    if (x < a + 1.0) {
+      return 1.0 - gammaSeries(a, x);
+    }
+    return gammaContinuedFraction(a, x);
+  }
+
+  /**
+   * Natural log of the gamma function for x &gt; 0.
+   */
+  static double logGamma(final double x) {
+    double y = x;
+    double tmp = x + 5.5;
+    tmp -= (x + 0.5) * Math.log(tmp);
+    double ser = 1.000000000190015;
+    for (final double c : LANCZOS) {
+      ser += c / ++y;
+    }
+    return -tmp + Math.log(2.5066282746310005 * ser / x);
+  }
+
+  /**
+   * Complementary error function, with fractional error less than 1.2e-7.
+   */
+  static double erfc(final double x) {
+    final double z = Math.abs(x);
+    final double t = 1.0 / (1.0 + 0.5 * z);
+    final double ans = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t
+        * (0.09678418 + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+            + t * (-0.82215223 + t * 0.17087277)))))))));
+    return x >= 0.0 ? ans : 2.0 - ans;
+  }
+
+  // Series for P(a, x), converging for x < a + 1
+  private static double gammaSeries(final double a, final double x) {
+    double ap = a;
+    double del = 1.0 / a;
+    double sum = del;
+    for (int n = 0; n < MAX_ITERATIONS; n++) {
+      ap += 1.0;
+      del *= x / ap;
+      sum += del;
+      if (Math.abs(del) < Math.abs(sum) * EPS) {
+        break;
+      }
+    }
+    return sum * Math.exp(-x + a * Math.log(x) - logGamma(a));
+  }
+
+  // Continued fraction for Q(a, x), converging for x >= a + 1
+  private static double gammaContinuedFraction(final double a, final double x) {
+    double b = x + 1.0 - a;
+    double c = 1.0 / FPMIN;
+    double d = 1.0 / b;
+    double h = d;
+    for (int i = 1; i <= MAX_ITERATIONS; i++) {
+      final double an = -i * (i - a);
+      b += 2.0;
+      d = an * d + b;
+      if (Math.abs(d) < FPMIN) {
+        d = FPMIN;
+      }
+      c = b + an / c;
+      if (Math.abs(c) < FPMIN) {
+        c = FPMIN;
+      }
+      d = 1.0 / d;
+      final double del = d * c;
+      h *= del;
+      if (Math.abs(del - 1.0) < EPS) {
+        break;
+      }
+    }
+    return Math.exp(-x + a * Math.log(x) - logGamma(a)) * h;
+  }
+
+}
@@ -0,0 +1,267 @@
+package man;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Random number generator whose distribution can be replaced while other threads keep drawing
+ * from it, keeping the occurrences of each distribution, or version, separately.
+ *
+ * <p>
+ * The current version is published through an atomic reference, in the style of read-copy-update
+ * (RCU): a new version is built completely and then swapped in with a single atomic write, so a
+ * reader sees either the old or the new version and is never blocked. Each draw is counted against
+ * the version it was drawn from, so draws in flight during a swap are not lost or misattributed.
+ *
+ * <p>
+ * A reader registers with a version before drawing, and checks the version is still current after
+ * registering, retrying with the new version if it has just been replaced. A swap waits until no
+ * reader is registered with the old version, after which its counts are final, and returns it to be
+ * summarised. Only the thread calling {@link #swap} waits; swaps are serialised with each other.
+ *
+ * <p>
+ * Readers register by adding to striped counters of the entries to and exits from a version,
+ * rather than one shared count, so concurrent draws do not all contend on the same cache line.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public class SwappableRandomGen {
+
+  private final AtomicReference<Version> current;
+
+  /**
+   * Constructor of a generator with an initial distribution.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the probability values between 0 and 1
+   */
+  public SwappableRandomGen(final int[] randomNums, final float[] probabilities) {
+    this.current = new AtomicReference<>(new Version(1, randomNums, buildTable(randomNums,
+        probabilities)));
+  }
+
+  private static DistributionTable buildTable(final int[] randomNums,
+      final float[] probabilities) {
+    return AbstractRandomGen.buildTable(randomNums == null ? -1 : randomNums.length,
+        probabilities);
+  }
+
+  /**
+   * Returns integer that is one of the randomNums of the current version, using a thread-local
+   * source of randomness.
+   *
+   * @return int randomNum
+   */
+  public int nextNum() {
+    return nextNum(ThreadLocalRandom.current());
+  }
+
+  /**
+   * Returns integer that is one of the randomNums of the current version.
+   *
+   * @param random
+   *          Source of uniformly distributed random floats
+   * @return int randomNum
+   */
+  public int nextNum(final Random random) {
+    final Version version = enter();
+    try {
+      final int index = version.table.sampleIndex(random);
+      version.occurrences.incrementAndGet(index);
+      return version.randomNums[index];
+    } finally {
+      version.exits.increment();
+    }
+  }
+
+  /**
+   * Fills part of an array with random numbers, all from the same version.
+   *
+   * @param random
+   *          Source of uniformly distributed random floats
+   * @param dest
+   *          Array to fill
+   * @param offset
+   *          Index of the first element to fill
+   * @param length
+   *          Number of elements to fill
+   * @return the version the random numbers were drawn from
+   */
+  public Version nextNums(final Random random, final int[] dest, final int offset,
+      final int length) {
+    AbstractRandomGen.checkRange(dest.length, offset, length);
+    final Version version = enter();
+    try {
+      for (int i = offset; i < offset + length; i++) {
+        final int index = version.table.sampleIndex(random);
+        version.occurrences.incrementAndGet(index);
+        dest[i] = version.randomNums[index];
+      }
+      return version;
+    } finally {
+      version.exits.increment();
+    }
+  }
+
+  /**
+   * Register as a reader of the current version.
+   */
+  private Version enter() {
+    while (true) {
+      final Version version = current.get();
+      version.entries.increment();
+      if (current.get() == version) {
+        return version;
+      }
+      // Replaced while registering, so the swap may not wait for this reader
+      version.exits.increment();
+    }
+  }
+
+  /**
+   * Replace the distribution, waiting until no reader is still drawing from the old version.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param probabilities
+   *          Same size array of float values which are the probability values between 0 and 1
+   * @return the retired version, whose occurrences are final
+   */
+  public Version swap(final int[] randomNums, final float[] probabilities) {
+    return swap(randomNums, buildTable(randomNums, probabilities));
+  }
+
+  /**
+   * Replace the distribution with an already built table, e.g. one shared by a
+   * {@link RandomGenFactory}, waiting until no reader is still drawing from the old version.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param table
+   *          Table of the corresponding probabilities
+   * @return the retired version, whose occurrences are final
+   */
+  public synchronized Version swap(final int[] randomNums, final DistributionTable table) {
+    if (randomNums == null || table == null || randomNums.length != table.size()) {
+      throw new IllegalArgumentException(
+          "Expecting arrays to be non-null and of the same non-zero length");
+    }
+    final Version old = current.get();
+    current.set(new Version(old.number + 1, randomNums, table));
+
+    // Grace period: wait for readers that registered before the swap
+    while (old.hasReaders()) {
+      Thread.yield();
+    }
+    old.retired = true;
+    return old;
+  }
+
+  /**
+   * Gets the version currently drawn from.
+   *
+   * @return current version
+   */
+  public Version getCurrent() {
+    return current.get();
+  }
+
+  /**
+   * A distribution and the occurrences of the draws from it.
+   */
+  public static final class Version {
+    private final long number;
+    private final int[] randomNums;
+    private final DistributionTable table;
+    private final AtomicLongArray occurrences;
+
+    // Number of times readers have registered with, and left, this version
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder exits = new LongAdder();
+
+    private volatile boolean retired;
+
+    private Version(final long number, final int[] randomNums, final DistributionTable table) {
+      this.number = number;
+      this.randomNums = randomNums;
+      this.table = table;
+      this.occurrences = new AtomicLongArray(randomNums.length);
+    }
+
+    /**
+     * Whether any reader is still registered with this version. The exits are summed before the
+     * entries, so every reader whose exit is counted also has its entry counted, and equal sums
+     * mean no reader is still drawing.
+     */
+    private boolean hasReaders() {
+      final long left = exits.sum();
+      return entries.sum() != left;
+    }
+
+    /**
+     * Gets the number of the version, starting at 1 and increasing with each swap.
+     *
+     * @return version number
+     */
+    public long getNumber() {
+      return number;
+    }
+
+    /**
+     * Whether the version has been replaced and has no readers, so its occurrences are final.
+     *
+     * @return <tt>true</tt> if retired
+     */
+    public boolean isRetired() {
+      return retired;
+    }
+
+    /**
+     * Gets the random numbers of the version.
+     *
+     * @return array of random numbers
+     */
+    public int[] getRandomNums() {
+      return randomNums;
+    }
+
+    /**
+     * Gets the table of the version.
+     *
+     * @return table of probabilities
+     */
+    public DistributionTable getTable() {
+      return table;
+    }
+
+    /**
+     * Take a snapshot of the occurrences of the draws from this version, which is final once the
+     * version is retired.
+     *
+     * @return snapshot of the occurrences
+     */
+    public OccurrenceSnapshot getSnapshot() {
+      final long[] counts = new long[occurrences.length()];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = occurrences.get(i);
+      }
+      return OccurrenceSnapshot.of(randomNums, table.getProbabilities(), counts);
+    }
+
+    /**
+     * Gets a summary of the draws from this version.
+     *
+     * @return summarizer of the occurrences
+     */
+    public RandomGenSummarizer getSummarizer() {
+      return new RandomGenSummarizer(getSnapshot());
+    }
+  }
+
+}
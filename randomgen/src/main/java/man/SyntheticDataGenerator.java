@@ -0,0 +1,550 @@
+package man;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Generator of synthetic datasets of integer columns, where each column has its own distribution,
+ * optionally conditional on the value of an earlier column in the same row.
+ *
+ * <p>
+ * Rows are generated in batches of {@link #BATCH_ROWS} rows, a column at a time, straight into a
+ * primitive array for each column, by a binary search of the column's {@link DistributionTable}.
+ * Batches are generated in parallel on a fork-join pool and written in order, so the rows depend
+ * only on the seed: every batch has its own random source derived from the seed and the batch
+ * number, whatever the parallelism. While one group of batches is written, the pool generates the
+ * next into a second set of buffers, so generation and writing overlap.
+ *
+ * <p>
+ * Binary columnar format, big-endian:
+ * <li>Header: <tt>int magic, byte version, int columns</tt>, then the name of each column as
+ * UTF-8 after its length in bytes as an unsigned short
+ * <li>Batches, until the end of the file: <tt>int rows</tt>, then for each column in turn its
+ * <tt>rows</tt> values as ints
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public final class SyntheticDataGenerator {
+  // First int of a columnar file, followed by the format version
+  static final int MAGIC = 0x52475344;
+  static final int VERSION = 1;
+
+  // Number of rows in each batch
+  public static final int BATCH_ROWS = 1 << 16;
+
+  // Scale of the top 24 bits of a random int to a float in [0, 1), as Random.nextFloat()
+  private static final float FLOAT_UNIT = 0x1.0p-24f;
+
+  // Size of the buffer of an output file
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  // Longest CSV cell: a sign, ten digits and a separator
+  private static final int MAX_CELL = 12;
+
+  // Longest column name in bytes, as its length is an unsigned short in the columnar header
+  public static final int MAX_NAME_LENGTH = 0xFFFF;
+
+  private final Column[] columns;
+
+  private SyntheticDataGenerator(final List<Column> columns) {
+    this.columns = columns.toArray(new Column[columns.size()]);
+  }
+
+  /**
+   * Generate rows in memory, as the values of each column.
+   *
+   * @param rows
+   *          Number of rows
+   * @param seed
+   *          Seed of the dataset, the same seed giving the same rows
+   * @return array of the values of each column, each with one value a row
+   */
+  public int[][] generate(final int rows, final long seed) {
+    if (rows < 0) {
+      throw new IllegalArgumentException(
+          String.format("Expecting a non-negative number of rows, however rows is %d", rows));
+    }
+    final int[][] values = new int[columns.length][rows];
+    final Batch batch = new Batch(Math.min(BATCH_ROWS, rows));
+    for (int first = 0; first < rows; first += BATCH_ROWS) {
+      final int length = Math.min(BATCH_ROWS, rows - first);
+      batch.generate(first / BATCH_ROWS, length, seed);
+      for (int c = 0; c < columns.length; c++) {
+        System.arraycopy(batch.values[c], 0, values[c], first, length);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Generate rows in parallel into a binary columnar file, creating or truncating it.
+   *
+   * @param file
+   *          Path of the file
+   * @param rows
+   *          Number of rows
+   * @param seed
+   *          Seed of the dataset, the same seed giving the same rows
+   * @param pool
+   *          Fork-join pool to generate the batches
+   * @throws IOException
+   *           if the file cannot be written
+   */
+  public void writeColumnar(final Path file, final long rows, final long seed,
+      final ForkJoinPool pool) throws IOException {
+    write(file, rows, seed, pool, false);
+  }
+
+  /**
+   * Generate rows in parallel into a CSV file with a header line of the column names, creating or
+   * truncating it.
+   *
+   * @param file
+   *          Path of the file
+   * @param rows
+   *          Number of rows
+   * @param seed
+   *          Seed of the dataset, the same seed giving the same rows
+   * @param pool
+   *          Fork-join pool to generate the batches
+   * @throws IOException
+   *           if the file cannot be written
+   */
+  public void writeCsv(final Path file, final long rows, final long seed,
+      final ForkJoinPool pool) throws IOException {
+    write(file, rows, seed, pool, true);
+  }
+
+  private void write(final Path file, final long rows, final long seed, final ForkJoinPool pool,
+      final boolean csv) throws IOException {
+    if (rows < 0 || pool == null) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting a non-negative number of rows and a pool, however rows is %d", rows));
+    }
+    final long numBatches = (rows + BATCH_ROWS - 1) / BATCH_ROWS;
+    // A group of batches is enough to keep the pool busy, and there are two sets of buffers, so the
+    // next group is generated into one while the previous group is written from the other
+    final int inFlight = Math.max(1, pool.getParallelism());
+    final Batch[][] sets = new Batch[2][inFlight];
+    for (final Batch[] set : sets) {
+      for (int i = 0; i < inFlight; i++) {
+        set[i] = new Batch((int) Math.min(BATCH_ROWS, rows));
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      // The header is written straight to the file, as the names can be any length
+      final ByteBuffer header = ByteBuffer.wrap(csv ? csvHeader() : columnarHeader());
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      // Room for at least the widest CSV row
+      final ByteBuffer buffer = ByteBuffer
+          .allocateDirect(Math.max(BUFFER_SIZE, MAX_CELL * columns.length));
+      final long numGroups = (numBatches + inFlight - 1) / inFlight;
+      List<Future<Void>> pending = numGroups > 0
+          ? submitGroup(pool, sets[0], 0, numBatches, rows, seed) : null;
+      for (long g = 0; g < numGroups; g++) {
+        await(pending);
+        final Batch[] set = sets[(int) (g & 1)];
+        final int size = pending.size();
+        // Submit the next group before writing this one, and wait for it only after the write
+        pending = g + 1 < numGroups
+            ? submitGroup(pool, sets[(int) ((g + 1) & 1)], (g + 1) * inFlight, numBatches, rows,
+                seed)
+            : null;
+        for (int i = 0; i < size; i++) {
+          if (csv) {
+            putCsvRows(channel, buffer, set[i]);
+          } else {
+            putColumnarBatch(channel, buffer, set[i]);
+          }
+        }
+      }
+      drain(channel, buffer);
+    }
+  }
+
+  /**
+   * Submit the generation of a group of batches, one task for each buffer of the set, starting
+   * from the given batch number.
+   */
+  private List<Future<Void>> submitGroup(final ForkJoinPool pool, final Batch[] set,
+      final long first, final long numBatches, final long rows, final long seed) {
+    final int size = (int) Math.min(set.length, numBatches - first);
+    final List<Future<Void>> futures = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      final Batch batch = set[i];
+      final long number = first + i;
+      final int length = (int) Math.min(BATCH_ROWS, rows - number * BATCH_ROWS);
+      futures.add(pool.submit(() -> {
+        batch.generate(number, length, seed);
+        return null;
+      }));
+    }
+    return futures;
+  }
+
+  private byte[] columnarHeader() {
+    int size = 9;
+    for (final Column column : columns) {
+      size += 2 + column.name.getBytes(StandardCharsets.UTF_8).length;
+    }
+    final ByteBuffer header = ByteBuffer.allocate(size);
+    header.putInt(MAGIC).put((byte) VERSION).putInt(columns.length);
+    for (final Column column : columns) {
+      final byte[] name = column.name.getBytes(StandardCharsets.UTF_8);
+      header.putShort((short) name.length).put(name);
+    }
+    return header.array();
+  }
+
+  private void putColumnarBatch(final FileChannel channel, final ByteBuffer buffer,
+      final Batch batch) throws IOException {
+    ensure(channel, buffer, 4);
+    buffer.putInt(batch.rows);
+    for (int c = 0; c < columns.length; c++) {
+      final int[] values = batch.values[c];
+      int row = 0;
+      while (row < batch.rows) {
+        ensure(channel, buffer, 4);
+        // Bulk copy as many values as fit through an int view of the buffer
+        final int count = Math.min(batch.rows - row, buffer.remaining() / 4);
+        buffer.asIntBuffer().put(values, row, count);
+        buffer.position(buffer.position() + count * 4);
+        row += count;
+      }
+    }
+  }
+
+  /**
+   * Header line of the column names, quoting a name that contains a separator, a quote or a line
+   * break, with any quotes in it doubled.
+   */
+  private byte[] csvHeader() {
+    final StringBuilder header = new StringBuilder();
+    for (int c = 0; c < columns.length; c++) {
+      final String name = columns[c].name;
+      if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0 || name.indexOf('\n') >= 0
+          || name.indexOf('\r') >= 0) {
+        header.append('"').append(name.replace("\"", "\"\"")).append('"');
+      } else {
+        header.append(name);
+      }
+      header.append(c == columns.length - 1 ? '\n' : ',');
+    }
+    return header.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void putCsvRows(final FileChannel channel, final ByteBuffer buffer, final Batch batch)
+      throws IOException {
+    final int last = columns.length - 1;
+    for (int row = 0; row < batch.rows; row++) {
+      ensure(channel, buffer, MAX_CELL * columns.length);
+      for (int c = 0; c <= last; c++) {
+        putDecimal(buffer, batch.values[c][row]);
+        buffer.put((byte) (c == last ? '\n' : ','));
+      }
+    }
+  }
+
+  /**
+   * Put the decimal digits of a number, without creating a string.
+   */
+  private static void putDecimal(final ByteBuffer buffer, final int num) {
+    long value = num;
+    if (value < 0) {
+      buffer.put((byte) '-');
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value / 10; v > 0; v /= 10) {
+      digits++;
+    }
+    final int end = buffer.position() + digits;
+    int pos = end;
+    do {
+      buffer.put(--pos, (byte) ('0' + value % 10));
+      value /= 10;
+    } while (value > 0);
+    buffer.position(end);
+  }
+
+  private static void ensure(final FileChannel channel, final ByteBuffer buffer, final int bytes)
+      throws IOException {
+    if (buffer.remaining() < bytes) {
+      drain(channel, buffer);
+    }
+  }
+
+  private static void drain(final FileChannel channel, final ByteBuffer buffer)
+      throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static void await(final List<Future<Void>> futures) {
+    for (final Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while generating rows", e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+    }
+  }
+
+  /**
+   * Mix the seed and batch number (the finaliser of SplitMix64), so that each batch has an
+   * unrelated random source.
+   */
+  private static long mix(final long seed, final long batch) {
+    long z = seed + (batch + 1) * 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Gets the number of columns.
+   *
+   * @return number of columns
+   */
+  public int getNumColumns() {
+    return columns.length;
+  }
+
+  /**
+   * Gets the name of a column.
+   *
+   * @param column
+   *          index of the column
+   * @return name of the column
+   */
+  public String getColumnName(final int column) {
+    return columns[column].name;
+  }
+
+  /**
+   * Buffers of the chosen indices and values of each column, reused for each batch.
+   */
+  private final class Batch {
+    private final int[][] indices;
+    private final int[][] values;
+    private int rows;
+
+    private Batch(final int capacity) {
+      this.indices = new int[columns.length][capacity];
+      this.values = new int[columns.length][capacity];
+    }
+
+    private void generate(final long number, final int length, final long seed) {
+      final SplittableRandom random = new SplittableRandom(mix(seed, number));
+      this.rows = length;
+      for (int c = 0; c < columns.length; c++) {
+        final Column column = columns[c];
+        final int[] chosen = indices[c];
+        final int[] out = values[c];
+        if (column.parent < 0) {
+          final DistributionTable table = column.tables[0];
+          final int[] nums = column.nums[0];
+          for (int r = 0; r < length; r++) {
+            chosen[r] = sample(table, random);
+            out[r] = nums[chosen[r]];
+          }
+        } else {
+          final int[] parentIndices = indices[column.parent];
+          for (int r = 0; r < length; r++) {
+            final int t = column.parentToTable[parentIndices[r]];
+            chosen[r] = sample(column.tables[t], random);
+            out[r] = column.nums[t][chosen[r]];
+          }
+        }
+      }
+    }
+
+    private int sample(final DistributionTable table, final SplittableRandom random) {
+      if (table.isTrivial()) {
+        return table.getTrivialIndex();
+      }
+      return table.binarySearch((random.nextInt() >>> 8) * FLOAT_UNIT);
+    }
+  }
+
+  /**
+   * Distributions of a column: one, or one for each value of its parent column.
+   */
+  private static final class Column {
+    private final String name;
+    private final int[][] nums;
+    private final DistributionTable[] tables;
+    // Index of the parent column, or -1
+    private final int parent;
+    // Distribution used for each index of the parent's values
+    private final int[] parentToTable;
+
+    private Column(final String name, final int[][] nums, final DistributionTable[] tables,
+        final int parent, final int[] parentToTable) {
+      this.name = name;
+      this.nums = nums;
+      this.tables = tables;
+      this.parent = parent;
+      this.parentToTable = parentToTable;
+    }
+
+    /**
+     * Gets the values of an unconditional column, to condition a child column on.
+     */
+    private int[] unconditionalValues() {
+      if (nums.length == 1) {
+        return nums[0];
+      }
+      throw new IllegalArgumentException(String.format(
+          "Expecting parent column %s to be unconditional", name));
+    }
+  }
+
+  /**
+   * Builder of the columns of a generator, in order; a conditional column must come after its
+   * parent.
+   */
+  public static final class Builder {
+    private final List<Column> columns = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+
+    /**
+     * Add a column with its own distribution.
+     *
+     * @param name
+     *          Name of the column
+     * @param randomNums
+     *          Array of integers (positive or negative) that maybe generated
+     * @param probabilities
+     *          Same size array of float values which are the probability values between 0 and 1
+     * @return this builder
+     */
+    public Builder column(final String name, final int[] randomNums,
+        final float[] probabilities) {
+      checkName(name);
+      columns.add(new Column(name, new int[][] { randomNums },
+          new DistributionTable[] { AbstractRandomGen.buildTable(
+              randomNums == null ? -1 : randomNums.length, probabilities) },
+          -1, null));
+      names.add(name);
+      return this;
+    }
+
+    /**
+     * Add a column whose distribution depends on the value of an earlier column in the same row.
+     *
+     * @param name
+     *          Name of the column
+     * @param parentName
+     *          Name of the earlier, unconditional, column
+     * @param parentValues
+     *          Values of the parent column, every one of which must be given a distribution
+     * @param randomNums
+     *          For each parent value, the array of integers that maybe generated
+     * @param probabilities
+     *          For each parent value, the same size array of probabilities
+     * @return this builder
+     */
+    public Builder column(final String name, final String parentName, final int[] parentValues,
+        final int[][] randomNums, final float[][] probabilities) {
+      checkName(name);
+      int parent = -1;
+      for (int c = 0; c < columns.size(); c++) {
+        if (columns.get(c).name.equals(parentName)) {
+          parent = c;
+        }
+      }
+      if (parent < 0) {
+        throw new IllegalArgumentException(
+            String.format("Expecting parent column %s to be added first", parentName));
+      }
+      if (parentValues == null || randomNums == null || probabilities == null
+          || randomNums.length != parentValues.length
+          || probabilities.length != parentValues.length) {
+        throw new IllegalArgumentException(
+            "Expecting a distribution for each parent value, in arrays of the same length");
+      }
+      final int[] parentNums = columns.get(parent).unconditionalValues();
+      final DistributionTable[] tables = new DistributionTable[parentValues.length];
+      final int[] parentToTable = new int[parentNums.length];
+      Arrays.fill(parentToTable, -1);
+      for (int t = 0; t < parentValues.length; t++) {
+        tables[t] = AbstractRandomGen.buildTable(
+            randomNums[t] == null ? -1 : randomNums[t].length, probabilities[t]);
+        boolean found = false;
+        for (int p = 0; p < parentNums.length; p++) {
+          if (parentNums[p] == parentValues[t]) {
+            parentToTable[p] = t;
+            found = true;
+          }
+        }
+        if (!found) {
+          throw new IllegalArgumentException(String.format(
+              "Expecting parent value %d to be a value of column %s", parentValues[t],
+              parentName));
+        }
+      }
+      for (int p = 0; p < parentNums.length; p++) {
+        if (parentToTable[p] < 0) {
+          throw new IllegalArgumentException(String.format(
+              "Expecting a distribution for value %d of column %s", parentNums[p], parentName));
+        }
+      }
+      columns.add(new Column(name, randomNums, tables, parent, parentToTable));
+      names.add(name);
+      return this;
+    }
+
+    private void checkName(final String name) {
+      if (name == null || name.isEmpty()
+          || name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_LENGTH) {
+        throw new IllegalArgumentException(String.format(
+            "Expecting a non-empty column name of at most %d bytes", MAX_NAME_LENGTH));
+      }
+      if (names.contains(name)) {
+        throw new IllegalArgumentException(
+            String.format("Expecting a new column name, found %s again", name));
+      }
+    }
+
+    /**
+     * Build the generator of the columns added.
+     *
+     * @return generator of rows of the columns
+     */
+    public SyntheticDataGenerator build() {
+      if (columns.isEmpty()) {
+        throw new IllegalArgumentException("Expecting at least one column");
+      }
+      return new SyntheticDataGenerator(columns);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package man;
+
+import java.util.Objects;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive streams publisher of random numbers, in batches of a primitive <tt>int[]</tt> rather
+ * than one boxed Integer for each number.
+ *
+ * <p>
+ * Each item is a new array of up to batchSize random numbers, and the draws are made only on
+ * demand: a request for n items draws exactly n batches, nothing in advance. The draws and the
+ * signals to the subscriber run on the given executor, at most one task at a time for each
+ * subscription.
+ *
+ * <p>
+ * Every subscriber has an independent generator sharing the same {@link DistributionTable}, seeded
+ * from a split of the publisher's stream, so that subscribers see different numbers while a
+ * publisher with the same seed and order of subscriptions gives the same numbers.
+ *
+ * @author Sioned Baker
+ * @version 1.0
+ */
+public final class RandomGenPublisher implements Flow.Publisher<int[]> {
+
+  private final int[] randomNums;
+  private final DistributionTable table;
+  private final int batchSize;
+  private final long draws;
+  private final Executor executor;
+
+  // Stream that each subscriber's seed is split from
+  private final SplittableRandom seeds;
+
+  /**
+   * Constructor of a publisher of an unending stream of random numbers.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param table
+   *          Table of the corresponding probabilities
+   * @param batchSize
+   *          Number of random numbers in each item
+   * @param seed
+   *          Seed of the stream the subscribers' seeds are split from
+   * @param executor
+   *          Executor to draw and signal the subscribers on
+   */
+  public RandomGenPublisher(final int[] randomNums, final DistributionTable table,
+      final int batchSize, final long seed, final Executor executor) {
+    this(randomNums, table, batchSize, Long.MAX_VALUE, seed, executor);
+  }
+
+  /**
+   * Constructor of a publisher of a given number of random numbers to each subscriber, after which
+   * the subscription completes. The last item may have fewer than batchSize numbers.
+   *
+   * @param randomNums
+   *          Array of integers (positive or negative) that maybe generated
+   * @param table
+   *          Table of the corresponding probabilities
+   * @param batchSize
+   *          Number of random numbers in each item
+   * @param draws
+   *          Number of random numbers published to each subscriber
+   * @param seed
+   *          Seed of the stream the subscribers' seeds are split from
+   * @param executor
+   *          Executor to draw and signal the subscribers on
+   */
+  public RandomGenPublisher(final int[] randomNums, final DistributionTable table,
+      final int batchSize, final long draws, final long seed, final Executor executor) {
+    if (randomNums == null || table == null || randomNums.length != table.size()) {
+      throw new IllegalArgumentException(
+          "Expecting arrays to be non-null and of the same non-zero length");
+    }
+    if (batchSize < 1 || draws < 0 || executor == null) {
+      throw new IllegalArgumentException(String.format(
+          "Expecting a positive batch size, non-negative draws and an executor, however batch "
+              + "size is %d and draws %d",
+          batchSize, draws));
+    }
+    this.randomNums = randomNums;
+    this.table = table;
+    this.batchSize = batchSize;
+    this.draws = draws;
+    this.executor = executor;
+    this.seeds = new SplittableRandom(seed);
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super int[]> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+    final long seed;
+    synchronized (seeds) {
+      seed = seeds.split().nextLong();
+    }
+    final Subscription subscription = new Subscription(subscriber,
+        new RandomGen(randomNums, table, new Random(seed)));
+    subscriber.onSubscribe(subscription);
+    if (draws == 0) {
+      // Nothing to publish, so complete without any demand
+      subscription.schedule();
+    }
+  }
+
+  /**
+   * Subscription of one subscriber, with its own generator.
+   */
+  private final class Subscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super int[]> subscriber;
+    private final RandomGen generator;
+
+    // Outstanding demand, Long.MAX_VALUE being unbounded
+    private final AtomicLong requested = new AtomicLong();
+
+    // Number of times the drain was asked for while running, to run it at most once at a time
+    private final AtomicInteger wip = new AtomicInteger();
+
+    // Random numbers still to publish, only used by the drain
+    private long remaining = draws;
+
+    private volatile boolean cancelled;
+
+    // Invalid request to signal by onError from the drain
+    private volatile Throwable error;
+
+    private Subscription(final Flow.Subscriber<? super int[]> subscriber,
+        final RandomGen generator) {
+      this.subscriber = subscriber;
+      this.generator = generator;
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException(
+            String.format("Expecting a positive request, however request is %d", n));
+      } else {
+        long current;
+        long next;
+        do {
+          current = requested.get();
+          next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!requested.compareAndSet(current, next));
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    private void schedule() {
+      if (wip.getAndIncrement() == 0) {
+        try {
+          executor.execute(this);
+        } catch (RuntimeException e) {
+          cancelled = true;
+          subscriber.onError(e);
+        }
+      }
+    }
+
+    /**
+     * Drain the demand on the executor.
+     */
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        if (cancelled) {
+          return;
+        }
+        final Throwable invalid = error;
+        if (invalid != null) {
+          cancelled = true;
+          subscriber.onError(invalid);
+          return;
+        }
+        final long demand = requested.get();
+        long emitted = 0;
+        while (emitted != demand && remaining > 0 && !cancelled) {
+          final int[] batch = new int[(int) Math.min(batchSize, remaining)];
+          try {
+            generator.nextNums(batch);
+          } catch (RuntimeException e) {
+            cancelled = true;
+            subscriber.onError(e);
+            return;
+          }
+          if (remaining != Long.MAX_VALUE) {
+            remaining -= batch.length;
+          }
+          subscriber.onNext(batch);
+          emitted++;
+        }
+        if (remaining == 0 && !cancelled) {
+          cancelled = true;
+          subscriber.onComplete();
+          return;
+        }
+        if (emitted > 0 && demand != Long.MAX_VALUE) {
+          requested.addAndGet(-emitted);
+        }
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+  }
+}
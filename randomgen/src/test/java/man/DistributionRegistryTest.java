@@ -0,0 +1,102 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the registry of packed per-tenant distributions {@link DistributionRegistry}.
+ *
+ */
+public class DistributionRegistryTest {
+
+  @Test
+  public void testSameDrawsAsRandomGen() {
+    final DistributionRegistry registry = new DistributionRegistry.Builder(2, 5)
+        .add(42L, EXAMPLE_NUM, EXAMPLE_PROB)
+        .add(-7L, new int[] { 5, 6 }, new float[] { 0.5f, 0.5f }).build();
+    final RandomGen gen = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 99L);
+    final Random random = new Random(99L);
+    for (int i = 0; i < 10000; i++) {
+      assertEquals("Draw " + i, gen.nextNum(), registry.nextNum(42L, random));
+    }
+
+    final RandomGen other = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 3L);
+    final int[] expected = new int[100];
+    other.nextNums(expected);
+    final int[] actual = new int[110];
+    registry.nextNums(42L, new Random(3L), actual, 10, 100);
+    assertArrayEquals("Batch", expected, Arrays.copyOfRange(actual, 10, 110));
+  }
+
+  @Test
+  public void testManyTenants() {
+    final int tenants = 100000;
+    final Random sizes = new Random(1L);
+    final DistributionRegistry.Builder builder = new DistributionRegistry.Builder(1000, 4);
+    long totalSize = 0;
+    for (int t = 0; t < tenants; t++) {
+      final int k = 3 + sizes.nextInt(48);
+      final int[] nums = new int[k];
+      final float[] probs = new float[k];
+      for (int i = 0; i < k; i++) {
+        nums[i] = t * 100 + i;
+        probs[i] = 1.0f / k;
+      }
+      Probabilities.balance(probs);
+      builder.add(t * 31L, nums, probs);
+      totalSize += k;
+    }
+    final DistributionRegistry registry = builder.build();
+    assertEquals("Tenants", tenants, registry.getNumTenants());
+    assertEquals("Arena size", totalSize, registry.getArenaSize());
+    assertFalse("Unknown tenant", registry.contains(1L));
+
+    final Random random = new Random(5L);
+    for (int t = 0; t < tenants; t += 97) {
+      final long id = t * 31L;
+      assertTrue("Contains " + id, registry.contains(id));
+      final int num = registry.nextNum(id, random);
+      assertTrue("Value of tenant " + id, num >= t * 100 && num < t * 100 + registry.size(id));
+      assertEquals("First value", t * 100, registry.getRandomNums(id)[0]);
+    }
+  }
+
+  @Test
+  public void testTrivialTenant() {
+    final DistributionRegistry registry = new DistributionRegistry.Builder(1, 3)
+        .add(1L, new int[] { 7, 8, 9 }, new float[] { 0.0f, 1.0f, 0.0f }).build();
+    final Random random = new Random(1L);
+    for (int i = 0; i < 100; i++) {
+      assertEquals("Trivial", 8, registry.nextNum(1L));
+      assertEquals("Trivial with random", 8, registry.nextNum(1L, random));
+    }
+    assertEquals("Randomness not consumed", new Random(1L).nextInt(), random.nextInt());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateTenant() {
+    new DistributionRegistry.Builder(2, 5).add(1L, EXAMPLE_NUM, EXAMPLE_PROB).add(1L, EXAMPLE_NUM,
+        EXAMPLE_PROB);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownTenant() {
+    new DistributionRegistry.Builder(1, 5).add(1L, EXAMPLE_NUM, EXAMPLE_PROB).build().nextNum(2L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidProbabilities() {
+    new DistributionRegistry.Builder(1, 2).add(1L, new int[] { 1, 2 },
+        new float[] { 0.5f, 0.6f });
+  }
+
+}
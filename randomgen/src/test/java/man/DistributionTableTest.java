@@ -0,0 +1,131 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the parallel construction of a {@link DistributionTable}.
+ *
+ */
+public class DistributionTableTest {
+
+  private static ForkJoinPool pool;
+
+  @BeforeClass
+  public static void createPool() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @AfterClass
+  public static void shutdownPool() {
+    pool.shutdown();
+  }
+
+  /**
+   * Random probabilities summing to 1.0 as checked by {@link RandomGen}.
+   */
+  static float[] randomProbabilities(final int k, final long seed) {
+    final Random random = new Random(seed);
+    final double[] weights = new double[k];
+    for (int i = 0; i < k; i++) {
+      weights[i] = random.nextDouble();
+    }
+    return Probabilities.normalise(weights);
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    final float[] probs = randomProbabilities(1 << 20, 1L);
+    final DistributionTable sequential = DistributionTable.of(probs);
+    final DistributionTable parallel = DistributionTable.of(probs, pool);
+    assertEquals("Size", probs.length, parallel.size());
+    assertFalse("Not trivial", parallel.isTrivial());
+
+    double exact = 0.0;
+    double maxSequentialError = 0.0;
+    double maxParallelError = 0.0;
+    for (int i = 0; i < probs.length; i++) {
+      exact += probs[i];
+      maxSequentialError = Math.max(maxSequentialError,
+          Math.abs(sequential.getCumulativeProbability(i) - exact));
+      maxParallelError = Math.max(maxParallelError,
+          Math.abs(parallel.getCumulativeProbability(i) - exact));
+      assertTrue("Ascending", i == 0 || parallel.getCumulativeProbability(i) >= parallel
+          .getCumulativeProbability(i - 1));
+    }
+    System.out.println(String.format("Largest cumulative error: sequential %.3e, parallel %.3e",
+        maxSequentialError, maxParallelError));
+    assertTrue("Parallel rounded to float only", maxParallelError <= 1e-7);
+    assertTrue("No less accurate", maxParallelError <= maxSequentialError);
+
+    // Sequential float rounding moves segment boundaries, the parallel table only by float rounding
+    final double[] exactCum = new double[probs.length];
+    double running = 0.0;
+    for (int i = 0; i < probs.length; i++) {
+      running += probs[i];
+      exactCum[i] = running;
+    }
+    final Random random = new Random(2L);
+    for (int i = 0; i < 10000; i++) {
+      final float key = random.nextFloat();
+      final int index = parallel.binarySearch(key);
+      final double lower = index == 0 ? 0.0 : exactCum[index - 1];
+      assertTrue("Key in exact segment", key >= lower - 1e-7 && key <= exactCum[index] + 1e-7);
+    }
+  }
+
+  @Test
+  public void testProbabilitiesCopied() {
+    final float[] probs = EXAMPLE_PROB.clone();
+    final DistributionTable table = DistributionTable.of(probs);
+    probs[0] = 0.5f;
+    table.getProbabilities()[1] = 0.5f;
+    for (int i = 0; i < EXAMPLE_PROB.length; i++) {
+      assertEquals("Probability at index " + i, EXAMPLE_PROB[i], table.getProbability(i), 0.0f);
+      assertEquals("Copy at index " + i, EXAMPLE_PROB[i], table.getProbabilities()[i], 0.0f);
+    }
+  }
+
+  @Test
+  public void testSmallArrayBuiltSequentially() {
+    final DistributionTable parallel = DistributionTable.of(EXAMPLE_PROB, pool);
+    final DistributionTable sequential = DistributionTable.of(EXAMPLE_PROB);
+    for (int i = 0; i < EXAMPLE_PROB.length; i++) {
+      assertEquals("Identical", sequential.getCumulativeProbability(i),
+          parallel.getCumulativeProbability(i), 0.0f);
+    }
+  }
+
+  @Test
+  public void testParallelTrivial() {
+    final float[] probs = new float[DistributionTable.PARALLEL_THRESHOLD * 3];
+    probs[probs.length - 100] = 1.0f;
+    final DistributionTable table = DistributionTable.of(probs, pool);
+    assertTrue("Trivial", table.isTrivial());
+    assertEquals("Trivial index", probs.length - 100, table.getTrivialIndex());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParallelInvalidProbability() {
+    final float[] probs = randomProbabilities(DistributionTable.PARALLEL_THRESHOLD * 2, 3L);
+    probs[probs.length / 2 + 7] = -0.5f;
+    DistributionTable.of(probs, pool);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParallelInvalidTotal() {
+    final float[] probs = randomProbabilities(DistributionTable.PARALLEL_THRESHOLD * 2, 4L);
+    probs[0] += 0.01f;
+    DistributionTable.of(probs, pool);
+  }
+
+}
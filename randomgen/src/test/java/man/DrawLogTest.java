@@ -0,0 +1,157 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the bit-packed log of draws {@link DrawLogWriter} and {@link DrawLogReader}.
+ *
+ */
+public class DrawLogTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRecordAndReplay() throws IOException {
+    final Path file = folder.newFile("draws.log").toPath();
+    final RandomGen gen = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 21L);
+    final int iterations = 100003;
+    final int[] drawn = new int[iterations];
+    try (DrawLogWriter writer = new DrawLogWriter(open(file), gen, 7)) {
+      assertEquals("Bits per draw", 3, writer.getBitsPerDraw());
+      for (int i = 0; i < 1000; i++) {
+        drawn[i] = writer.nextNum();
+      }
+      writer.nextNums(drawn, 1000, iterations - 1000);
+      assertEquals("Draws", iterations, writer.getDraws());
+    }
+
+    // About 3 bits a draw, plus a draws count and a partly filled long for each small block
+    final double bitsPerDraw = Files.size(file) * 8.0 / iterations;
+    assertTrue("Bits per draw " + bitsPerDraw, bitsPerDraw > 3.0 && bitsPerDraw < 3.7);
+
+    try (DrawLogReader reader = new DrawLogReader(file)) {
+      assertArrayEquals("Random numbers", EXAMPLE_NUM, reader.getRandomNums());
+      final int[] replayed = new int[iterations + 10];
+      int n = 0;
+      int read;
+      while ((read = reader.readNums(replayed, n, Math.min(999, replayed.length - n))) > 0) {
+        n += read;
+      }
+      assertEquals("Replayed draws", iterations, n);
+      assertArrayEquals("Same sequence", drawn, Arrays.copyOf(replayed, iterations));
+    }
+
+    try (DrawLogReader reader = new DrawLogReader(file)) {
+      final OccurrenceSnapshot snapshot = reader.replayOccurrences();
+      assertEquals("Count", iterations, snapshot.getCount());
+      final long[] expected = new long[EXAMPLE_NUM.length];
+      for (int i = 0; i < expected.length; i++) {
+        expected[i] = gen.getOccurrences()[i];
+      }
+      assertArrayEquals("Occurrences", expected, snapshot.getOccurrences());
+    }
+  }
+
+  @Test
+  public void testWideIndices() throws IOException {
+    for (final int k : new int[] { 2, 1000, (1 << 20) + 1 }) {
+      final Path file = folder.newFile("wide" + k + ".log").toPath();
+      // Only the size of the distribution matters for the packing, so indices are recorded
+      // directly rather than drawn
+      final int[] nums = new int[k];
+      final float[] probs = new float[k];
+      probs[0] = 1.0f;
+      final RandomGen gen = new RandomGen(nums, probs);
+      final Random random = new Random(k);
+      final int[] indices = new int[10007];
+      try (DrawLogWriter writer = new DrawLogWriter(open(file), gen, 16)) {
+        for (int i = 0; i < indices.length; i++) {
+          indices[i] = random.nextInt(k);
+          writer.record(indices[i]);
+        }
+      }
+      try (DrawLogReader reader = new DrawLogReader(file)) {
+        final int[] replayed = new int[indices.length];
+        assertEquals("Read all", indices.length, reader.readIndices(replayed, 0, replayed.length));
+        assertArrayEquals("Indices with k=" + k, indices, replayed);
+        assertEquals("End", -1, reader.readIndices(replayed, 0, 1));
+      }
+    }
+  }
+
+  @Test
+  public void testTrivialUsesNoBits() throws IOException {
+    final Path file = folder.newFile("trivial.log").toPath();
+    final RandomGen gen = new RandomGen(new int[] { 4 }, new float[] { 1.0f });
+    try (DrawLogWriter writer = new DrawLogWriter(file, gen)) {
+      assertEquals("Bits per draw", 0, writer.getBitsPerDraw());
+      for (int i = 0; i < 500; i++) {
+        assertEquals("Trivial", 4, writer.nextNum());
+      }
+    }
+    assertEquals("Header, value and one block count", 14 + 8 + 4, Files.size(file));
+    try (DrawLogReader reader = new DrawLogReader(file)) {
+      assertEquals("Count", 500, reader.replayOccurrences().getCount());
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void testTruncated() throws IOException {
+    final Path file = folder.newFile("truncated.log").toPath();
+    try (DrawLogWriter writer = new DrawLogWriter(file,
+        new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 1L))) {
+      writer.nextNums(new int[1000], 0, 1000);
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(file) - 3);
+    }
+    try (DrawLogReader reader = new DrawLogReader(file)) {
+      reader.replayOccurrences();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testTooManyValues() throws IOException {
+    // More random numbers than a 32-bit buffer size could hold
+    new DrawLogReader(header(1 << 29)).close();
+  }
+
+  @Test(expected = EOFException.class)
+  public void testValuesMissing() throws IOException {
+    // A valid number of random numbers, but none of their data
+    new DrawLogReader(header(DrawLogReader.MAX_VALUES)).close();
+  }
+
+  private Path header(final int k) throws IOException {
+    final Path file = folder.newFile().toPath();
+    final ByteBuffer header = ByteBuffer.allocate(14);
+    header.putInt(DrawLogWriter.MAGIC).put((byte) DrawLogWriter.VERSION).putInt(k)
+        .put((byte) DrawLogWriter.bitsPerDraw(k)).putInt(16);
+    Files.write(file, header.array());
+    return file;
+  }
+
+  private static FileChannel open(final Path file) throws IOException {
+    return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+}
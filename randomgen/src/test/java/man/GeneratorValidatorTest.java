@@ -0,0 +1,105 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import man.GeneratorValidator.Check;
+import man.GeneratorValidator.Report;
+
+/**
+ * Tests the statistical validation battery {@link GeneratorValidator}.
+ *
+ */
+public class GeneratorValidatorTest {
+
+  @Test
+  public void testCorrectGenerator() {
+    final Report report = GeneratorValidator
+        .forDistribution(EXAMPLE_NUM, EXAMPLE_PROB, 64, 20000, 0.01).validate();
+    System.out.println(report.getSummary());
+    assertEquals("Seeds", 64, report.getNumSeeds());
+    assertTrue("Acceptable", report.isAcceptable());
+    for (final Check check : Check.values()) {
+      assertTrue(check + " pass rate", report.getPassRate(check) > 0.9);
+    }
+  }
+
+  @Test
+  public void testBiasedGenerator() {
+    final DistributionTable table = DistributionTable.of(EXAMPLE_PROB);
+    final GeneratorValidator validator = new GeneratorValidator(
+        seed -> new RandomGen(EXAMPLE_NUM, table, new Random(seed) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          public float nextFloat() {
+            // Never reaches the top of the range, so the last values are drawn too rarely
+            return super.nextFloat() * 0.97f;
+          }
+        }), 16, 20000, 0.01);
+    final Report report = validator.validate();
+    System.out.println(report.getSummary());
+    assertEquals("Chi-squared fails", 0.0, report.getPassRate(Check.CHI_SQUARED), 0.1);
+    assertEquals("G-test fails", 0.0, report.getPassRate(Check.G_TEST), 0.1);
+    assertFalse("Not acceptable", report.isAcceptable());
+  }
+
+  @Test
+  public void testCorrelatedGenerator() {
+    final DistributionTable table = DistributionTable.of(EXAMPLE_PROB);
+    final GeneratorValidator validator = new GeneratorValidator(
+        seed -> new RandomGen(EXAMPLE_NUM, table, new Random(seed) {
+          private static final long serialVersionUID = 1L;
+          private float repeat = -1.0f;
+
+          @Override
+          public float nextFloat() {
+            // Each value is returned twice in a row, so the distribution is right but successive
+            // draws are correlated
+            if (repeat >= 0.0f) {
+              final float value = repeat;
+              repeat = -1.0f;
+              return value;
+            }
+            repeat = super.nextFloat();
+            return repeat;
+          }
+        }), 16, 20000, 0.01);
+    final Report report = validator.validate();
+    System.out.println(report.getSummary());
+    assertEquals("Serial correlation fails", 0.0,
+        report.getPassRate(Check.SERIAL_CORRELATION), 0.1);
+    assertFalse("Serial correlation not acceptable", report.isAcceptable(Check.SERIAL_CORRELATION));
+  }
+
+  @Test
+  public void testStatisticalFunctions() {
+    assertEquals("Chi-squared 1 df", 0.05, StatisticalFunctions.chiSquaredSurvival(3.8415, 1),
+        1e-4);
+    assertEquals("Chi-squared 4 df", 0.01, StatisticalFunctions.chiSquaredSurvival(13.2767, 4),
+        1e-4);
+    assertEquals("Chi-squared 30 df", 0.5, StatisticalFunctions.chiSquaredSurvival(29.3360, 30),
+        1e-4);
+    assertEquals("Normal", 0.05, StatisticalFunctions.normalSurvivalTwoSided(1.95996), 1e-4);
+    assertEquals("Kolmogorov", 0.05, StatisticalFunctions.kolmogorovSurvival(1.3581), 1e-4);
+    assertEquals("Log gamma", Math.log(24.0), StatisticalFunctions.logGamma(5.0), 1e-9);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSignificance() {
+    GeneratorValidator.forDistribution(EXAMPLE_NUM, EXAMPLE_PROB, 10, 100, 1.5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooFewDraws() {
+    GeneratorValidator.forDistribution(EXAMPLE_NUM, EXAMPLE_PROB, 10, 1, 0.01);
+  }
+
+}
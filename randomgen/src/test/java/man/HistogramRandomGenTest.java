@@ -0,0 +1,93 @@
+package man;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the histogram sampler {@link HistogramRandomGen}.
+ *
+ */
+public class HistogramRandomGenTest {
+
+  private static final double[] EDGES = { -10.0, 0.0, 1.0, 5.0, 100.0 };
+  private static final float[] PROB = { 0.1f, 0.4f, 0.3f, 0.2f };
+
+  @Test
+  public void testValuesWithinChosenBin() {
+    final HistogramRandomGen generator = new HistogramRandomGen(EDGES, PROB, 25);
+    final int iterations = 100000;
+    final int[] binCounts = new int[PROB.length];
+    for (int i = 0; i < iterations; i++) {
+      final double value = generator.nextNum();
+      assertTrue("Value within histogram", value >= EDGES[0] && value < EDGES[EDGES.length - 1]);
+      int bin = 0;
+      while (value >= EDGES[bin + 1]) {
+        bin++;
+      }
+      binCounts[bin]++;
+    }
+    assertArrayEquals("Bin of each value agrees with occurrences", binCounts,
+        generator.getOccurrences());
+    for (int i = 0; i < PROB.length; i++) {
+      assertEquals("Proportion in bin " + i, PROB[i], (double) binCounts[i] / iterations, 0.01);
+    }
+  }
+
+  @Test
+  public void testUniformWithinBin() {
+    // Values in the bin [1, 5) should be uniform, so the mean should be close to 3 and the
+    // proportion in the lower half close to 1/2
+    final HistogramRandomGen generator = new HistogramRandomGen(EDGES, PROB, 24);
+    final double[] values = new double[200000];
+    generator.nextNums(values);
+    double total = 0.0;
+    int n = 0;
+    int lowerHalf = 0;
+    for (final double value : values) {
+      if (value >= 1.0 && value < 5.0) {
+        total += value;
+        n++;
+        if (value < 3.0) {
+          lowerHalf++;
+        }
+      }
+    }
+    assertEquals("Mean within bin", 3.0, total / n, 0.02);
+    assertEquals("Proportion in lower half of bin", 0.5, (double) lowerHalf / n, 0.01);
+    assertEquals(values.length, generator.getCount());
+  }
+
+  @Test
+  public void testSingleBin() {
+    final HistogramRandomGen generator = new HistogramRandomGen(new double[] { 2.0 },
+        new double[] { 4.0 }, new float[] { 1.0f }, 19);
+    double min = 4.0;
+    double max = 2.0;
+    for (int i = 0; i < 10000; i++) {
+      final double value = generator.nextNum();
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    assertTrue("Whole of single bin is covered", min < 2.01 && max > 3.99 && max < 4.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecreasingEdges() {
+    new HistogramRandomGen(new double[] { 0.0, 2.0, 1.0 }, new float[] { 0.5f, 0.5f });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongNumberOfEdges() {
+    new HistogramRandomGen(EDGES, new float[] { 0.5f, 0.5f });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInfiniteBound() {
+    new HistogramRandomGen(new double[] { 0.0 }, new double[] { Double.POSITIVE_INFINITY },
+        new float[] { 1.0f });
+  }
+
+}
@@ -0,0 +1,134 @@
+package man;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the command-line {@link LoadGenerator}.
+ *
+ */
+public class LoadGeneratorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testTextOutputPerThread() throws IOException {
+    final Path output = folder.getRoot().toPath().resolve("draws.txt");
+    final LoadGenerator.Result result = LoadGenerator.parse(new String[] { "--draws", "10001",
+        "--threads", "2", "--batch", "100", "--seed", "3", "--output", output.toString(),
+        "--format", "text" }).run();
+    assertEquals("Draws", 10001, result.getDraws());
+    System.out.println(result);
+
+    final long[] counts = new long[RandomGenTest.EXAMPLE_NUM.length];
+    long lines = 0;
+    for (int t = 0; t < 2; t++) {
+      final List<String> drawn = Files.readAllLines(folder.getRoot().toPath()
+          .resolve("draws.txt-" + t));
+      lines += drawn.size();
+      for (final String line : drawn) {
+        counts[Integer.parseInt(line) + 1]++;
+      }
+    }
+    assertEquals("Lines", 10001, lines);
+    assertArrayEquals("Occurrences of the lines", result.getSnapshot().getOccurrences(), counts);
+    assertTrue("Latency ordered",
+        result.getLatencyPercentile(50.0) <= result.getLatencyPercentile(99.0));
+  }
+
+  @Test
+  public void testBinaryOutputFromFile() throws IOException {
+    final Path dist = folder.newFile("dist.txt").toPath();
+    Files.write(dist, "-7,1\n2147483647,3\n".getBytes("US-ASCII"));
+    final Path output = folder.getRoot().toPath().resolve("draws.bin");
+    final LoadGenerator.Result result = LoadGenerator.parse(new String[] { "--file",
+        dist.toString(), "--draws", "4000", "--threads", "1", "--engine", "systematic",
+        "--output", output.toString() }).run();
+
+    final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(output));
+    assertEquals("Ints", 4000 * 4, bytes.remaining());
+    int large = 0;
+    while (bytes.hasRemaining()) {
+      if (bytes.getInt() == Integer.MAX_VALUE) {
+        large++;
+      }
+    }
+    assertEquals("Systematic counts", 3000, large, 4);
+    assertEquals("Same as the snapshot", result.getSnapshot().getOccurrences()[1], large);
+  }
+
+  @Test
+  public void testPackedOutputReplays() throws IOException {
+    final Path output = folder.getRoot().toPath().resolve("draws.log");
+    final LoadGenerator.Result result = LoadGenerator.parse(new String[] { "--draws", "5000",
+        "--threads", "1", "--random", "quasi", "--seed", "9", "--output", output.toString(),
+        "--format", "packed" }).run();
+    try (DrawLogReader reader = new DrawLogReader(output)) {
+      assertArrayEquals("Replayed occurrences", result.getSnapshot().getOccurrences(),
+          reader.replayOccurrences().getOccurrences());
+    }
+  }
+
+  @Test
+  public void testNoOutput() throws IOException {
+    final LoadGenerator.Result result = LoadGenerator.parse(new String[] { "--draws", "0",
+        "--threads", "3" }).run();
+    assertEquals("No draws", 0, result.getDraws());
+    assertEquals("No latency", 0, result.getLatencyPercentile(99.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownOption() {
+    LoadGenerator.parse(new String[] { "--speed", "fast" });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPackedNeedsTableEngine() {
+    LoadGenerator.parse(new String[] { "--engine", "stratified", "--output", "x", "--format",
+        "packed" });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testShareBeyondInt() {
+    LoadGenerator.parse(new String[] { "--draws", String.valueOf(2L * Integer.MAX_VALUE + 1),
+        "--threads", "2" });
+  }
+
+  @Test
+  public void testShareAtInt() {
+    LoadGenerator.parse(new String[] { "--draws", String.valueOf(2L * Integer.MAX_VALUE),
+        "--threads", "2" });
+  }
+
+  @Test
+  public void testExitStatus() {
+    final PrintStream err = System.err;
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(bytes, true));
+    try {
+      assertEquals("Bad option", LoadGenerator.STATUS_USAGE,
+          LoadGenerator.execute(new String[] { "--speed", "fast" }));
+      final String missing = folder.getRoot().toPath().resolve("missing.txt").toString();
+      assertEquals("Missing file", LoadGenerator.STATUS_FAILED,
+          LoadGenerator.execute(new String[] { "--file", missing, "--draws", "10" }));
+    } finally {
+      System.setErr(err);
+    }
+    assertTrue("Reported", bytes.toString().contains("Usage"));
+  }
+
+}
@@ -0,0 +1,189 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the exact sampler using the Fast Loaded Dice Roller {@link LoadedDiceRandomGen}.
+ *
+ */
+public class LoadedDiceRandomGenTest {
+
+  // Weights of the example probabilities { 0.01f, 0.3f, 0.58f, 0.1f, 0.01f } out of 100
+  static final long[] EXAMPLE_WEIGHTS = { 1, 30, 58, 10, 1 };
+
+  @Test
+  public void testValidation() {
+    final GeneratorValidator.Report report = new GeneratorValidator(
+        seed -> new LoadedDiceRandomGen(EXAMPLE_NUM, EXAMPLE_WEIGHTS, seed), 32, 50000, 0.01)
+            .validate();
+    System.out.println(report.getSummary());
+    assertTrue("Acceptable", report.isAcceptable());
+  }
+
+  @Test
+  public void testFairCoinUsesOneBit() {
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(new int[] { 0, 1 },
+        new long[] { 1, 1 }, 3L);
+    final int iterations = 100000;
+    gen.nextNums(new int[iterations]);
+    assertEquals("One bit a draw", iterations, gen.getBitsConsumed());
+    assertEquals("Fair", 0.5, (double) gen.getOccurrences()[0] / iterations, 0.01);
+  }
+
+  @Test
+  public void testNearEntropyBits() {
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(EXAMPLE_NUM, EXAMPLE_WEIGHTS, 5L);
+    final int iterations = 1000000;
+    gen.nextNums(new int[iterations]);
+
+    double entropy = 0.0;
+    for (final long w : EXAMPLE_WEIGHTS) {
+      final double p = w / 100.0;
+      entropy -= p * Math.log(p) / Math.log(2.0);
+    }
+    final double bitsPerDraw = (double) gen.getBitsConsumed() / iterations;
+    System.out.println(String.format("Entropy %.3f bits, FLDR used %.3f bits a draw", entropy,
+        bitsPerDraw));
+    assertTrue("At least the entropy", bitsPerDraw > entropy);
+    assertTrue("Within 6 bits of the entropy", bitsPerDraw < entropy + 6.0);
+
+    final RandomGenSummarizer summarizer = new RandomGenSummarizer(gen);
+    assertTrue("Chi-squared", summarizer.calcChi2() < 13.3f);
+  }
+
+  @Test
+  public void testRejectOutcome() {
+    // Total 3 needs a reject outcome of weight 1 to make 4
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(new int[] { 7, 8 },
+        new long[] { 1, 2 }, 11L);
+    final int iterations = 300000;
+    gen.nextNums(new int[iterations]);
+    assertEquals("One third", 1.0 / 3.0, (double) gen.getOccurrences()[0] / iterations, 0.005);
+    assertEquals("Probabilities of the table", 1.0f / 3.0f, gen.getProbabilities()[0], 1e-6f);
+  }
+
+  @Test
+  public void testSeeded() {
+    final int[] first = new int[1000];
+    final int[] second = new int[1000];
+    new LoadedDiceRandomGen(EXAMPLE_NUM, EXAMPLE_WEIGHTS, 19L).nextNums(first);
+    new LoadedDiceRandomGen(EXAMPLE_NUM, EXAMPLE_WEIGHTS, 19L).nextNums(second);
+    assertArrayEquals("Same seed, same draws", first, second);
+  }
+
+  @Test
+  public void testTrivial() {
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(new int[] { 1, 2, 3 },
+        new long[] { 0, 5, 0 });
+    for (int i = 0; i < 100; i++) {
+      assertEquals("Trivial", 2, gen.nextNum());
+    }
+    assertEquals("No bits", 0, gen.getBitsConsumed());
+  }
+
+  @Test
+  public void testTinyWeightNotTrivial() {
+    // The float probabilities round to { 1, 0 }, a trivial table, but the weights are not
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(new int[] { 1, 2 },
+        new long[] { 1L << 25, 1 }, 7L);
+    assertTrue("Trivial table", gen.getTable().isTrivial());
+    final int[] dest = new int[1 << 20];
+    for (int rep = 0; rep < 1 << 7; rep++) {
+      gen.nextNums(dest);
+    }
+    assertTrue("Random bits used", gen.getBitsConsumed() > 0);
+    // About 4 expected in 2^27 draws, from the seed
+    assertTrue("Tiny weight drawn", gen.getOccurrences()[1] > 0);
+  }
+
+  @Test
+  public void testSystematicExact() {
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(EXAMPLE_NUM, EXAMPLE_WEIGHTS, 21L);
+    // n a multiple of the total 100, so every number occurs exactly n * a_i / 100 times
+    final int[] dest = new int[305];
+    gen.nextNumsSystematic(dest, 5, 300);
+    final int[] counts = new int[EXAMPLE_NUM.length];
+    for (int j = 5; j < dest.length; j++) {
+      counts[dest[j] + 1]++;
+      if (j > 5) {
+        assertTrue("Ascending", dest[j] >= dest[j - 1]);
+      }
+    }
+    assertArrayEquals("Exact counts", new int[] { 3, 90, 174, 30, 3 }, counts);
+    assertArrayEquals("Occurrences", counts, gen.getOccurrences());
+    assertEquals("Count", 300, gen.getCount());
+
+    // Otherwise each number occurs within one of n * a_i / 100 times
+    for (int round = 0; round < 100; round++) {
+      final LoadedDiceRandomGen other = new LoadedDiceRandomGen(EXAMPLE_NUM, EXAMPLE_WEIGHTS,
+          round);
+      other.nextNumsSystematic(new int[37], 0, 37);
+      for (int i = 0; i < EXAMPLE_WEIGHTS.length; i++) {
+        assertEquals("Within one", 37 * EXAMPLE_WEIGHTS[i] / 100.0,
+            other.getOccurrences()[i], 1.0);
+      }
+    }
+  }
+
+  @Test
+  public void testStratifiedExact() {
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(EXAMPLE_NUM, EXAMPLE_WEIGHTS, 23L);
+    // One key in each stratum of width 1 gives every integer key once
+    final int[] dest = new int[100];
+    gen.nextNumsStratified(dest, 0, 100);
+    assertArrayEquals("Exact counts", new int[] { 1, 30, 58, 10, 1 }, gen.getOccurrences());
+
+    // Strata of width 10, so the tiny weights are drawn in proportion on average
+    final int rounds = 20000;
+    for (int round = 0; round < rounds; round++) {
+      gen.nextNumsStratified(dest, 0, 10);
+    }
+    assertEquals("Count", 100 + 10 * rounds, gen.getCount());
+    assertEquals("Frequency of -1", 0.01, (gen.getOccurrences()[0] - 1.0) / (10 * rounds),
+        0.002);
+    assertEquals("Frequency of 2", 0.1, (gen.getOccurrences()[3] - 10.0) / (10 * rounds), 0.005);
+  }
+
+  @Test
+  public void testResampleTinyWeight() {
+    // The draws come from the integer weights, not the float probabilities
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(new int[] { 1, 2 },
+        new long[] { 1L << 40, 1 }, 2L);
+    final int[] dest = new int[4];
+    gen.nextNumsSystematic(dest, 0, 4);
+    assertArrayEquals("Only the large weight", new int[] { 1, 1, 1, 1 }, dest);
+    assertTrue("Below the resolution of a float key", gen.getProbabilities()[1] < 1e-6f);
+  }
+
+  @Test
+  public void testResampleTrivial() {
+    final LoadedDiceRandomGen gen = new LoadedDiceRandomGen(new int[] { 4, 5 },
+        new long[] { 0, 7 }, 2L);
+    final int[] dest = new int[6];
+    gen.nextNumsStratified(dest, 1, 5);
+    assertArrayEquals(new int[] { 0, 5, 5, 5, 5, 5 }, dest);
+    assertEquals("Occurrences", 5, gen.getOccurrences()[1]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeWeight() {
+    new LoadedDiceRandomGen(new int[] { 1, 2 }, new long[] { 3, -1 });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAllZeroWeights() {
+    new LoadedDiceRandomGen(new int[] { 1, 2 }, new long[] { 0, 0 });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTotalTooLarge() {
+    new LoadedDiceRandomGen(new int[] { 1, 2 },
+        new long[] { LoadedDiceRandomGen.MAX_TOTAL, 1 });
+  }
+
+}
@@ -0,0 +1,116 @@
+package man;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests the Markov chain sampler {@link MarkovChain}.
+ *
+ */
+public class MarkovChainTest {
+
+  // Weather model: 0 sunny, 1 cloudy, 2 rainy
+  private static final int[][] NEXT = { { 0, 1, 2 }, { 0, 1, 2 }, { 1, 2 } };
+  private static final float[][] PROB = { { 0.7f, 0.2f, 0.1f }, { 0.3f, 0.4f, 0.3f },
+      { 0.4f, 0.6f } };
+
+  @Test
+  public void testStepsFollowRows() {
+    final MarkovChain chain = new MarkovChain(NEXT, PROB, 15);
+    final int[] trajectory = new int[100000];
+    chain.simulate(2, trajectory);
+
+    int previous = 2;
+    for (int i = 0; i < trajectory.length; i++) {
+      assertTrue("rainy is never followed by sunny", previous != 2 || trajectory[i] != 0);
+      previous = trajectory[i];
+    }
+    assertEquals("Count", trajectory.length, chain.getCount());
+
+    // Transitions out of each state should be consistent with the row at 1% significance
+    final float[] criticalVal = { 9.21f, 9.21f, 6.63f };
+    for (int s = 0; s < NEXT.length; s++) {
+      final RandomGenSummarizer summarizer = chain.getRowSummarizer(s);
+      RandomGenSummarizerTest.printSummary("transitions out of state " + s, summarizer, true);
+      assertTrue("Chi-squared of row " + s, summarizer.calcChi2() < criticalVal[s]);
+    }
+  }
+
+  @Test
+  public void testRepeatableWithSeed() {
+    final MarkovChain chain = new MarkovChain(NEXT, PROB, 25);
+    final MarkovChain chain2 = new MarkovChain(NEXT, PROB, 25);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(chain.simulate(0, 10), chain2.simulate(0, 10));
+    }
+    assertArrayEquals(chain.getVisits(), chain2.getVisits());
+  }
+
+  @Test
+  public void testParallelChains() {
+    final int[] starts = new int[1000];
+    for (int c = 0; c < starts.length; c++) {
+      starts[c] = c % 3;
+    }
+    final MarkovChain chain = new MarkovChain(NEXT, PROB, 19);
+    final MarkovChain chain2 = new MarkovChain(NEXT, PROB, 19);
+    final int[] finals = chain.simulateParallel(starts, 200);
+    final int[] finals2 = chain2.simulateParallel(starts, 200, new ForkJoinPool(3));
+
+    assertArrayEquals("Same result whatever the number of threads", finals, finals2);
+    assertArrayEquals(chain.getVisits(), chain2.getVisits());
+    assertEquals("Count", 200L * starts.length, chain.getCount());
+
+    // Stationary distribution of the weather model is uniform
+    final long[] visits = chain.getVisits();
+    for (int s = 0; s < visits.length; s++) {
+      assertEquals("Visits of state " + s, 1.0 / 3, (double) visits[s] / chain.getCount(), 0.01);
+    }
+  }
+
+  @Test
+  public void testSingleTransition() {
+    final int[][] next = { { 1 }, { 0 } };
+    final float[][] prob = { { 1.0f }, { 1.0f } };
+    final MarkovChain chain = new MarkovChain(next, prob);
+    assertEquals(1, chain.simulate(0, 11));
+    assertArrayEquals(new long[] { 6, 5 }, chain.getVisits());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidNextState() {
+    final int[][] next = { { 0, 3 }, { 0, 1 } };
+    final float[][] prob = { { 0.5f, 0.5f }, { 0.5f, 0.5f } };
+    new MarkovChain(next, prob);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRowSumNotOne() {
+    final int[][] next = { { 0, 1 }, { 0, 1 } };
+    final float[][] prob = { { 0.5f, 0.5f }, { 0.5f, 0.4f } };
+    new MarkovChain(next, prob);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyRow() {
+    final int[][] next = { { 0, 1 }, {} };
+    final float[][] prob = { { 0.5f, 0.5f }, {} };
+    new MarkovChain(next, prob);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidStart() {
+    new MarkovChain(NEXT, PROB).simulate(3, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidStepState() {
+    new MarkovChain(NEXT, PROB).step(-1);
+  }
+
+}
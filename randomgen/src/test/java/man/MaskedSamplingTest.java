@@ -0,0 +1,184 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Tests the masked draws of {@link RandomGen}, which exclude a set of values.
+ *
+ */
+public class MaskedSamplingTest {
+
+  private static final int DRAWS = 200000;
+
+  @Test
+  public void testRejectionWhenLittleExcluded() {
+    // Excluded probability 0.11, so nearly every draw is by rejection
+    assertRenormalised(excluded(0, 3));
+  }
+
+  @Test
+  public void testSearchWhenMostExcluded() {
+    // Excluded probability 0.59, so some draws search the tree
+    assertRenormalised(excluded(0, 2));
+    assertRenormalised(excluded(1, 2, 4));
+    // Excluded probability 0.98, so nearly every draw searches the tree
+    assertRenormalised(excluded(1, 2, 3));
+  }
+
+  @Test
+  public void testWithoutReplacement() {
+    final int k = 1000;
+    final int[] nums = new int[k];
+    final float[] probs = new float[k];
+    for (int i = 0; i < k; i++) {
+      nums[i] = i;
+      probs[i] = 1.0f / k;
+    }
+    final RandomGen generator = new RandomGen(nums, probs, 23L);
+    final BitSet drawn = new BitSet(k);
+    for (int i = 0; i < k; i++) {
+      final int num = generator.nextNum(drawn);
+      assertFalse("Not drawn before", drawn.get(num));
+      drawn.set(num);
+    }
+    assertEquals("All drawn", k, drawn.cardinality());
+  }
+
+  @Test
+  public void testExactSampler() {
+    final LoadedDiceRandomGen generator = new LoadedDiceRandomGen(EXAMPLE_NUM,
+        LoadedDiceRandomGenTest.EXAMPLE_WEIGHTS, 29L);
+    final BitSet excluded = excluded(1, 2);
+    for (int i = 0; i < DRAWS; i++) {
+      generator.nextNum(excluded);
+    }
+    assertEquals("Count", DRAWS, generator.getCount());
+    assertEquals("Never excluded", 0,
+        generator.getOccurrences()[1] + generator.getOccurrences()[2]);
+    assertEquals("Frequency of 2", 10.0 / 12.0, (double) generator.getOccurrences()[3] / DRAWS,
+        0.01);
+  }
+
+  @Test
+  public void testExactSamplerAlmostAllExcluded() {
+    // The weight not excluded is 2^-39 of the total, so rejection alone would never finish
+    final LoadedDiceRandomGen generator = new LoadedDiceRandomGen(new int[] { 1, 2, 3, 4 },
+        new long[] { 1L << 40, 1, 1L << 40, 3 }, 37L);
+    final BitSet light = excluded(0, 2);
+    final BitSet heavy = excluded(0, 1, 2);
+    int ones = 0;
+    for (int i = 0; i < DRAWS; i++) {
+      if (i % 2 == 0) {
+        final int num = generator.nextNum(light);
+        assertTrue("Not excluded", num == 2 || num == 4);
+        ones += num == 2 ? 1 : 0;
+      } else {
+        assertEquals("Only weight left", 4, generator.nextNum(heavy));
+      }
+    }
+    assertEquals("Frequency of 2", 0.25, (double) ones / (DRAWS / 2), 0.01);
+    assertEquals("Count", DRAWS, generator.getCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExactSamplerAllExcluded() {
+    new LoadedDiceRandomGen(EXAMPLE_NUM, LoadedDiceRandomGenTest.EXAMPLE_WEIGHTS)
+        .nextNum(excluded(0, 1, 2, 3, 4));
+  }
+
+  @Test
+  public void testMixtureAttribution() {
+    final RandomGenMixture mixture = new RandomGenMixture(
+        new RandomGen[] { new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB),
+            new RandomGen(new int[] { 3, 4 }, new float[] { 0.5f, 0.5f }) },
+        new float[] { 0.5f, 0.5f }, 31L);
+    // Light and heavy excluded sets, of the numbers -1, 0, 1 and 0, 1, 4
+    for (int i = 0; i < DRAWS; i++) {
+      mixture.nextNum(i % 2 == 0 ? excluded(0, 1, 2) : excluded(1, 2, 5));
+    }
+    final int[] componentOccurrences = mixture.getComponentOccurrences();
+    assertEquals("Every draw attributed", mixture.getCount(),
+        componentOccurrences[0] + componentOccurrences[1]);
+    final int[] occurrences = mixture.getOccurrences();
+    assertTrue("Number 4 only from component B", componentOccurrences[1] >= occurrences[5]);
+    // Number 3 has probability 0.005 from component A and 0.25 from component B
+    final long fromA = mixture.getComponentSummarizer(0).getOccurrence(4);
+    assertEquals("Number 3 from component A", 0.005 / 0.255, (double) fromA / occurrences[4],
+        0.01);
+  }
+
+  @Test
+  public void testOnlyOneNotExcluded() {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 5L);
+    final BitSet excluded = excluded(0, 1, 2, 3);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("Only value", 3, generator.nextNum(excluded));
+    }
+    assertEquals("Occurrences", 1000, generator.getOccurrences()[4]);
+  }
+
+  @Test
+  public void testNothingExcludedSameAsNextNum() {
+    final RandomGen masked = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 11L);
+    final RandomGen plain = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 11L);
+    // Indices past the values are ignored
+    final BitSet excluded = excluded(EXAMPLE_NUM.length);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("Same draw", plain.nextNum(), masked.nextNum(excluded));
+    }
+  }
+
+  @Test
+  public void testTrivial() {
+    final RandomGen generator = new RandomGen(new int[] { 7, 8, 9 },
+        new float[] { 0.0f, 1.0f, 0.0f }, 1L);
+    assertEquals("Trivial value", 8, generator.nextNum(excluded(0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAllExcluded() {
+    new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB).nextNum(excluded(0, 1, 2, 3, 4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOnlyZeroProbabilityNotExcluded() {
+    new RandomGen(new int[] { 7, 8, 9 }, new float[] { 0.0f, 0.5f, 0.5f })
+        .nextNum(excluded(1, 2));
+  }
+
+  private static BitSet excluded(final int... indices) {
+    final BitSet excluded = new BitSet();
+    for (final int i : indices) {
+      excluded.set(i);
+    }
+    return excluded;
+  }
+
+  private static void assertRenormalised(final BitSet excluded) {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 17L);
+    double remaining = 0.0;
+    for (int i = 0; i < EXAMPLE_PROB.length; i++) {
+      if (!excluded.get(i)) {
+        remaining += EXAMPLE_PROB[i];
+      }
+    }
+    for (int i = 0; i < DRAWS; i++) {
+      generator.nextNum(excluded);
+    }
+    assertEquals("Count", DRAWS, generator.getCount());
+    for (int i = 0; i < EXAMPLE_PROB.length; i++) {
+      final double expected = excluded.get(i) ? 0.0 : EXAMPLE_PROB[i] / remaining;
+      assertEquals("Frequency of " + EXAMPLE_NUM[i], expected,
+          (double) generator.getOccurrences()[i] / DRAWS, 0.01);
+    }
+  }
+
+}
@@ -0,0 +1,228 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the mergeable snapshots of occurrences {@link OccurrenceSnapshot}.
+ *
+ */
+public class OccurrenceSnapshotTest {
+
+  @Test
+  public void testSnapshotMatchesGenerator() {
+    final RandomGen gen = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 8L);
+    gen.nextNums(new int[10000]);
+    final OccurrenceSnapshot snapshot = OccurrenceSnapshot.of(gen);
+    assertEquals("Count", 10000, snapshot.getCount());
+    assertEquals("Same chi-squared", new RandomGenSummarizer(gen).calcChi2(),
+        new RandomGenSummarizer(snapshot).calcChi2(), 0.0f);
+    assertEquals("Same summary", new RandomGenSummarizer(gen).getSummary(true),
+        new RandomGenSummarizer(snapshot).getSummary(true));
+  }
+
+  @Test
+  public void testSnapshotWhileDrawing() throws InterruptedException {
+    final RandomGen gen = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 6L);
+    final int draws = 2000000;
+    final Thread drawer = new Thread(() -> {
+      for (int i = 0; i < draws; i++) {
+        gen.nextNum();
+      }
+    });
+    drawer.start();
+    long previous = 0;
+    while (drawer.isAlive()) {
+      final int before = gen.getCount();
+      final OccurrenceSnapshot snapshot = OccurrenceSnapshot.of(gen);
+      final int after = gen.getCount();
+      final int[] live = gen.getOccurrences().clone();
+      assertTrue("Count from before the snapshot", snapshot.getCount() >= before);
+      assertTrue("Count from after the snapshot", snapshot.getCount() <= after);
+      final long[] occurrences = snapshot.getOccurrences();
+      for (int i = 0; i < occurrences.length; i++) {
+        assertTrue("Occurrence at most after the snapshot", occurrences[i] <= live[i]);
+      }
+      assertTrue("Count never decreases", snapshot.getCount() >= previous);
+      previous = snapshot.getCount();
+      if (snapshot.getCount() > 0) {
+        new RandomGenSummarizer(gen).calcChi2();
+      }
+    }
+    drawer.join();
+    assertEquals("All draws", draws, OccurrenceSnapshot.of(gen).getCount());
+    assertEquals("Generator count", draws, gen.getCount());
+  }
+
+  @Test
+  public void testSnapshotIsPointInTime() throws InterruptedException {
+    // Many values, so a copy takes long enough to overlap draws
+    final int k = 100000;
+    final int[] nums = new int[k];
+    final float[] probs = new float[k];
+    for (int i = 0; i < k; i++) {
+      nums[i] = i;
+      probs[i] = 1.0f / k;
+    }
+    final RandomGen gen = new RandomGen(nums, probs, 12L);
+    final int draws = 1000000;
+    final Thread drawer = new Thread(() -> {
+      for (int i = 0; i < draws; i++) {
+        gen.nextNum();
+      }
+    });
+    drawer.start();
+    final List<OccurrenceSnapshot> snapshots = new ArrayList<>();
+    while (drawer.isAlive() && snapshots.size() < 20) {
+      snapshots.add(OccurrenceSnapshot.of(gen));
+      Thread.sleep(1);
+    }
+    drawer.join();
+
+    // Replay the same seed: each snapshot must match the first n draws exactly
+    final RandomGen replay = new RandomGen(nums, probs, 12L);
+    for (final OccurrenceSnapshot snapshot : snapshots) {
+      while (replay.getCount() < snapshot.getCount()) {
+        replay.nextNum();
+      }
+      final long[] expected = new long[k];
+      for (int i = 0; i < k; i++) {
+        expected[i] = replay.getOccurrences()[i];
+      }
+      assertArrayEquals("Occurrences after " + snapshot.getCount() + " draws", expected,
+          snapshot.getOccurrences());
+    }
+  }
+
+  @Test
+  public void testMergeFromWorkers() throws InterruptedException {
+    final int workers = 8;
+    final List<RandomGen> gens = new ArrayList<>();
+    final List<Thread> threads = new ArrayList<>();
+    for (int w = 0; w < workers; w++) {
+      final RandomGen gen = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, w);
+      gens.add(gen);
+      threads.add(new Thread(() -> gen.nextNums(new int[100000])));
+    }
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    final List<OccurrenceSnapshot> snapshots = new ArrayList<>();
+    final long[] expected = new long[EXAMPLE_NUM.length];
+    for (int w = 0; w < workers; w++) {
+      threads.get(w).join();
+      final OccurrenceSnapshot snapshot = OccurrenceSnapshot.of(gens.get(w));
+      snapshots.add(snapshot);
+      final long[] counts = snapshot.getOccurrences();
+      for (int i = 0; i < counts.length; i++) {
+        expected[i] += counts[i];
+      }
+    }
+    final OccurrenceSnapshot merged = OccurrenceSnapshot.mergeAll(snapshots);
+    assertArrayEquals("Counts added", expected, merged.getOccurrences());
+    assertEquals("Total", workers * 100000L, merged.getCount());
+
+    // Associative
+    final OccurrenceSnapshot left = snapshots.get(0).merge(snapshots.get(1))
+        .merge(snapshots.get(2));
+    final OccurrenceSnapshot right = snapshots.get(0)
+        .merge(snapshots.get(1).merge(snapshots.get(2)));
+    assertArrayEquals("Associative", left.getOccurrences(), right.getOccurrences());
+
+    final RandomGenSummarizer summarizer = new RandomGenSummarizer(merged);
+    RandomGenSummarizerTest.printSummary("merged snapshots", summarizer, true);
+    assertTrue("Chi-squared", summarizer.calcChi2() < 13.3f);
+  }
+
+  @Test
+  public void testSerialisation() throws IOException {
+    final OccurrenceSnapshot snapshot = OccurrenceSnapshot.of(EXAMPLE_NUM, EXAMPLE_PROB,
+        new long[] { 0L, 5L, 300L, 1L << 40, Long.MAX_VALUE / 2 });
+    final byte[] bytes = snapshot.toByteArray();
+    final OccurrenceSnapshot read = OccurrenceSnapshot.fromByteArray(bytes);
+    assertArrayEquals("Random numbers", EXAMPLE_NUM, read.getRandomNums());
+    assertArrayEquals("Probabilities", EXAMPLE_PROB, read.getProbabilities(), 0.0f);
+    assertArrayEquals("Occurrences", snapshot.getOccurrences(), read.getOccurrences());
+    assertEquals("Count", snapshot.getCount(), read.getCount());
+    // Header 9 bytes, 8 bytes per value and probability, counts of 1 + 1 + 2 + 6 + 9 bytes
+    assertEquals("Compact", 9 + 5 * 8 + 19, bytes.length);
+  }
+
+  @Test
+  public void testCountsBeyondInt() {
+    final long n = 3000000000L;
+    final long[] counts = new long[EXAMPLE_PROB.length];
+    long total = 0;
+    for (int i = 0; i < counts.length - 1; i++) {
+      counts[i] = (long) (EXAMPLE_PROB[i] * (double) n);
+      total += counts[i];
+    }
+    counts[counts.length - 1] = n - total;
+    final OccurrenceSnapshot snapshot = OccurrenceSnapshot.of(EXAMPLE_NUM, EXAMPLE_PROB, counts);
+    final RandomGenSummarizer summarizer = new RandomGenSummarizer(snapshot);
+    assertEquals("Count", n, snapshot.getCount());
+    assertTrue("Summary of 64-bit count", summarizer.getSummary(false).contains("n=3000000000"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeDifferentDistributions() {
+    final float[] other = Arrays.copyOf(EXAMPLE_PROB, EXAMPLE_PROB.length);
+    other[0] = 0.02f;
+    other[1] = 0.29f;
+    OccurrenceSnapshot.of(EXAMPLE_NUM, EXAMPLE_PROB, new long[5])
+        .merge(OccurrenceSnapshot.of(EXAMPLE_NUM, other, new long[5]));
+  }
+
+  @Test
+  public void testImmutable() {
+    final RandomGen gen = new RandomGen(EXAMPLE_NUM.clone(), EXAMPLE_PROB.clone(), 4L);
+    gen.nextNums(new int[100]);
+    final OccurrenceSnapshot snapshot = OccurrenceSnapshot.of(gen);
+    gen.getRandomNums()[0] = 100;
+    gen.getProbabilities()[0] = 0.5f;
+    snapshot.getRandomNums()[1] = 100;
+    snapshot.getProbabilities()[1] = 0.5f;
+    snapshot.getOccurrences()[2] = 100L;
+    assertArrayEquals("Random numbers", EXAMPLE_NUM, snapshot.getRandomNums());
+    assertArrayEquals("Probabilities", EXAMPLE_PROB, snapshot.getProbabilities(), 0.0f);
+    assertEquals("Count", 100, snapshot.getCount());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadTooManyValues() throws IOException {
+    // Header then a number of random numbers past the limit, with nothing after it
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.write(Arrays.copyOf(OccurrenceSnapshot.of(EXAMPLE_NUM, EXAMPLE_PROB, new long[5])
+        .toByteArray(), 5));
+    out.writeInt(OccurrenceSnapshot.MAX_VALUES + 1);
+    OccurrenceSnapshot.fromByteArray(bytes.toByteArray());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadCountsOverflow() throws IOException {
+    final byte[] bytes = OccurrenceSnapshot.of(new int[] { 1, 2 }, new float[] { 0.5f, 0.5f },
+        new long[] { Long.MAX_VALUE, 0L }).toByteArray();
+    // Make the last count 1 rather than 0, so the total overflows
+    bytes[bytes.length - 1] = 1;
+    OccurrenceSnapshot.fromByteArray(bytes);
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadInvalid() throws IOException {
+    OccurrenceSnapshot.fromByteArray(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+  }
+
+}
@@ -0,0 +1,138 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the generator drawing ahead into a ring buffer {@link PrefetchingRandomGen}.
+ *
+ */
+public class PrefetchingRandomGenTest {
+
+  @Test
+  public void testSingleConsumer() throws InterruptedException {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    try (PrefetchingRandomGen prefetching = new PrefetchingRandomGen(generator, 1000, 15)) {
+      prefetching.start();
+      // Wait for the buffer to fill
+      for (int i = 0; i < 100 && prefetching.getBuffered() < 1024; i++) {
+        Thread.sleep(10);
+      }
+      assertEquals("Capacity rounded up to power of 2", 1024, prefetching.getBuffered());
+
+      final int iterations = 100000;
+      final int[] occur = new int[EXAMPLE_NUM.length];
+      for (int i = 0; i < iterations; i++) {
+        occur[prefetching.nextNum() + 1]++;
+      }
+      assertArrayEquals("Occurrences counted as values are taken", occur,
+          prefetching.getOccurrences());
+      assertEquals("Generator used for its table only", 0, generator.getCount());
+
+      final RandomGenSummarizer summarizer = prefetching.getSummarizer();
+      RandomGenSummarizerTest.printSummary("prefetching generator", summarizer, true);
+      assertTrue("Chi-squared", summarizer.calcChi2() < 13.3f);
+    }
+  }
+
+  @Test
+  public void testConcurrentConsumers() throws InterruptedException {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    final int threads = 4;
+    final int iterations = 200000;
+    final int[][] occur = new int[threads][EXAMPLE_NUM.length];
+    try (PrefetchingRandomGen prefetching = new PrefetchingRandomGen(generator, 256)) {
+      prefetching.start();
+      final List<Thread> consumers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int[] counts = occur[t];
+        consumers.add(new Thread(() -> {
+          for (int i = 0; i < iterations; i++) {
+            counts[prefetching.nextNum() + 1]++;
+          }
+        }));
+      }
+      for (final Thread consumer : consumers) {
+        consumer.start();
+      }
+      for (final Thread consumer : consumers) {
+        consumer.join();
+      }
+
+      final int[] expected = new int[EXAMPLE_NUM.length];
+      for (int t = 0; t < threads; t++) {
+        for (int i = 0; i < expected.length; i++) {
+          expected[i] += occur[t][i];
+        }
+      }
+      assertArrayEquals("Every value taken is counted exactly once", expected,
+          prefetching.getOccurrences());
+      assertTrue("Chi-squared", prefetching.getSummarizer().calcChi2() < 13.3f);
+    }
+  }
+
+  @Test
+  public void testFallbackAfterClose() {
+    final RandomGen generator = new RandomGen(new int[] { 3 }, new float[] { 1.0f });
+    final PrefetchingRandomGen prefetching = new PrefetchingRandomGen(generator, 1);
+    prefetching.start();
+    prefetching.close();
+    final int buffered = prefetching.getBuffered();
+    for (int i = 0; i < buffered + 10; i++) {
+      assertEquals(3, prefetching.nextNum());
+    }
+    assertEquals(10, prefetching.getFallbacks());
+    assertEquals(buffered + 10, prefetching.getOccurrences()[0]);
+  }
+
+  @Test
+  public void testDirectBeforeStart() {
+    final RandomGen generator = new RandomGen(new int[] { 3 }, new float[] { 1.0f });
+    try (PrefetchingRandomGen prefetching = new PrefetchingRandomGen(generator, 16)) {
+      for (int i = 0; i < 10; i++) {
+        assertEquals(3, prefetching.nextNum());
+      }
+      assertEquals("Nothing drawn ahead", 0, prefetching.getBuffered());
+      assertEquals(10, prefetching.getFallbacks());
+    }
+  }
+
+  @Test
+  public void testRefilledAfterWake() throws InterruptedException {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    try (PrefetchingRandomGen prefetching = new PrefetchingRandomGen(generator, 64, 3)) {
+      prefetching.start();
+      for (int round = 0; round < 20; round++) {
+        awaitFull(prefetching, 64);
+        // Taking half the ring wakes the producer, which fills it again
+        for (int i = 0; i < 32; i++) {
+          prefetching.nextNum();
+        }
+      }
+      awaitFull(prefetching, 64);
+      assertEquals("No fallbacks", 0, prefetching.getFallbacks());
+    }
+  }
+
+  private static void awaitFull(final PrefetchingRandomGen prefetching, final int capacity)
+      throws InterruptedException {
+    for (int i = 0; i < 500 && prefetching.getBuffered() < capacity; i++) {
+      Thread.sleep(2);
+    }
+    assertEquals("Buffer full", capacity, prefetching.getBuffered());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCapacity() {
+    new PrefetchingRandomGen(new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB), 0);
+  }
+
+}
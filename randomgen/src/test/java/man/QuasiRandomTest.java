@@ -0,0 +1,82 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests generating random numbers with the low-discrepancy keys of {@link QuasiRandom}.
+ *
+ */
+public class QuasiRandomTest {
+
+  @Test
+  public void testStratified() {
+    final int m = 10;
+    final QuasiRandom random = new QuasiRandom(3L);
+    for (int block = 0; block < 4; block++) {
+      final boolean[] seen = new boolean[1 << m];
+      for (int i = 0; i < seen.length; i++) {
+        final float key = random.nextFloat();
+        assertTrue("Key in (0, 1)", key > 0.0f && key < 1.0f);
+        final int interval = (int) (key * seen.length);
+        assertFalse("One key in each interval", seen[interval]);
+        seen[interval] = true;
+      }
+    }
+  }
+
+  @Test
+  public void testOccurrencesCloseToExpected() {
+    final RandomGen generator = RandomGen.quasiRandom(EXAMPLE_NUM, EXAMPLE_PROB, 7L);
+    final int iterations = 1 << 16;
+    generator.nextNums(new int[iterations]);
+    final int[] occurrences = generator.getOccurrences();
+    for (int i = 0; i < EXAMPLE_PROB.length; i++) {
+      assertEquals("Within two counts", EXAMPLE_PROB[i] * iterations, occurrences[i], 2.0);
+    }
+  }
+
+  @Test
+  public void testFasterConvergence() {
+    final int iterations = 10000;
+    final RandomGen quasi = RandomGen.quasiRandom(EXAMPLE_NUM, EXAMPLE_PROB, 11L);
+    final RandomGen pseudo = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 11L);
+    RandomGenTest.runGenerator(iterations, quasi);
+    RandomGenTest.runGenerator(iterations, pseudo);
+    final double quasiSem = new RandomGenSummarizer(quasi).calcStandardErrorOfMean();
+    final double pseudoSem = new RandomGenSummarizer(pseudo).calcStandardErrorOfMean();
+    System.out.println(String.format("After %d iterations, SEM quasi=%9.8f pseudo=%9.8f",
+        iterations, quasiSem, pseudoSem));
+    assertTrue("Quasi-random converges faster", quasiSem * 10 < pseudoSem);
+  }
+
+  @Test
+  public void testSeeded() {
+    final int[] first = new int[1000];
+    final int[] second = new int[1000];
+    final int[] other = new int[1000];
+    RandomGen.quasiRandom(EXAMPLE_NUM, EXAMPLE_PROB, 5L).nextNums(first);
+    RandomGen.quasiRandom(EXAMPLE_NUM, EXAMPLE_PROB, 5L).nextNums(second);
+    RandomGen.quasiRandom(EXAMPLE_NUM, EXAMPLE_PROB, 6L).nextNums(other);
+    assertArrayEquals("Same seed, same draws", first, second);
+    assertFalse("Different scramble", Arrays.equals(first, other));
+  }
+
+  @Test
+  public void testSetSeedRestarts() {
+    final QuasiRandom random = new QuasiRandom(13L);
+    final double first = random.nextDouble();
+    random.nextDouble();
+    random.setSeed(13L);
+    assertEquals("Restarted", first, random.nextDouble(), 0.0);
+  }
+
+}
@@ -0,0 +1,151 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+/**
+ * Tests the factory caching the tables of distributions {@link RandomGenFactory}.
+ *
+ */
+public class RandomGenFactoryTest {
+
+  @Test
+  public void testSharedTable() {
+    final RandomGenFactory factory = new RandomGenFactory();
+    final RandomGen first = factory.create(EXAMPLE_NUM.clone(), EXAMPLE_PROB.clone());
+    final RandomGen second = factory.create(EXAMPLE_NUM.clone(), EXAMPLE_PROB.clone());
+    assertSame("Shared table", first.getTable(), second.getTable());
+    assertNotSame("Copies of the random numbers", first.getRandomNums(), second.getRandomNums());
+    assertArrayEquals("Same random numbers", first.getRandomNums(), second.getRandomNums());
+    assertNotSame("Own occurrences", first.getOccurrences(), second.getOccurrences());
+    assertEquals("Misses", 1, factory.getMisses());
+    assertEquals("Hits", 1, factory.getHits());
+    assertEquals("Size", 1, factory.size());
+
+    first.nextNum();
+    assertEquals("First count", 1, first.getCount());
+    assertEquals("Second count", 0, second.getCount());
+  }
+
+  @Test
+  public void testSeeded() {
+    final RandomGenFactory factory = new RandomGenFactory();
+    factory.create(EXAMPLE_NUM, EXAMPLE_PROB);
+    final RandomGen cached = factory.create(EXAMPLE_NUM, EXAMPLE_PROB, 17L);
+    final RandomGen expected = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 17L);
+    final int[] a = new int[1000];
+    final int[] b = new int[1000];
+    cached.nextNums(a);
+    expected.nextNums(b);
+    assertArrayEquals("Same draws as RandomGen with the same seed", b, a);
+    assertEquals("Hits", 1, factory.getHits());
+  }
+
+  @Test
+  public void testCallerArraysCopied() {
+    final RandomGenFactory factory = new RandomGenFactory();
+    final int[] nums = EXAMPLE_NUM.clone();
+    final float[] probs = EXAMPLE_PROB.clone();
+    final RandomGen gen = factory.create(nums, probs);
+    nums[0] = 100;
+    probs[0] = 0.5f;
+    assertEquals("Random numbers unchanged", EXAMPLE_NUM[0], gen.getRandomNums()[0]);
+    assertEquals("Probabilities unchanged", EXAMPLE_PROB[0], gen.getProbabilities()[0], 0.0f);
+
+    // Changed content is a different distribution
+    nums[0] = EXAMPLE_NUM[0];
+    probs[0] = EXAMPLE_PROB[0];
+    factory.create(nums, probs);
+    assertEquals("Hit after restoring content", 1, factory.getHits());
+  }
+
+  @Test
+  public void testCachedArraysNotShared() {
+    final RandomGenFactory factory = new RandomGenFactory();
+    final RandomGen first = factory.create(EXAMPLE_NUM, EXAMPLE_PROB);
+    first.getRandomNums()[0] = 100;
+    first.getProbabilities()[0] = 0.5f;
+    first.getTable().getProbabilities()[1] = 0.5f;
+    final RandomGen second = factory.create(EXAMPLE_NUM, EXAMPLE_PROB);
+    assertArrayEquals("Random numbers unchanged", EXAMPLE_NUM, second.getRandomNums());
+    assertArrayEquals("Probabilities unchanged", EXAMPLE_PROB, second.getProbabilities(), 0.0f);
+    assertEquals("Hits", 1, factory.getHits());
+  }
+
+  @Test
+  public void testRangeOfCachedDistribution() {
+    final RandomGenFactory factory = new RandomGenFactory();
+    factory.create(EXAMPLE_NUM, EXAMPLE_PROB);
+    final RandomGen gen = factory.create(EXAMPLE_NUM, EXAMPLE_PROB, 3L);
+    for (int i = 0; i < 100; i++) {
+      final int num = gen.nextNum(0, 1);
+      assertTrue("In range", num == 0 || num == 1);
+    }
+  }
+
+  @Test
+  public void testTrivialReportedOnce() {
+    final RandomGenFactory factory = new RandomGenFactory();
+    final PrintStream out = System.out;
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(bytes, true));
+    try {
+      for (int i = 0; i < 3; i++) {
+        factory.create(new int[] { 1, 2 }, new float[] { 0.0f, 1.0f });
+      }
+    } finally {
+      System.setOut(out);
+    }
+    final String printed = bytes.toString();
+    assertTrue("Reported", printed.contains("trivial case"));
+    assertEquals("Reported once", printed.indexOf("INFO"), printed.lastIndexOf("INFO"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEviction() {
+    final RandomGenFactory factory = new RandomGenFactory(2);
+    final float[] probs = { 0.5f, 0.5f };
+    factory.create(new int[] { 1, 2 }, probs);
+    factory.create(new int[] { 3, 4 }, probs);
+    factory.create(new int[] { 1, 2 }, probs);
+    factory.create(new int[] { 5, 6 }, probs);
+    assertEquals("Evictions", 1, factory.getEvictions());
+    assertEquals("Size", 2, factory.size());
+
+    // {3, 4} was least recently used, so {1, 2} is still cached
+    factory.create(new int[] { 1, 2 }, probs);
+    assertEquals("Hits", 2, factory.getHits());
+    factory.create(new int[] { 3, 4 }, probs);
+    assertEquals("Misses", 4, factory.getMisses());
+    assertEquals("Evictions after reload", 2, factory.getEvictions());
+
+    factory.clear();
+    assertEquals("Cleared", 0, factory.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidDistribution() {
+    final RandomGenFactory factory = new RandomGenFactory();
+    try {
+      factory.create(new int[] { 1, 2 }, new float[] { 0.5f, 0.6f });
+    } finally {
+      assertEquals("Not cached", 0, factory.size());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMaxEntries() {
+    new RandomGenFactory(0);
+  }
+
+}
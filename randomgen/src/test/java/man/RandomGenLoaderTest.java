@@ -0,0 +1,129 @@
+package man;
+
+import static man.RandomGen.ACCEPTABLE_ERROR;
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests loading a {@link RandomGen} from a file with {@link RandomGenLoader}.
+ *
+ */
+public class RandomGenLoaderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testLoadExample() throws IOException {
+    final Path file = write("# example distribution\n-1,0.01\n0,0.3\n\n1, 0.58\n2\t0.1\n3 0.01");
+    final RandomGen generator = new RandomGenLoader().load(file, 25);
+
+    assertArrayEquals("Random numbers", EXAMPLE_NUM, generator.getRandomNums());
+    final float[] probs = generator.getProbabilities();
+    for (int i = 0; i < EXAMPLE_PROB.length; i++) {
+      assertEquals("Probability at index " + i, EXAMPLE_PROB[i], probs[i], ACCEPTABLE_ERROR);
+    }
+
+    // Same distribution and seed as RandomGenTest.testExample10kWithSeed
+    final int[] expected = { 92, 3025, 5799, 991, 93 };
+    RandomGenTest.runGenerator(10000, generator);
+    assertArrayEquals("Occurrences", expected, generator.getOccurrences());
+  }
+
+  @Test
+  public void testLoadInSmallChunks() throws IOException {
+    final int nChoice = 10000;
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < nChoice; i++) {
+      // Weights 1, 2 and 3 so that total is 19998
+      sb.append(i - nChoice / 2).append(',').append(1 + i % 3).append("\r\n");
+      if (i % 100 == 0) {
+        sb.append("# comment\n");
+      }
+    }
+    final Path file = write(sb.toString());
+    final RandomGen generator = new RandomGenLoader(new ForkJoinPool(4), 64).load(file);
+
+    final int[] nums = generator.getRandomNums();
+    final float[] probs = generator.getProbabilities();
+    assertEquals("Number of random numbers", nChoice, nums.length);
+    for (int i = 0; i < nChoice; i++) {
+      assertEquals("Random number at index " + i, i - nChoice / 2, nums[i]);
+      assertEquals("Probability at index " + i, (1 + i % 3) / 19998.0f, probs[i], ACCEPTABLE_ERROR);
+    }
+  }
+
+  @Test
+  public void testNormalisesWeights() throws IOException {
+    final Path file = write("10,1e3\n20,+3000.0\n30,6E+03\n");
+    final RandomGen generator = new RandomGenLoader().load(file);
+
+    final float[] probs = generator.getProbabilities();
+    assertEquals(0.1f, probs[0], ACCEPTABLE_ERROR);
+    assertEquals(0.3f, probs[1], ACCEPTABLE_ERROR);
+    assertEquals(0.6f, probs[2], ACCEPTABLE_ERROR);
+  }
+
+  @Test
+  public void testWeightsBeyondFloatRange() throws IOException {
+    // Weights too large and too small for a float, normalised without overflow or underflow
+    final Path large = write("10,1e300\n20,3e300\n");
+    final float[] largeProbs = new RandomGenLoader().load(large).getProbabilities();
+    assertEquals(0.25f, largeProbs[0], ACCEPTABLE_ERROR);
+    assertEquals(0.75f, largeProbs[1], ACCEPTABLE_ERROR);
+
+    final Path small = write("10,1e-60\n20,3e-60\n");
+    final float[] smallProbs = new RandomGenLoader().load(small).getProbabilities();
+    assertEquals(0.25f, smallProbs[0], ACCEPTABLE_ERROR);
+    assertEquals(0.75f, smallProbs[1], ACCEPTABLE_ERROR);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyFile() throws IOException {
+    new RandomGenLoader().load(write("# nothing here\n\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeWeight() throws IOException {
+    new RandomGenLoader().load(write("1,0.5\n2,-0.5\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingWeight() throws IOException {
+    new RandomGenLoader().load(write("1,0.5\n2\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidValue() throws IOException {
+    new RandomGenLoader().load(write("1,0.5\n3000000000,0.5\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTrailingCharacters() throws IOException {
+    new RandomGenLoader().load(write("1,0.5\n2,0.5x\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroWeights() throws IOException {
+    new RandomGenLoader().load(write("1,0\n2,0.0\n"));
+  }
+
+  private Path write(final String content) throws IOException {
+    final Path file = folder.newFile().toPath();
+    Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+    return file;
+  }
+
+}
@@ -0,0 +1,131 @@
+package man;
+
+import static man.RandomGen.ACCEPTABLE_ERROR;
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the mixture of generators {@link RandomGenMixture}.
+ *
+ */
+public class RandomGenMixtureTest {
+
+  private static final int[] OTHER_NUM = { 3, 4, 5 };
+  private static final float[] OTHER_PROB = { 0.5f, 0.25f, 0.25f };
+
+  @Test
+  public void testFlattenedDistribution() {
+    final RandomGen a = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    final RandomGen b = new RandomGen(OTHER_NUM, OTHER_PROB);
+    final RandomGenMixture mixture = new RandomGenMixture(new RandomGen[] { a, b },
+        new float[] { 7.0f, 3.0f });
+
+    // Number 3 appears in both components, so is merged
+    assertArrayEquals(new int[] { -1, 0, 1, 2, 3, 4, 5 }, mixture.getRandomNums());
+    final float[] expected = { 0.007f, 0.21f, 0.406f, 0.07f, 0.007f + 0.15f, 0.075f, 0.075f };
+    final float[] probs = mixture.getProbabilities();
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("Probability at index " + i, expected[i], probs[i], 10 * ACCEPTABLE_ERROR);
+    }
+    assertEquals(0.7f, mixture.getComponentProbabilities()[0], ACCEPTABLE_ERROR);
+  }
+
+  @Test
+  public void testAttributionToComponents() {
+    final RandomGen a = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    final RandomGen b = new RandomGen(OTHER_NUM, OTHER_PROB);
+    final RandomGenMixture mixture = new RandomGenMixture(new RandomGen[] { a, b },
+        new float[] { 0.7f, 0.3f }, 15);
+    final int iterations = 100000;
+    RandomGenTest.runGenerator(iterations, mixture);
+
+    final int[] componentOccurrences = mixture.getComponentOccurrences();
+    assertEquals(iterations, componentOccurrences[0] + componentOccurrences[1]);
+    assertEquals(0.7, (double) componentOccurrences[0] / iterations, 0.01);
+
+    // Each component summary should be consistent with its distribution at 1% significance
+    final RandomGenSummarizer summaryA = mixture.getComponentSummarizer(0);
+    final RandomGenSummarizer summaryB = mixture.getComponentSummarizer(1);
+    RandomGenSummarizerTest.printSummary("mixture component A", summaryA, true);
+    RandomGenSummarizerTest.printSummary("mixture component B", summaryB, true);
+    assertTrue("Chi-squared of component A", summaryA.calcChi2() < 13.3f);
+    assertTrue("Chi-squared of component B", summaryB.calcChi2() < 9.21f);
+    assertTrue("Chi-squared of mixture",
+        new RandomGenSummarizer(mixture).calcChi2() < 16.8f);
+  }
+
+  @Test
+  public void testAttributionOfBatchDraws() {
+    final RandomGen a = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    final RandomGen b = new RandomGen(OTHER_NUM, OTHER_PROB);
+    final RandomGenMixture mixture = new RandomGenMixture(new RandomGen[] { a, b },
+        new float[] { 0.7f, 0.3f }, 21);
+    final int[] dest = new int[1000];
+    for (int rep = 0; rep < 50; rep++) {
+      mixture.nextNumsSystematic(dest, 0, dest.length);
+      mixture.nextNumsStratified(dest, 0, dest.length);
+      mixture.nextNums(dest);
+    }
+    final int[] componentOccurrences = mixture.getComponentOccurrences();
+    assertEquals("Every draw attributed", mixture.getCount(),
+        componentOccurrences[0] + componentOccurrences[1]);
+    assertEquals(0.7, (double) componentOccurrences[0] / mixture.getCount(), 0.01);
+    assertTrue("Chi-squared of component B",
+        mixture.getComponentSummarizer(1).calcChi2() < 9.21f);
+  }
+
+  @Test
+  public void testNestedMixture() {
+    final RandomGen a = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    final RandomGen b = new RandomGen(OTHER_NUM, OTHER_PROB);
+    final RandomGen c = new RandomGen(new int[] { 9 }, new float[] { 1.0f });
+    final RandomGenMixture inner = new RandomGenMixture(new RandomGen[] { a, b },
+        new float[] { 0.5f, 0.5f });
+    final RandomGenMixture outer = new RandomGenMixture(new RandomGen[] { inner, c },
+        new float[] { 0.8f, 0.2f }, 19);
+
+    assertArrayEquals(new int[] { -1, 0, 1, 2, 3, 4, 5, 9 }, outer.getRandomNums());
+    assertEquals(0.2f, outer.getProbabilities()[7], ACCEPTABLE_ERROR);
+    assertEquals(0.8f * 0.5f * (0.01f + 0.5f), outer.getProbabilities()[4], 10 * ACCEPTABLE_ERROR);
+
+    final int[] values = new int[10000];
+    outer.nextNums(values);
+    assertEquals(10000, outer.getCount());
+    assertEquals(outer.getOccurrences()[7], outer.getComponentOccurrences()[1]);
+  }
+
+  @Test
+  public void testTrivialMixture() {
+    final RandomGen a = new RandomGen(new int[] { 1, 2 }, new float[] { 0.5f, 0.5f });
+    final RandomGen b = new RandomGen(new int[] { 2 }, new float[] { 1.0f });
+    final RandomGenMixture mixture = new RandomGenMixture(new RandomGen[] { a, b },
+        new float[] { 0.0f, 1.0f });
+    RandomGenTest.runGenerator(100, mixture);
+    assertArrayEquals(new int[] { 0, 100 }, mixture.getOccurrences());
+    assertArrayEquals(new int[] { 0, 100 }, mixture.getComponentOccurrences());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeWeight() {
+    final RandomGen a = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    new RandomGenMixture(new RandomGen[] { a, a }, new float[] { 1.5f, -0.5f });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroWeights() {
+    final RandomGen a = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    new RandomGenMixture(new RandomGen[] { a }, new float[] { 0.0f });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDifferentLengthInputs() {
+    final RandomGen a = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    new RandomGenMixture(new RandomGen[] { a, a }, new float[] { 1.0f });
+  }
+
+}
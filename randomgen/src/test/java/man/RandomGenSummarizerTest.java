@@ -4,6 +4,10 @@ import static man.RandomGen.ACCEPTABLE_ERROR;
 import static man.RandomGenTest.EXAMPLE_NUM;
 import static man.RandomGenTest.EXAMPLE_PROB;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -166,6 +170,129 @@ public class RandomGenSummarizerTest {
         summarizer.getSummary(true));
   }
 
+  @Test
+  public void testLargeDistributionInParallel() {
+    final int k = RandomGenSummarizer.PARALLEL_THRESHOLD * 4;
+    final int[] nums = new int[k];
+    for (int i = 0; i < k; i++) {
+      nums[i] = i;
+    }
+    final float[] probs = DistributionTableTest.randomProbabilities(k, 7L);
+    final RandomGen generator = new RandomGen(nums, probs, 9L);
+    RandomGenTest.runGenerator(2000000, generator);
+    final RandomGenSummarizer summarizer = new RandomGenSummarizer(generator);
+
+    // Two pass reference in double precision
+    final long n = generator.getCount();
+    double chi2 = 0.0;
+    double meanDev = 0.0;
+    for (int i = 0; i < k; i++) {
+      final double expected = (double) probs[i] * n;
+      final double diff = generator.getOccurrences()[i] - expected;
+      chi2 += diff * diff / expected;
+      meanDev += Math.abs((double) generator.getOccurrences()[i] / n - probs[i]);
+    }
+    meanDev /= k;
+    double squares = 0.0;
+    for (int i = 0; i < k; i++) {
+      final double dev = Math.abs((double) generator.getOccurrences()[i] / n - probs[i]) - meanDev;
+      squares += dev * dev;
+    }
+    final double sem = Math.sqrt(squares / (k - 1)) / Math.sqrt(k);
+
+    assertEquals("Chi-squared", chi2, summarizer.calcChi2(), chi2 * 1e-6);
+    assertEquals("SEM", sem, summarizer.calcStandardErrorOfMean(), sem * 1e-9);
+  }
+
+  @Test
+  public void testZeroProbabilityOccurred() {
+    final RandomGenSummarizer summarizer = new RandomGenSummarizer(new int[] { 1, 2, 3 },
+        new float[] { 0.5f, 0.5f, 0.0f }, new int[] { 2, 1, 1 }, 4);
+    assertTrue("SEM still calculated", summarizer.calcStandardErrorOfMean() > 0.0);
+    try {
+      summarizer.calcChi2();
+      fail("Expecting chi squared to be undefined");
+    } catch (ArithmeticException e) {
+      assertTrue("Names the number", e.getMessage().startsWith("Random number 3 "));
+    }
+  }
+
+  ///////////////////////////////////////////////////
+  // Test top-N and threshold queries
+  ///////////////////////////////////////////////////
+
+  @Test
+  public void testFindTopMatchesSort() {
+    final int k = 10000;
+    final int[] nums = new int[k];
+    for (int i = 0; i < k; i++) {
+      nums[i] = i;
+    }
+    final float[] probs = DistributionTableTest.randomProbabilities(k, 3L);
+    final RandomGen generator = new RandomGen(nums, probs, 5L);
+    RandomGenTest.runGenerator(200000, generator);
+    final RandomGenSummarizer summarizer = new RandomGenSummarizer(generator);
+
+    for (final RandomGenSummarizer.Measure measure : RandomGenSummarizer.Measure.values()) {
+      final Integer[] sorted = new Integer[k];
+      for (int i = 0; i < k; i++) {
+        sorted[i] = i;
+      }
+      Arrays.sort(sorted, (a, b) -> {
+        final int byMeasure = Double.compare(summarizer.calcMeasure(measure, b),
+            summarizer.calcMeasure(measure, a));
+        return byMeasure != 0 ? byMeasure : Integer.compare(a, b);
+      });
+      final int[] top = summarizer.findTop(measure, 25);
+      assertEquals("Limit", 25, top.length);
+      for (int i = 0; i < top.length; i++) {
+        assertEquals("Same order as sorting " + measure, sorted[i].intValue(), top[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testFindTopLimits() {
+    final RandomGenSummarizer summarizer = buildRandomGenSummarizer(1000, 15);
+    assertEquals("None", 0, summarizer.findTop(RandomGenSummarizer.Measure.CHI_SQUARED, 0).length);
+    final int[] all = summarizer.findTop(RandomGenSummarizer.Measure.DEVIATION, 100);
+    assertEquals("At most k", EXAMPLE_NUM.length, all.length);
+    for (int i = 1; i < all.length; i++) {
+      assertTrue("Descending", summarizer.calcMeasure(RandomGenSummarizer.Measure.DEVIATION,
+          all[i - 1]) >= summarizer.calcMeasure(RandomGenSummarizer.Measure.DEVIATION, all[i]));
+    }
+  }
+
+  @Test
+  public void testFindOver() {
+    final RandomGenSummarizer summarizer = buildRandomGenSummarizer(1000, 15);
+    final double threshold = 1.0;
+    final int[] over = summarizer.findOver(RandomGenSummarizer.Measure.CHI_SQUARED, threshold);
+    int expected = 0;
+    for (int i = 0; i < EXAMPLE_NUM.length; i++) {
+      if (summarizer.calcMeasure(RandomGenSummarizer.Measure.CHI_SQUARED, i) > threshold) {
+        assertEquals("Ascending indices over threshold", i, over[expected++]);
+      }
+    }
+    assertEquals("All found", expected, over.length);
+
+    final String summary = summarizer.getSummaryOver(RandomGenSummarizer.Measure.CHI_SQUARED,
+        threshold);
+    printOutput("getSummaryOver", summary);
+    assertTrue("Totals", summary.contains("k=5 integers, after n=1000 attempts"));
+  }
+
+  @Test
+  public void testTopSummary() {
+    final RandomGenSummarizer summarizer = buildRandomGenSummarizer(1000, 15);
+    final String summary = summarizer.getTopSummary(RandomGenSummarizer.Measure.CHI_SQUARED, 2);
+    printOutput("getTopSummary", summary);
+    final int top = summarizer.findTop(RandomGenSummarizer.Measure.CHI_SQUARED, 1)[0];
+    assertTrue("Worst value shown",
+        summary.contains(String.format("%n %-6d", summarizer.getRandomNum(top))));
+    assertEquals("Two rows", 2, summary.split(" times ").length - 1);
+  }
+
   /////////////////////////////////
   // Utility methods
   /////////////////////////////////
@@ -0,0 +1,145 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the draws of {@link RandomGen} restricted to a range of numbers.
+ *
+ */
+public class RangeSamplingTest {
+
+  private static final int DRAWS = 200000;
+
+  @Test
+  public void testRangeRenormalised() {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 9L);
+    // Numbers 0 and 1, with probability 0.3 and 0.58
+    for (int i = 0; i < DRAWS; i++) {
+      final int num = generator.nextNum(0, 1);
+      assertTrue("In range", num >= 0 && num <= 1);
+    }
+    assertEquals("Count", DRAWS, generator.getCount());
+    assertEquals("Frequency of 0", 0.3 / 0.88, (double) generator.getOccurrences()[1] / DRAWS,
+        0.01);
+    assertEquals("Frequency of 1", 0.58 / 0.88, (double) generator.getOccurrences()[2] / DRAWS,
+        0.01);
+  }
+
+  @Test
+  public void testRangeWithLittleProbability() {
+    final int[] nums = { 10, 20, 30, 40 };
+    final float[] probs = { 0.49995f, 0.00005f, 0.00005f, 0.49995f };
+    final RandomGen generator = new RandomGen(nums, probs, 3L);
+    for (int i = 0; i < DRAWS; i++) {
+      final int num = generator.nextNum(15, 35);
+      assertTrue("In range", num == 20 || num == 30);
+    }
+    assertEquals("Frequency of 20", 0.5, (double) generator.getOccurrences()[1] / DRAWS, 0.01);
+  }
+
+  @Test
+  public void testRangeBeyondNumbers() {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 1L);
+    for (int i = 0; i < 1000; i++) {
+      generator.nextNum(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+    assertEquals("Single number", 3, generator.nextNum(3, 100));
+    assertEquals("Single number", -1, generator.nextNum(Integer.MIN_VALUE, -1));
+  }
+
+  @Test
+  public void testRepeatedNumbers() {
+    final RandomGen generator = new RandomGen(new int[] { 1, 2, 2, 3 },
+        new float[] { 0.25f, 0.25f, 0.25f, 0.25f }, 4L);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("Repeated number", 2, generator.nextNum(2, 2));
+    }
+    assertEquals("Both indices", 1000,
+        generator.getOccurrences()[1] + generator.getOccurrences()[2]);
+  }
+
+  @Test
+  public void testTrivial() {
+    final RandomGen generator = new RandomGen(new int[] { 7, 8, 9 },
+        new float[] { 0.0f, 1.0f, 0.0f }, 1L);
+    assertEquals("Trivial value", 8, generator.nextNum(8, 9));
+  }
+
+  @Test
+  public void testExactSampler() {
+    final LoadedDiceRandomGen generator = new LoadedDiceRandomGen(EXAMPLE_NUM,
+        LoadedDiceRandomGenTest.EXAMPLE_WEIGHTS, 9L);
+    for (int i = 0; i < DRAWS; i++) {
+      generator.nextNum(0, 1);
+    }
+    assertEquals("Count", DRAWS, generator.getCount());
+    assertEquals("Frequency of 0", 30.0 / 88.0, (double) generator.getOccurrences()[1] / DRAWS,
+        0.01);
+    assertEquals("Frequency of 1", 58.0 / 88.0, (double) generator.getOccurrences()[2] / DRAWS,
+        0.01);
+  }
+
+  @Test
+  public void testExactSamplerLittleWeightInRange() {
+    // The range holds 2^-39 of the weight, so rejection alone would never finish
+    final LoadedDiceRandomGen generator = new LoadedDiceRandomGen(new int[] { 1, 2, 3, 4 },
+        new long[] { 1L << 40, 1, 3, 1L << 40 }, 41L);
+    int twos = 0;
+    for (int i = 0; i < DRAWS; i++) {
+      final int num = generator.nextNum(2, 3);
+      assertTrue("In range", num == 2 || num == 3);
+      twos += num == 2 ? 1 : 0;
+    }
+    assertEquals("Frequency of 2", 0.25, (double) twos / DRAWS, 0.01);
+    assertEquals("Single number", 3, generator.nextNum(3, 3));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExactSamplerNoWeightInRange() {
+    new LoadedDiceRandomGen(new int[] { 1, 2, 3 }, new long[] { 1, 0, 1 }).nextNum(2, 2);
+  }
+
+  @Test
+  public void testMixtureAttribution() {
+    final RandomGenMixture mixture = new RandomGenMixture(
+        new RandomGen[] { new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB),
+            new RandomGen(new int[] { 3, 4 }, new float[] { 0.5f, 0.5f }) },
+        new float[] { 0.5f, 0.5f }, 31L);
+    for (int i = 0; i < DRAWS; i++) {
+      mixture.nextNum(2, 4);
+    }
+    final int[] componentOccurrences = mixture.getComponentOccurrences();
+    assertEquals("Every draw attributed", mixture.getCount(),
+        componentOccurrences[0] + componentOccurrences[1]);
+    // Number 3 has probability 0.005 from component A and 0.25 from component B
+    final long fromA = mixture.getComponentSummarizer(0).getOccurrence(4);
+    assertEquals("Number 3 from component A", 0.005 / 0.255,
+        (double) fromA / mixture.getOccurrences()[4], 0.01);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoNumbersInRange() {
+    new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB).nextNum(4, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOnlyZeroProbabilityInRange() {
+    new RandomGen(new int[] { 7, 8, 9 }, new float[] { 0.5f, 0.0f, 0.5f }).nextNum(8, 8);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyRange() {
+    new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB).nextNum(1, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNotAscending() {
+    new RandomGen(new int[] { 2, 1 }, new float[] { 0.5f, 0.5f }).nextNum(1, 2);
+  }
+
+}
@@ -0,0 +1,101 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the systematic and stratified batch resampling of {@link RandomGen}.
+ *
+ */
+public class ResamplingTest {
+
+  @Test
+  public void testSystematicWithinOneOfExpected() {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 3L);
+    final int n = 1000;
+    final int[] dest = new int[n];
+    for (int rep = 0; rep < 100; rep++) {
+      final int[] before = generator.getOccurrences().clone();
+      generator.nextNumsSystematic(dest, 0, n);
+      for (int i = 0; i < EXAMPLE_NUM.length; i++) {
+        final int occurred = generator.getOccurrences()[i] - before[i];
+        assertEquals("Within one", EXAMPLE_PROB[i] * n, occurred, 1.0 + 1e-3);
+      }
+      assertSorted(dest);
+    }
+    assertEquals("Count", 100 * n, generator.getCount());
+  }
+
+  @Test
+  public void testStratifiedLowerVarianceThanIndependent() {
+    final int n = 200;
+    final int reps = 500;
+    final int[] dest = new int[n];
+    final RandomGen stratified = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 5L);
+    final RandomGen independent = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 5L);
+    double stratifiedSquares = 0.0;
+    double independentSquares = 0.0;
+    for (int rep = 0; rep < reps; rep++) {
+      stratified.nextNumsStratified(dest, 0, n);
+      assertSorted(dest);
+      stratifiedSquares += squaredDeviation(dest, n);
+      independent.nextNums(dest, 0, n);
+      independentSquares += squaredDeviation(dest, n);
+    }
+    System.out.println(String.format("Mean squared deviation: stratified %.3f, independent %.3f",
+        stratifiedSquares / reps, independentSquares / reps));
+    assertTrue("Lower variance", stratifiedSquares * 2 < independentSquares);
+    assertEquals("Count", reps * n, stratified.getCount());
+    final RandomGenSummarizer summarizer = new RandomGenSummarizer(stratified);
+    assertTrue("Chi-squared", summarizer.calcChi2() < 13.3f);
+  }
+
+  @Test
+  public void testOffsetAndTrivial() {
+    final RandomGen generator = new RandomGen(new int[] { 4, 5, 6 },
+        new float[] { 0.0f, 0.0f, 1.0f });
+    final int[] dest = new int[6];
+    generator.nextNumsSystematic(dest, 1, 4);
+    assertArrayEquals("Trivial", new int[] { 0, 6, 6, 6, 6, 0 }, dest);
+    assertEquals("Occurrences", 4, generator.getOccurrences()[2]);
+  }
+
+  @Test
+  public void testEmptyBatch() {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    generator.nextNumsStratified(new int[3], 3, 0);
+    assertEquals("Nothing drawn", 0, generator.getCount());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testOutOfRange() {
+    new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB).nextNumsSystematic(new int[3], 2, 2);
+  }
+
+  private static void assertSorted(final int[] nums) {
+    for (int i = 1; i < nums.length; i++) {
+      assertTrue("In the order of the numbers", nums[i - 1] <= nums[i]);
+    }
+  }
+
+  private static double squaredDeviation(final int[] nums, final int n) {
+    final int[] counts = new int[EXAMPLE_NUM.length];
+    for (final int num : nums) {
+      counts[Arrays.binarySearch(EXAMPLE_NUM, num)]++;
+    }
+    double total = 0.0;
+    for (int i = 0; i < counts.length; i++) {
+      final double dev = counts[i] - EXAMPLE_PROB[i] * n;
+      total += dev * dev;
+    }
+    return total;
+  }
+
+}
@@ -0,0 +1,132 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SamplingServer} and {@link SamplingClient} over the loopback interface.
+ *
+ */
+public class SamplingServerTest {
+
+  private SamplingServer server;
+  private InetSocketAddress address;
+
+  @Before
+  public void startServer() throws IOException {
+    server = new SamplingServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    server.register("example", new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 25));
+    server.register("single", new RandomGen(new int[] { 7 }, new float[] { 1.0f }));
+    server.start();
+    address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+  }
+
+  @After
+  public void stopServer() throws IOException {
+    server.close();
+  }
+
+  @Test
+  public void testSameDrawsAsLocalGenerator() throws IOException {
+    final RandomGen local = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 25);
+    final int[] expected = new int[100000];
+    local.nextNums(expected);
+
+    final int[] draws = new int[expected.length];
+    try (SamplingClient client = new SamplingClient(address)) {
+      client.draw("example", draws);
+    }
+    assertArrayEquals(expected, draws);
+  }
+
+  @Test
+  public void testPipelinedRequests() throws IOException {
+    final RandomGen local = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 25);
+    final int requests = 50;
+    final int[] expected = new int[requests * 1000];
+    local.nextNums(expected);
+
+    final int[] draws = new int[expected.length];
+    final int[] singles = new int[requests * 10];
+    try (SamplingClient client = new SamplingClient(address)) {
+      for (int r = 0; r < requests; r++) {
+        client.send("example", 1000);
+        client.send("single", 10);
+      }
+      for (int r = 0; r < requests; r++) {
+        assertEquals(1000, client.receive(draws, r * 1000));
+        assertEquals(10, client.receive(singles, r * 10));
+      }
+    }
+    assertArrayEquals(expected, draws);
+    for (final int single : singles) {
+      assertEquals(7, single);
+    }
+  }
+
+  @Test
+  public void testLargeBatch() throws IOException {
+    final int[] draws = new int[5000000];
+    try (SamplingClient client = new SamplingClient(address);
+        SamplingClient client2 = new SamplingClient(address)) {
+      client.send("example", draws.length);
+      client2.send("single", 3);
+      final int[] singles = new int[3];
+      client2.receive(singles, 0);
+      assertArrayEquals(new int[] { 7, 7, 7 }, singles);
+      assertEquals(draws.length, client.receive(draws, 0));
+    }
+    final int[] occur = new int[EXAMPLE_NUM.length];
+    for (final int draw : draws) {
+      occur[draw + 1]++;
+    }
+    assertEquals(0.58, (double) occur[2] / draws.length, 0.01);
+  }
+
+  @Test
+  public void testUnknownGenerator() throws IOException {
+    try (SamplingClient client = new SamplingClient(address)) {
+      client.send("missing", 10);
+      client.send("single", 1);
+      try {
+        client.receive(new int[10], 0);
+        fail("Expecting unknown generator");
+      } catch (IOException e) {
+        assertEquals("Unknown generator", e.getMessage());
+      }
+      final int[] single = new int[1];
+      client.receive(single, 0);
+      assertEquals(7, single[0]);
+    }
+  }
+
+  @Test
+  public void testArrayTooSmall() throws IOException {
+    try (SamplingClient client = new SamplingClient(address)) {
+      client.send("single", 100000);
+      client.send("single", 2);
+      try {
+        client.receive(new int[10], 0);
+        fail("Expecting array too small");
+      } catch (IOException e) {
+        assertEquals("Expecting room for 100000 draws in array", e.getMessage());
+      }
+      // The next response is still read from its start
+      final int[] pair = new int[2];
+      assertEquals(2, client.receive(pair, 0));
+      assertArrayEquals(new int[] { 7, 7 }, pair);
+    }
+  }
+
+}
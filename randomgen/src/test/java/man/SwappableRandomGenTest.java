@@ -0,0 +1,104 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests swapping the distribution of a {@link SwappableRandomGen} under concurrent readers.
+ *
+ */
+public class SwappableRandomGenTest {
+
+  @Test
+  public void testSwapRetiresVersion() {
+    final SwappableRandomGen gen = new SwappableRandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    final Random random = new Random(1L);
+    for (int i = 0; i < 1000; i++) {
+      gen.nextNum(random);
+    }
+    final SwappableRandomGen.Version first = gen.getCurrent();
+    assertEquals("First version", 1, first.getNumber());
+    assertFalse("Current", first.isRetired());
+
+    final SwappableRandomGen.Version retired = gen.swap(new int[] { 7, 8 },
+        new float[] { 0.0f, 1.0f });
+    assertTrue("Same version", first == retired);
+    assertTrue("Retired", retired.isRetired());
+    assertEquals("Second version", 2, gen.getCurrent().getNumber());
+    assertEquals("Retired draws", 1000, retired.getSnapshot().getCount());
+
+    for (int i = 0; i < 100; i++) {
+      assertEquals("New distribution", 8, gen.nextNum(random));
+    }
+    assertEquals("Retired draws unchanged", 1000, retired.getSnapshot().getCount());
+    assertEquals("New draws", 100, gen.getCurrent().getSnapshot().getCount());
+    assertTrue("Chi-squared", retired.getSummarizer().calcChi2() < 13.3f);
+  }
+
+  @Test
+  public void testConcurrentReadersLoseNoDraws() throws InterruptedException {
+    final SwappableRandomGen gen = new SwappableRandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicLong draws = new AtomicLong();
+    final List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final long seed = t;
+      readers.add(new Thread(() -> {
+        final Random random = new Random(seed);
+        final int[] batch = new int[16];
+        long count = 0;
+        while (!stop.get()) {
+          gen.nextNums(random, batch, 0, batch.length);
+          count += batch.length;
+        }
+        draws.addAndGet(count);
+      }));
+    }
+    for (final Thread reader : readers) {
+      reader.start();
+    }
+
+    long counted = 0;
+    for (int i = 0; i < 200; i++) {
+      final SwappableRandomGen.Version retired = i % 2 == 0
+          ? gen.swap(new int[] { 1, 2 }, new float[] { 0.5f, 0.5f })
+          : gen.swap(EXAMPLE_NUM, EXAMPLE_PROB);
+      assertEquals("Version number", i + 1, retired.getNumber());
+      counted += retired.getSnapshot().getCount();
+    }
+    stop.set(true);
+    for (final Thread reader : readers) {
+      reader.join();
+    }
+    final SwappableRandomGen.Version last = gen.swap(EXAMPLE_NUM, EXAMPLE_PROB);
+    counted += last.getSnapshot().getCount();
+    assertEquals("Every draw counted against one version", draws.get(), counted);
+  }
+
+  @Test
+  public void testSwapSharedTable() {
+    final SwappableRandomGen gen = new SwappableRandomGen(EXAMPLE_NUM, EXAMPLE_PROB);
+    final DistributionTable table = DistributionTable.of(new float[] { 1.0f, 0.0f });
+    gen.swap(new int[] { 3, 4 }, table);
+    assertTrue("Shared table", gen.getCurrent().getTable() == table);
+    assertEquals("Trivial", 3, gen.nextNum());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSwapMismatchedLength() {
+    new SwappableRandomGen(EXAMPLE_NUM, EXAMPLE_PROB).swap(new int[] { 1 },
+        new float[] { 0.5f, 0.5f });
+  }
+
+}
@@ -0,0 +1,228 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the columnar {@link SyntheticDataGenerator}.
+ *
+ */
+public class SyntheticDataGeneratorTest {
+
+  private static ForkJoinPool pool;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void createPool() {
+    pool = new ForkJoinPool(3);
+  }
+
+  @AfterClass
+  public static void shutdownPool() {
+    pool.shutdown();
+  }
+
+  // Country code 1 or 2, and a city conditional on the country
+  private static SyntheticDataGenerator example() {
+    return new SyntheticDataGenerator.Builder().column("size", EXAMPLE_NUM, EXAMPLE_PROB)
+        .column("country", new int[] { 1, 2 }, new float[] { 0.25f, 0.75f })
+        .column("city", "country", new int[] { 2, 1 },
+            new int[][] { { 20, 21, 22 }, { 10 } },
+            new float[][] { { 0.5f, 0.25f, 0.25f }, { 1.0f } })
+        .build();
+  }
+
+  @Test
+  public void testConditionalColumn() {
+    final int rows = SyntheticDataGenerator.BATCH_ROWS * 2 + 5;
+    final int[][] columns = example().generate(rows, 1L);
+    assertEquals("Columns", 3, columns.length);
+    int country1 = 0;
+    int city20 = 0;
+    for (int r = 0; r < rows; r++) {
+      if (columns[1][r] == 1) {
+        country1++;
+        assertEquals("City of country 1", 10, columns[2][r]);
+      } else {
+        assertTrue("City of country 2", columns[2][r] >= 20 && columns[2][r] <= 22);
+        if (columns[2][r] == 20) {
+          city20++;
+        }
+      }
+    }
+    assertEquals("Country 1", 0.25, (double) country1 / rows, 0.01);
+    assertEquals("City 20 of country 2", 0.5, (double) city20 / (rows - country1), 0.01);
+  }
+
+  @Test
+  public void testColumnarFileMatchesInMemory() throws IOException {
+    final SyntheticDataGenerator generator = example();
+    final int rows = SyntheticDataGenerator.BATCH_ROWS * 5 + 123;
+    final int[][] expected = generator.generate(rows, 7L);
+    final Path file = folder.getRoot().toPath().resolve("data.bin");
+    generator.writeColumnar(file, rows, 7L, pool);
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(file)))) {
+      assertEquals("Magic", SyntheticDataGenerator.MAGIC, in.readInt());
+      assertEquals("Version", SyntheticDataGenerator.VERSION, in.readByte());
+      assertEquals("Columns", 3, in.readInt());
+      assertEquals("Name", "size", in.readUTF());
+      assertEquals("Name", "country", in.readUTF());
+      assertEquals("Name", "city", in.readUTF());
+      int first = 0;
+      while (first < rows) {
+        final int batchRows = in.readInt();
+        for (int c = 0; c < 3; c++) {
+          for (int r = 0; r < batchRows; r++) {
+            assertEquals("Value", expected[c][first + r], in.readInt());
+          }
+        }
+        first += batchRows;
+      }
+      assertEquals("All rows", rows, first);
+      assertEquals("End of file", -1, in.read());
+    }
+  }
+
+  @Test
+  public void testCsvFile() throws IOException {
+    final SyntheticDataGenerator generator = example();
+    final int rows = 1000;
+    final int[][] expected = generator.generate(rows, 3L);
+    final Path file = folder.getRoot().toPath().resolve("data.csv");
+    generator.writeCsv(file, rows, 3L, pool);
+
+    final List<String> lines = Files.readAllLines(file);
+    assertEquals("Header and rows", rows + 1, lines.size());
+    assertEquals("Header", "size,country,city", lines.get(0));
+    for (int r = 0; r < rows; r++) {
+      final String[] cells = lines.get(r + 1).split(",");
+      final int[] row = new int[cells.length];
+      for (int c = 0; c < cells.length; c++) {
+        row[c] = Integer.parseInt(cells[c]);
+      }
+      assertArrayEquals("Row " + r,
+          new int[] { expected[0][r], expected[1][r], expected[2][r] }, row);
+    }
+  }
+
+  @Test
+  public void testHeaderLongerThanBuffer() throws IOException {
+    // 20 names of 60000 bytes, so more than the 1 MiB buffer between them
+    final int numColumns = 20;
+    final char[] chars = new char[60000];
+    final SyntheticDataGenerator.Builder builder = new SyntheticDataGenerator.Builder();
+    final String[] names = new String[numColumns];
+    for (int c = 0; c < numColumns; c++) {
+      Arrays.fill(chars, (char) ('a' + c));
+      names[c] = new String(chars);
+      builder.column(names[c], new int[] { c }, new float[] { 1.0f });
+    }
+    final SyntheticDataGenerator generator = builder.build();
+    final Path binary = folder.getRoot().toPath().resolve("long.bin");
+    generator.writeColumnar(binary, 10, 1L, pool);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(binary)))) {
+      assertEquals("Magic", SyntheticDataGenerator.MAGIC, in.readInt());
+      assertEquals("Version", SyntheticDataGenerator.VERSION, in.readByte());
+      assertEquals("Columns", numColumns, in.readInt());
+      for (int c = 0; c < numColumns; c++) {
+        assertEquals("Name", names[c], in.readUTF());
+      }
+      assertEquals("Rows", 10, in.readInt());
+      for (int c = 0; c < numColumns; c++) {
+        for (int r = 0; r < 10; r++) {
+          assertEquals("Value", c, in.readInt());
+        }
+      }
+      assertEquals("End of file", -1, in.read());
+    }
+
+    final Path csv = folder.getRoot().toPath().resolve("long.csv");
+    generator.writeCsv(csv, 10, 1L, pool);
+    final List<String> lines = Files.readAllLines(csv);
+    assertEquals("Header and rows", 11, lines.size());
+    assertEquals("Header", String.join(",", names), lines.get(0));
+  }
+
+  @Test
+  public void testCsvRowLongerThanBuffer() throws IOException {
+    // 100000 cells of 12 bytes, so each row is more than the 1 MiB buffer
+    final int numColumns = 100000;
+    final SyntheticDataGenerator.Builder builder = new SyntheticDataGenerator.Builder();
+    for (int c = 0; c < numColumns; c++) {
+      builder.column("c" + c, new int[] { Integer.MIN_VALUE }, new float[] { 1.0f });
+    }
+    final Path file = folder.getRoot().toPath().resolve("wide.csv");
+    builder.build().writeCsv(file, 3, 1L, pool);
+    final List<String> lines = Files.readAllLines(file);
+    assertEquals("Header and rows", 4, lines.size());
+    for (int r = 1; r < 4; r++) {
+      final String[] cells = lines.get(r).split(",");
+      assertEquals("Cells", numColumns, cells.length);
+      assertEquals("Value", Integer.MIN_VALUE, Integer.parseInt(cells[numColumns - 1]));
+    }
+  }
+
+  @Test
+  public void testCsvQuotedNames() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("quoted.csv");
+    new SyntheticDataGenerator.Builder().column("plain", new int[] { 1 }, new float[] { 1.0f })
+        .column("a,b", new int[] { 2 }, new float[] { 1.0f })
+        .column("say \"hi\"", new int[] { 3 }, new float[] { 1.0f }).build()
+        .writeCsv(file, 1, 1L, pool);
+    final List<String> lines = Files.readAllLines(file);
+    assertEquals("Header", "plain,\"a,b\",\"say \"\"hi\"\"\"", lines.get(0));
+    assertEquals("Row", "1,2,3", lines.get(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNameTooLong() {
+    final char[] chars = new char[SyntheticDataGenerator.MAX_NAME_LENGTH + 1];
+    Arrays.fill(chars, 'a');
+    new SyntheticDataGenerator.Builder().column(new String(chars), new int[] { 1 },
+        new float[] { 1.0f });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateName() {
+    new SyntheticDataGenerator.Builder().column("size", new int[] { 1 }, new float[] { 1.0f })
+        .column("size", new int[] { 2 }, new float[] { 1.0f });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingParentValue() {
+    new SyntheticDataGenerator.Builder()
+        .column("country", new int[] { 1, 2 }, new float[] { 0.25f, 0.75f })
+        .column("city", "country", new int[] { 1 }, new int[][] { { 10 } },
+            new float[][] { { 1.0f } });
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownParent() {
+    new SyntheticDataGenerator.Builder().column("city", "country", new int[] { 1 },
+        new int[][] { { 10 } }, new float[][] { { 1.0f } });
+  }
+
+}
@@ -0,0 +1,98 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the generators of long, double and object values share the index-sampling core of
+ * {@link RandomGen}.
+ *
+ */
+public class TypedRandomGenTest {
+
+  private static final long[] LONG_NUM = { -1L << 40, 0L, 1L << 40, 2L << 40, 3L << 40 };
+  private static final double[] DOUBLE_NUM = { -1.5, 0.0, 1.5, 3.0, 4.5 };
+  private static final List<String> OBJECT_NUM = Arrays.asList("a", "b", "c", "d", "e");
+
+  @Test
+  public void testSameSequenceAsRandomGen() {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 25);
+    final LongRandomGen longGen = new LongRandomGen(LONG_NUM, EXAMPLE_PROB, 25);
+    final DoubleRandomGen doubleGen = new DoubleRandomGen(DOUBLE_NUM, EXAMPLE_PROB, 25);
+    final ObjectRandomGen<String> objectGen = new ObjectRandomGen<>(OBJECT_NUM, EXAMPLE_PROB, 25);
+
+    for (int i = 0; i < 1000; i++) {
+      final int idx = generator.nextNum() + 1;
+      assertEquals("long value at iteration " + i, LONG_NUM[idx], longGen.nextNum());
+      assertEquals("double value at iteration " + i, DOUBLE_NUM[idx], doubleGen.nextNum(), 0.0);
+      assertEquals("object value at iteration " + i, OBJECT_NUM.get(idx), objectGen.nextValue());
+    }
+    assertArrayEquals(generator.getOccurrences(), longGen.getOccurrences());
+    assertArrayEquals(generator.getOccurrences(), doubleGen.getOccurrences());
+    assertArrayEquals(generator.getOccurrences(), objectGen.getOccurrences());
+    assertEquals(1000, objectGen.getCount());
+  }
+
+  @Test
+  public void testBatchFills() {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 24);
+    final LongRandomGen longGen = new LongRandomGen(LONG_NUM, EXAMPLE_PROB, 24);
+    final DoubleRandomGen doubleGen = new DoubleRandomGen(DOUBLE_NUM, EXAMPLE_PROB, 24);
+    final ObjectRandomGen<String> objectGen = new ObjectRandomGen<>(OBJECT_NUM, EXAMPLE_PROB, 24);
+
+    final int[] ints = new int[100];
+    final long[] longs = new long[100];
+    final double[] doubles = new double[100];
+    final String[] objects = new String[100];
+    generator.nextNums(ints);
+    longGen.nextNums(longs, 0, 50);
+    longGen.nextNums(longs, 50, 50);
+    doubleGen.nextNums(doubles);
+    objectGen.nextValues(objects, 0, objects.length);
+
+    for (int i = 0; i < ints.length; i++) {
+      final int idx = ints[i] + 1;
+      assertEquals("long value at index " + i, LONG_NUM[idx], longs[i]);
+      assertEquals("double value at index " + i, DOUBLE_NUM[idx], doubles[i], 0.0);
+      assertEquals("object value at index " + i, OBJECT_NUM.get(idx), objects[i]);
+    }
+    assertEquals(100, longGen.getCount());
+    assertArrayEquals(generator.getOccurrences(), doubleGen.getOccurrences());
+  }
+
+  @Test
+  public void testSharedTable() {
+    final RandomGen generator = new RandomGen(EXAMPLE_NUM, EXAMPLE_PROB, 25);
+    final RandomGen shared = RandomGen.of(new int[] { 5, 6, 7, 8, 9 }, generator.getTable());
+    assertEquals(generator.getTable(), shared.getTable());
+    assertEquals(4, shared.getDegreesFreedom());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDifferentLengthLongInputs() {
+    new LongRandomGen(new long[] { 1L, 2L }, EXAMPLE_PROB);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullObjectInputs() {
+    new ObjectRandomGen<String>(null, EXAMPLE_PROB);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDifferentLengthSharedTable() {
+    RandomGen.of(new int[] { 1, 2 }, DistributionTable.of(EXAMPLE_PROB));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testBatchOutOfRange() {
+    new DoubleRandomGen(DOUBLE_NUM, EXAMPLE_PROB).nextNums(new double[10], 5, 6);
+  }
+
+}
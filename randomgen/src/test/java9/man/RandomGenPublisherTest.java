@@ -0,0 +1,146 @@
+package man;
+
+import static man.RandomGenTest.EXAMPLE_NUM;
+import static man.RandomGenTest.EXAMPLE_PROB;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the reactive streams {@link RandomGenPublisher}.
+ *
+ */
+public class RandomGenPublisherTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void createExecutor() {
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void shutdownExecutor() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void testExactDemand() throws InterruptedException {
+    final RandomGenPublisher publisher = new RandomGenPublisher(EXAMPLE_NUM,
+        DistributionTable.of(EXAMPLE_PROB), 64, 1L, executor);
+    final Collector collector = new Collector(3);
+    publisher.subscribe(collector);
+    collector.subscription.request(3);
+    assertTrue("Three batches", collector.await());
+    Thread.sleep(50);
+    assertEquals("Nothing beyond the demand", 3, collector.batches.size());
+    for (final int[] batch : collector.batches) {
+      assertEquals("Batch size", 64, batch.length);
+    }
+    collector.subscription.cancel();
+  }
+
+  @Test
+  public void testCompletesAfterDraws() throws InterruptedException {
+    final RandomGenPublisher publisher = new RandomGenPublisher(EXAMPLE_NUM,
+        DistributionTable.of(EXAMPLE_PROB), 100, 250, 2L, executor);
+    final Collector collector = new Collector(0);
+    publisher.subscribe(collector);
+    collector.subscription.request(Long.MAX_VALUE);
+    assertTrue("Completed", collector.completion.await(5, TimeUnit.SECONDS));
+    assertEquals("Batches", 3, collector.batches.size());
+    assertEquals("Last batch", 50, collector.batches.get(2).length);
+  }
+
+  @Test
+  public void testIndependentSubscribers() throws InterruptedException {
+    final DistributionTable table = DistributionTable.of(EXAMPLE_PROB);
+    final List<int[]> first = drawTwoSubscribers(new RandomGenPublisher(EXAMPLE_NUM, table, 256,
+        256, 7L, executor));
+    final List<int[]> second = drawTwoSubscribers(new RandomGenPublisher(EXAMPLE_NUM, table, 256,
+        256, 7L, executor));
+    assertFalse("Split streams", Arrays.equals(first.get(0), first.get(1)));
+    assertArrayEquals("Same seed, same first subscriber", first.get(0), second.get(0));
+    assertArrayEquals("Same seed, same second subscriber", first.get(1), second.get(1));
+  }
+
+  @Test
+  public void testInvalidRequest() throws InterruptedException {
+    final RandomGenPublisher publisher = new RandomGenPublisher(EXAMPLE_NUM,
+        DistributionTable.of(EXAMPLE_PROB), 8, 3L, executor);
+    final Collector collector = new Collector(0);
+    publisher.subscribe(collector);
+    collector.subscription.request(0);
+    assertTrue("Signalled", collector.completion.await(5, TimeUnit.SECONDS));
+    assertTrue("Error", collector.error instanceof IllegalArgumentException);
+  }
+
+  private List<int[]> drawTwoSubscribers(final RandomGenPublisher publisher)
+      throws InterruptedException {
+    final List<int[]> draws = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      final Collector collector = new Collector(0);
+      publisher.subscribe(collector);
+      collector.subscription.request(1);
+      assertTrue("Completed", collector.completion.await(5, TimeUnit.SECONDS));
+      draws.add(collector.batches.get(0));
+    }
+    return draws;
+  }
+
+  /**
+   * Subscriber collecting the batches it receives.
+   */
+  private static final class Collector implements Flow.Subscriber<int[]> {
+    private final List<int[]> batches = new ArrayList<>();
+    private final CountDownLatch received;
+    private final CountDownLatch completion = new CountDownLatch(1);
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable error;
+
+    private Collector(final int expected) {
+      this.received = new CountDownLatch(expected);
+    }
+
+    private boolean await() throws InterruptedException {
+      return received.await(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public synchronized void onNext(final int[] batch) {
+      batches.add(batch);
+      received.countDown();
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+      error = throwable;
+      completion.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completion.countDown();
+    }
+  }
+
+}